@@ -0,0 +1,131 @@
+package com.factual.driver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects independent reads made at about the same time, by concurrent
+ * callers of one Factual instance, into a single call to Factual's multi
+ * endpoint. Each caller still gets its own response, or its own exception,
+ * but a burst of small reads costs one round trip instead of one each.
+ * <p>
+ * The first read of a batch waits up to the batch window for others to join
+ * it; the batch is sent as soon as it is full or the window has passed. A
+ * batch that gathered only one read is sent as an ordinary read. Batching
+ * applies to <tt>fetch</tt> of read and facet queries, <tt>fetchRow</tt>,
+ * <tt>geopulse</tt> and <tt>reverseGeocode</tt>, including through
+ * {@link FactualAsync}; other requests are never delayed.
+ * <p>
+ * The delay batching adds to each read is reported by
+ * {@link #getMeanAddedLatencyMillis()} and {@link #getMaxAddedLatencyMillis()}.
+ * Example:
+ * <pre>
+ * factual.setBatchPolicy(new BatchPolicy()
+ *     .window(2, TimeUnit.MILLISECONDS)
+ *     .maxBatchSize(3));
+ * </pre>
+ */
+public class BatchPolicy {
+  private long windowNanos = TimeUnit.MILLISECONDS.toNanos(2);
+  private int maxBatchSize = 3;
+
+  private long requests = 0;
+  private long batches = 0;
+  private long addedNanos = 0;
+  private long maxAddedNanos = 0;
+
+  /**
+   * Sets how long the first read of a batch waits for others to join it. The
+   * default is 2ms.
+   *
+   * @param window
+   *          the longest wait before a batch is sent.
+   * @param unit
+   *          the unit of <tt>window</tt>.
+   * @return this BatchPolicy
+   */
+  public BatchPolicy window(long window, TimeUnit unit) {
+    if (window < 0)
+      throw new IllegalArgumentException("window must not be negative: " + window);
+    synchronized (this) {
+      this.windowNanos = unit.toNanos(window);
+    }
+    return this;
+  }
+
+  /**
+   * Sets the most reads sent in one batch; a full batch is sent without
+   * waiting out the window. The default is 3, which fits one multi call;
+   * larger batches are split as set by {@link Factual#setMultiPolicy(MultiPolicy)}.
+   *
+   * @param maxBatchSize
+   *          the most reads in one batch.
+   * @return this BatchPolicy
+   */
+  public BatchPolicy maxBatchSize(int maxBatchSize) {
+    if (maxBatchSize < 1)
+      throw new IllegalArgumentException("maxBatchSize must be at least 1: " + maxBatchSize);
+    synchronized (this) {
+      this.maxBatchSize = maxBatchSize;
+    }
+    return this;
+  }
+
+  public synchronized long getWindowNanos() {
+    return windowNanos;
+  }
+
+  public synchronized int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * @return the number of reads that went through this policy.
+   */
+  public synchronized long getRequestCount() {
+    return requests;
+  }
+
+  /**
+   * @return the number of batches sent; the reads saved are
+   *         <tt>getRequestCount() - getBatchCount()</tt>.
+   */
+  public synchronized long getBatchCount() {
+    return batches;
+  }
+
+  /**
+   * @return the average number of reads per batch.
+   */
+  public synchronized double getMeanBatchSize() {
+    return batches == 0 ? 0 : (double) requests / batches;
+  }
+
+  /**
+   * @return the average time a read waited for its batch to be sent, in
+   *         milliseconds.
+   */
+  public synchronized double getMeanAddedLatencyMillis() {
+    return requests == 0 ? 0 : addedNanos / 1e6 / requests;
+  }
+
+  /**
+   * @return the longest time a read waited for its batch to be sent, in
+   *         milliseconds.
+   */
+  public synchronized double getMaxAddedLatencyMillis() {
+    return maxAddedNanos / 1e6;
+  }
+
+  /**
+   * Records a batch being sent, with the time each of its reads waited.
+   */
+  synchronized void record(long[] waitNanos) {
+    batches++;
+    requests += waitNanos.length;
+    for (long wait : waitNanos) {
+      addedNanos += wait;
+      maxAddedNanos = Math.max(maxAddedNanos, wait);
+    }
+  }
+
+}
@@ -0,0 +1,190 @@
+package com.factual.driver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reads response bodies as raw bytes through pooled, size-classed scratch
+ * buffers, so reading a body allocates little more than the final array.
+ * Lines are split on the bytes themselves and decoded as UTF-8, keeping line
+ * breaks in the body intact.
+ * <p>
+ * Bodies grow through size classes of 16 KB, 128 KB and 1 MB, then double.
+ * Only the two smaller classes are pooled, shared by all threads and bounded
+ * to a few buffers each, so the pool holds at most about 1 MB however many
+ * threads read bodies.
+ */
+final class BodyReader {
+  private static final byte[] EMPTY = new byte[0];
+  private static final int[] SIZE_CLASSES = { 16 * 1024, 128 * 1024, 1024 * 1024 };
+  private static final int POOLED_CLASSES = 2;
+  private static final int BUFFERS_PER_CLASS = 8;
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static final BlockingQueue<byte[]>[] POOL = new BlockingQueue[] {
+      new ArrayBlockingQueue<byte[]>(BUFFERS_PER_CLASS),
+      new ArrayBlockingQueue<byte[]>(BUFFERS_PER_CLASS) };
+
+  private BodyReader() {
+  }
+
+  /**
+   * Reads all of <tt>in</tt>, handing each line to <tt>cb</tt>, if given, as
+   * soon as it is complete. Does not close <tt>in</tt>.
+   *
+   * @return the body, exactly sized.
+   */
+  static byte[] read(InputStream in, LineCallback cb) throws IOException {
+    if (in == null)
+      return EMPTY;
+    byte[] buf = borrow(0);
+    int n = 0;
+    int lineStart = 0;
+    try {
+      int r;
+      while ((r = in.read(buf, n, buf.length - n)) != -1) {
+        if (cb != null)
+          lineStart = lines(buf, lineStart, n, n + r, cb);
+        n += r;
+        if (n == buf.length)
+          buf = grow(buf, n);
+      }
+      if (cb != null && lineStart < n)
+        cb.onLine(line(buf, lineStart, n));
+      return n == 0 ? EMPTY : Arrays.copyOf(buf, n);
+    } finally {
+      giveBack(buf);
+    }
+  }
+
+  /**
+   * Reads <tt>in</tt> until it ends, handing each line to <tt>cb</tt>
+   * without keeping the body. Does not close <tt>in</tt>.
+   */
+  static void forEachLine(InputStream in, LineCallback cb) throws IOException {
+    byte[] buf = borrow(0);
+    int n = 0;
+    try {
+      int r;
+      while ((r = in.read(buf, n, buf.length - n)) != -1) {
+        int consumed = lines(buf, 0, n, n + r, cb);
+        n += r;
+        if (consumed > 0) {
+          System.arraycopy(buf, consumed, buf, 0, n - consumed);
+          n -= consumed;
+        } else if (n == buf.length) {
+          buf = grow(buf, n);
+        }
+      }
+      if (n > 0)
+        cb.onLine(line(buf, 0, n));
+    } finally {
+      giveBack(buf);
+    }
+  }
+
+  /**
+   * Copies <tt>in</tt> to <tt>out</tt> through a pooled buffer. Closes
+   * neither.
+   *
+   * @return the number of bytes copied.
+   */
+  static long copy(InputStream in, OutputStream out) throws IOException {
+    if (in == null)
+      return 0;
+    byte[] buf = borrow(0);
+    long total = 0;
+    try {
+      int r;
+      while ((r = in.read(buf)) != -1) {
+        out.write(buf, 0, r);
+        total += r;
+      }
+      return total;
+    } finally {
+      giveBack(buf);
+    }
+  }
+
+  /**
+   * Copies <tt>in</tt> to <tt>out</tt> through a pooled buffer. Closes
+   * neither.
+   *
+   * @return the number of bytes copied.
+   */
+  static long copy(InputStream in, WritableByteChannel out) throws IOException {
+    if (in == null)
+      return 0;
+    byte[] buf = borrow(0);
+    ByteBuffer wrapped = ByteBuffer.wrap(buf);
+    long total = 0;
+    try {
+      int r;
+      while ((r = in.read(buf)) != -1) {
+        wrapped.clear().limit(r);
+        while (wrapped.hasRemaining()) {
+          out.write(wrapped);
+        }
+        total += r;
+      }
+      return total;
+    } finally {
+      giveBack(buf);
+    }
+  }
+
+  /**
+   * Hands <tt>cb</tt> every line completed by the bytes in
+   * <tt>[from, to)</tt>, where the current line started at <tt>start</tt>.
+   *
+   * @return where the next line starts.
+   */
+  private static int lines(byte[] buf, int start, int from, int to, LineCallback cb) {
+    for (int i = from; i < to; i++) {
+      if (buf[i] == '\n') {
+        cb.onLine(line(buf, start, i));
+        start = i + 1;
+      }
+    }
+    return start;
+  }
+
+  private static String line(byte[] buf, int start, int end) {
+    if (end > start && buf[end - 1] == '\r')
+      end--;
+    return new String(buf, start, end - start, Charsets.UTF_8);
+  }
+
+  private static byte[] borrow(int sizeClass) {
+    byte[] buf = sizeClass < POOLED_CLASSES ? POOL[sizeClass].poll() : null;
+    return buf == null ? new byte[SIZE_CLASSES[sizeClass]] : buf;
+  }
+
+  private static void giveBack(byte[] buf) {
+    int sizeClass = Arrays.binarySearch(SIZE_CLASSES, buf.length);
+    // a full pool, or a larger buffer, is left to the garbage collector
+    if (sizeClass >= 0 && sizeClass < POOLED_CLASSES)
+      POOL[sizeClass].offer(buf);
+  }
+
+  /**
+   * @return a larger buffer holding the first <tt>n</tt> bytes of
+   *         <tt>buf</tt>, which is given back to the pool.
+   */
+  private static byte[] grow(byte[] buf, int n) {
+    int sizeClass = Arrays.binarySearch(SIZE_CLASSES, buf.length);
+    byte[] bigger = sizeClass >= 0 && sizeClass + 1 < SIZE_CLASSES.length
+        ? borrow(sizeClass + 1) : new byte[buf.length * 2];
+    System.arraycopy(buf, 0, bigger, 0, n);
+    giveBack(buf);
+    return bigger;
+  }
+
+}
@@ -0,0 +1,326 @@
+package com.factual.driver;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.json.JSONObject;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A column-oriented view of the rows of a {@link Tabular} response, for code
+ * that scans one or two fields across many rows.
+ * <p>
+ * Each column is materialised into a primitive array the first time it is
+ * asked for and cached, so later passes read straight from the array. Only
+ * the requested field is read from each row, which with lazy rows (see
+ * {@link Factual#setLazyRows(boolean)}) means only that field is decoded.
+ * Missing values and JSON nulls are recorded in a null bitmap.
+ * <p>
+ * Example:
+ * <pre>
+ * ColumnarView columns = factual.fetch("places", query).columns();
+ * ColumnarView.DoubleColumn lat = columns.doubles("latitude");
+ * for (int i = 0; i &lt; lat.size(); i++) {
+ *   if (!lat.isNull(i))
+ *     sum += lat.get(i);
+ * }
+ * </pre>
+ */
+public class ColumnarView {
+  private final List<Map<String, Object>> rows;
+  private final ConcurrentMap<String, Column> cache = Maps.newConcurrentMap();
+
+  /**
+   * Constructor, a view over the current rows of <tt>table</tt>.
+   */
+  public ColumnarView(Tabular table) {
+    this.rows = table.getData();
+  }
+
+  /**
+   * @return the number of rows.
+   */
+  public int size() {
+    return rows.size();
+  }
+
+  /**
+   * @return <tt>field</tt> as a column of the narrowest type that holds all
+   *         its values: a {@link LongColumn} if every value is an integer, a
+   *         {@link DoubleColumn} if every value is a number, otherwise a
+   *         {@link StringColumn}.
+   */
+  public Column column(String field) {
+    boolean integral = true;
+    for (Map<String, Object> row : rows) {
+      Object val = value(row, field);
+      if (val == null)
+        continue;
+      if (!(val instanceof Number))
+        return strings(field);
+      if (!(val instanceof Integer || val instanceof Long))
+        integral = false;
+    }
+    return integral ? longs(field) : doubles(field);
+  }
+
+  /**
+   * @return <tt>field</tt> as a column of doubles. Numeric strings are parsed;
+   *         any other non-numeric value is recorded as null.
+   */
+  public DoubleColumn doubles(String field) {
+    DoubleColumn col = (DoubleColumn) cache.get("d:" + field);
+    if (col == null) {
+      double[] values = new double[rows.size()];
+      BitSet nulls = new BitSet(values.length);
+      for (int i = 0; i < values.length; i++) {
+        Object val = value(rows.get(i), field);
+        if (val instanceof Number) {
+          values[i] = ((Number) val).doubleValue();
+        } else {
+          Double parsed = val instanceof String ? parseDouble((String) val) : null;
+          if (parsed != null)
+            values[i] = parsed;
+          else
+            nulls.set(i);
+        }
+      }
+      col = cached("d:" + field, new DoubleColumn(field, values, nulls));
+    }
+    return col;
+  }
+
+  /**
+   * @return <tt>field</tt> as a column of longs. Fractional numbers are
+   *         truncated and numeric strings are parsed; any other non-numeric
+   *         value is recorded as null.
+   */
+  public LongColumn longs(String field) {
+    LongColumn col = (LongColumn) cache.get("l:" + field);
+    if (col == null) {
+      long[] values = new long[rows.size()];
+      BitSet nulls = new BitSet(values.length);
+      for (int i = 0; i < values.length; i++) {
+        Object val = value(rows.get(i), field);
+        if (val instanceof Number) {
+          values[i] = ((Number) val).longValue();
+        } else {
+          Double parsed = val instanceof String ? parseDouble((String) val) : null;
+          if (parsed != null)
+            values[i] = parsed.longValue();
+          else
+            nulls.set(i);
+        }
+      }
+      col = cached("l:" + field, new LongColumn(field, values, nulls));
+    }
+    return col;
+  }
+
+  /**
+   * @return <tt>field</tt> as a dictionary-encoded column of Strings, each
+   *         value being the <tt>toString()</tt> of the row's value.
+   */
+  public StringColumn strings(String field) {
+    StringColumn col = (StringColumn) cache.get("s:" + field);
+    if (col == null) {
+      int[] codes = new int[rows.size()];
+      BitSet nulls = new BitSet(codes.length);
+      Map<String, Integer> dictionary = Maps.newHashMap();
+      String[] distinct = new String[16];
+      for (int i = 0; i < codes.length; i++) {
+        Object val = value(rows.get(i), field);
+        if (val == null) {
+          codes[i] = -1;
+          nulls.set(i);
+          continue;
+        }
+        String s = val.toString();
+        Integer code = dictionary.get(s);
+        if (code == null) {
+          code = dictionary.size();
+          dictionary.put(s, code);
+          if (code == distinct.length)
+            distinct = Arrays.copyOf(distinct, code * 2);
+          distinct[code] = s;
+        }
+        codes[i] = code;
+      }
+      col = cached("s:" + field, new StringColumn(field, codes,
+          Arrays.copyOf(distinct, dictionary.size()), nulls));
+    }
+    return col;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <C extends Column> C cached(String key, C col) {
+    Column existing = cache.putIfAbsent(key, col);
+    return existing != null ? (C) existing : col;
+  }
+
+  private static Object value(Map<String, Object> row, String field) {
+    Object val = row.get(field);
+    return val == JSONObject.NULL ? null : val;
+  }
+
+  private static Double parseDouble(String s) {
+    try {
+      return Double.valueOf(s.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * A single field across all rows.
+   */
+  public abstract static class Column {
+    private final String name;
+    private final BitSet nulls;
+    private final int size;
+
+    Column(String name, int size, BitSet nulls) {
+      this.name = name;
+      this.size = size;
+      this.nulls = nulls;
+    }
+
+    /**
+     * @return the field this column holds.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * @return whether row <tt>row</tt> has no value for this field, or a
+     *         value that does not fit the column's type.
+     */
+    public boolean isNull(int row) {
+      if (row < 0 || row >= size)
+        throw new IndexOutOfBoundsException("Index: " + row + ", Size: " + size);
+      return nulls.get(row);
+    }
+
+    /**
+     * @return the number of null rows.
+     */
+    public int nullCount() {
+      return nulls.cardinality();
+    }
+  }
+
+  /**
+   * A column of doubles. Null rows hold 0.
+   */
+  public static class DoubleColumn extends Column {
+    private final double[] values;
+
+    DoubleColumn(String name, double[] values, BitSet nulls) {
+      super(name, values.length, nulls);
+      this.values = values;
+    }
+
+    public double get(int row) {
+      return values[row];
+    }
+
+    /**
+     * @return a copy of the values.
+     */
+    public double[] toArray() {
+      return values.clone();
+    }
+  }
+
+  /**
+   * A column of longs. Null rows hold 0.
+   */
+  public static class LongColumn extends Column {
+    private final long[] values;
+
+    LongColumn(String name, long[] values, BitSet nulls) {
+      super(name, values.length, nulls);
+      this.values = values;
+    }
+
+    public long get(int row) {
+      return values[row];
+    }
+
+    /**
+     * @return a copy of the values.
+     */
+    public long[] toArray() {
+      return values.clone();
+    }
+  }
+
+  /**
+   * A dictionary-encoded column of Strings: each distinct value is stored
+   * once and rows hold an index into the dictionary.
+   */
+  public static class StringColumn extends Column {
+    private final int[] codes;
+    private final String[] dictionary;
+
+    StringColumn(String name, int[] codes, String[] dictionary, BitSet nulls) {
+      super(name, codes.length, nulls);
+      this.codes = codes;
+      this.dictionary = dictionary;
+    }
+
+    /**
+     * @return the value of row <tt>row</tt>, or null.
+     */
+    public String get(int row) {
+      int code = codes[row];
+      return code < 0 ? null : dictionary[code];
+    }
+
+    /**
+     * @return the dictionary index of row <tt>row</tt>'s value, or -1 if the
+     *         row is null.
+     */
+    public int code(int row) {
+      return codes[row];
+    }
+
+    /**
+     * @return the distinct values, in order of first appearance.
+     */
+    public String[] getDictionary() {
+      return dictionary.clone();
+    }
+
+    /**
+     * @return the column as a read-only list.
+     */
+    public List<String> asList() {
+      return new AbstractList<String>() {
+        @Override
+        public String get(int index) {
+          return StringColumn.this.get(index);
+        }
+
+        @Override
+        public int size() {
+          return codes.length;
+        }
+      };
+    }
+  }
+
+}
@@ -0,0 +1,163 @@
+package com.factual.driver;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable row holding only an array of values, in the positions given
+ * by a {@link Keys} index shared by every row of a response. A null slot
+ * means the row has no such key; JSON nulls are {@link org.json.JSONObject#NULL}
+ * as elsewhere.
+ */
+final class CompactRow extends AbstractMap<String, Object> {
+  private final Keys keys;
+  private final Object[] values;
+  private final int size;
+
+  private CompactRow(Keys keys, Object[] values, int size) {
+    this.keys = keys;
+    this.values = values;
+    this.size = size;
+  }
+
+  /**
+   * Reads the object <tt>jp</tt> is positioned on into a row, adding any key
+   * not yet in <tt>keys</tt> to it and interning the strings of fields pooled
+   * by <tt>pool</tt>, if given.
+   */
+  static CompactRow read(JsonParser jp, Keys keys, StringPool pool) throws IOException {
+    if (jp.getCurrentToken() != JsonToken.START_OBJECT)
+      throw new IOException("Expected a row object but found " + jp.getCurrentToken());
+    Object[] values = new Object[keys.size()];
+    int size = 0;
+    int next = 0;
+    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+      String name = jp.getCurrentName();
+      // rows of a response usually list their keys in the same order
+      int i = keys.positionOf(name, next);
+      if (i >= values.length)
+        values = Arrays.copyOf(values, keys.size());
+      jp.nextToken();
+      if (values[i] == null)
+        size++;
+      values[i] = ResponseParser.readValue(jp, pool == null ? null : pool.forField(name));
+      next = i + 1;
+    }
+    return new CompactRow(keys, values, size);
+  }
+
+  @Override
+  public Object get(Object key) {
+    int i = keys.get(key);
+    return i >= 0 && i < values.length ? values[i] : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new Iterator<Entry<String, Object>>() {
+          private int next = advance(0);
+
+          private int advance(int i) {
+            while (i < values.length && values[i] == null)
+              i++;
+            return i;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return next < values.length;
+          }
+
+          @Override
+          public Entry<String, Object> next() {
+            if (!hasNext())
+              throw new NoSuchElementException();
+            Entry<String, Object> e = new SimpleImmutableEntry<String, Object>(
+                keys.name(next), values[next]);
+            next = advance(next + 1);
+            return e;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * The keys of the rows of one response, each with a fixed position. Keys
+   * are only added while the response is parsed, on a single thread; the
+   * index is read-only once the rows are published.
+   */
+  static final class Keys {
+    private String[] names = new String[16];
+    private final Map<String, Integer> positions = Maps.newHashMap();
+
+    int size() {
+      return positions.size();
+    }
+
+    String name(int i) {
+      return names[i];
+    }
+
+    /**
+     * @return the position of <tt>key</tt>, or -1.
+     */
+    int get(Object key) {
+      Integer i = positions.get(key);
+      return i == null ? -1 : i;
+    }
+
+    /**
+     * @return the position of <tt>name</tt>, checking <tt>expected</tt>
+     *         first and adding the key if it is new.
+     */
+    int positionOf(String name, int expected) {
+      if (expected < positions.size() && names[expected].equals(name))
+        return expected;
+      Integer i = positions.get(name);
+      if (i == null) {
+        i = positions.size();
+        if (i == names.length)
+          names = Arrays.copyOf(names, i * 2);
+        names[i] = name;
+        positions.put(name, i);
+      }
+      return i;
+    }
+  }
+
+}
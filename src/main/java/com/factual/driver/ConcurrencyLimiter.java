@@ -0,0 +1,372 @@
+package com.factual.driver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many requests one {@link Factual} instance has in flight, and
+ * discovers that limit on its own instead of relying on a hand-tuned thread
+ * count.
+ * <p>
+ * The limit follows additive-increase/multiplicative-decrease (AIMD) control.
+ * While responses come back within <tt>latencyTolerance</tt> times the lowest
+ * observed round trip time, and the current limit is actually being used, the
+ * limit grows by about one request per round trip. When latency climbs past
+ * that bound, or the server answers 429 or 503, or a request times out, the
+ * limit is multiplied by <tt>backoffRatio</tt>, at most once per round trip.
+ * Goodput therefore settles just below the point where the server starts
+ * queueing or throttling.
+ * <p>
+ * Requests beyond the limit either wait in a bounded queue or are shed
+ * immediately with a {@link FactualApiException}, depending on
+ * {@link #overflow(Overflow)}.
+ * <p>
+ * Example:
+ * <pre>
+ * factual.setConcurrencyLimiter(new ConcurrencyLimiter()
+ *     .limits(10, 1, 200)
+ *     .overflow(ConcurrencyLimiter.Overflow.QUEUE)
+ *     .maxQueue(500, 2, TimeUnit.SECONDS));
+ * </pre>
+ */
+public class ConcurrencyLimiter {
+
+  /**
+   * What happens to a request that arrives while the limit is reached.
+   */
+  public enum Overflow {
+    /** Wait for a slot, up to the configured queue length and wait time. */
+    QUEUE,
+    /** Fail straight away. */
+    SHED
+  }
+
+  /**
+   * An in-flight slot with no limiter behind it, used when concurrency is not
+   * limited.
+   */
+  protected static final Slot UNLIMITED = new Slot(null);
+
+  private final Lock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+
+  private double limit = 20;
+  private int minLimit = 1;
+  private int maxLimit = 200;
+  private double latencyTolerance = 2.0;
+  private double backoffRatio = 0.9;
+  private Overflow overflow = Overflow.QUEUE;
+  private int maxQueueLength = Integer.MAX_VALUE;
+  private long maxQueueWaitNanos = Long.MAX_VALUE;
+
+  private int inFlight = 0;
+  private int queued = 0;
+  private long minRttNanos = Long.MAX_VALUE;
+  private long lastDecrease = 0;
+  private long shed = 0;
+  private long completed = 0;
+  private long dropped = 0;
+
+  /**
+   * Sets the starting limit and the bounds the limit may move between. The
+   * defaults are 20, 1 and 200.
+   *
+   * @param initial
+   *          the limit before any responses have been observed.
+   * @param min
+   *          the lowest the limit may fall.
+   * @param max
+   *          the highest the limit may grow.
+   * @return this ConcurrencyLimiter
+   */
+  public ConcurrencyLimiter limits(int initial, int min, int max) {
+    if (min < 1 || initial < min || max < initial)
+      throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+    lock.lock();
+    try {
+      this.limit = initial;
+      this.minLimit = min;
+      this.maxLimit = max;
+    } finally {
+      lock.unlock();
+    }
+    return this;
+  }
+
+  /**
+   * Sets how far above the lowest observed round trip time a response may be
+   * before it is taken as a sign of queueing. The default is 2.0.
+   *
+   * @param latencyTolerance
+   *          the tolerated ratio of round trip time to the lowest observed
+   *          round trip time, greater than 1.
+   * @return this ConcurrencyLimiter
+   */
+  public ConcurrencyLimiter latencyTolerance(double latencyTolerance) {
+    if (latencyTolerance <= 1)
+      throw new IllegalArgumentException("latencyTolerance must be > 1");
+    this.latencyTolerance = latencyTolerance;
+    return this;
+  }
+
+  /**
+   * Sets the factor applied to the limit on overload. The default is 0.9.
+   *
+   * @param backoffRatio
+   *          the multiplicative decrease, between 0 and 1.
+   * @return this ConcurrencyLimiter
+   */
+  public ConcurrencyLimiter backoffRatio(double backoffRatio) {
+    if (backoffRatio <= 0 || backoffRatio >= 1)
+      throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+    this.backoffRatio = backoffRatio;
+    return this;
+  }
+
+  /**
+   * Sets whether requests beyond the limit are queued (the default) or shed.
+   *
+   * @param overflow
+   *          the overflow behaviour.
+   * @return this ConcurrencyLimiter
+   */
+  public ConcurrencyLimiter overflow(Overflow overflow) {
+    this.overflow = overflow;
+    return this;
+  }
+
+  /**
+   * Bounds the queue used by {@link Overflow#QUEUE}. Requests arriving at a
+   * full queue, or waiting longer than <tt>maxWait</tt>, are shed.
+   *
+   * @param maxLength
+   *          the most requests that may wait at once.
+   * @param maxWait
+   *          the longest a request may wait for a slot.
+   * @param unit
+   *          the unit of <tt>maxWait</tt>.
+   * @return this ConcurrencyLimiter
+   */
+  public ConcurrencyLimiter maxQueue(int maxLength, long maxWait, TimeUnit unit) {
+    this.maxQueueLength = maxLength;
+    this.maxQueueWaitNanos = unit.toNanos(maxWait);
+    return this;
+  }
+
+  /**
+   * @return the current concurrency limit.
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of requests currently in flight.
+   */
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of requests currently waiting for a slot.
+   */
+  public int getQueued() {
+    lock.lock();
+    try {
+      return queued;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of requests shed because the limit was reached.
+   */
+  public long getShedCount() {
+    lock.lock();
+    try {
+      return shed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of requests completed within the limit.
+   */
+  public long getCompletedCount() {
+    lock.lock();
+    try {
+      return completed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of requests that signalled overload (throttled,
+   *         unavailable or timed out).
+   */
+  public long getDroppedCount() {
+    lock.lock();
+    try {
+      return dropped;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the lowest round trip time observed recently, in milliseconds, or
+   *         -1 before the first response.
+   */
+  public long getMinRttMillis() {
+    lock.lock();
+    try {
+      return minRttNanos == Long.MAX_VALUE ? -1 : TimeUnit.NANOSECONDS.toMillis(minRttNanos);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes an in-flight slot, queueing or shedding if the limit is reached.
+   *
+   * @throws FactualApiException
+   *           if the request was shed.
+   */
+  protected Slot acquire(String urlStr, String requestMethod) {
+    lock.lock();
+    try {
+      if (inFlight < (int) limit)
+        return take();
+      if (overflow == Overflow.SHED || queued >= maxQueueLength)
+        throw shed(urlStr, requestMethod);
+
+      queued++;
+      try {
+        long remaining = maxQueueWaitNanos;
+        while (inFlight >= (int) limit) {
+          if (remaining <= 0)
+            throw shed(urlStr, requestMethod);
+          remaining = available.awaitNanos(remaining);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new FactualApiException(e).requestUrl(urlStr).requestMethod(requestMethod);
+      } finally {
+        queued--;
+      }
+      return take();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Slot take() {
+    inFlight++;
+    return new Slot(this);
+  }
+
+  private FactualApiException shed(String urlStr, String requestMethod) {
+    shed++;
+    return new FactualApiException("Client-side concurrency limit of " + (int) limit + " reached")
+    .requestUrl(urlStr).requestMethod(requestMethod);
+  }
+
+  private void release(Slot slot, int outcome) {
+    lock.lock();
+    try {
+      inFlight--;
+      long now = System.nanoTime();
+      if (outcome == Slot.SUCCESS) {
+        completed++;
+        long rtt = now - slot.start;
+        // drift slowly upwards so the baseline follows lasting latency changes
+        minRttNanos = minRttNanos == Long.MAX_VALUE ? rtt
+            : Math.min(rtt, minRttNanos + (rtt - minRttNanos) / 1000);
+        if (rtt > minRttNanos * latencyTolerance)
+          decrease(slot, now);
+        else if (inFlight + 1 >= limit / 2)
+          limit = Math.min(maxLimit, limit + 1 / limit);
+      } else if (outcome == Slot.DROPPED) {
+        dropped++;
+        decrease(slot, now);
+      }
+      available.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Decreases the limit, at most once per round trip: requests sent before
+   * the last decrease do not decrease it again.
+   */
+  private void decrease(Slot slot, long now) {
+    if (slot.start < lastDecrease)
+      return;
+    limit = Math.max(minLimit, limit * backoffRatio);
+    lastDecrease = now;
+  }
+
+  /**
+   * A request's hold on one unit of the concurrency limit. Exactly one of the
+   * outcome methods takes effect; the rest are ignored.
+   */
+  protected static class Slot {
+    private static final int SUCCESS = 0;
+    private static final int DROPPED = 1;
+    private static final int IGNORED = 2;
+
+    private final ConcurrencyLimiter limiter;
+    private final long start = System.nanoTime();
+    private boolean released = false;
+
+    private Slot(ConcurrencyLimiter limiter) {
+      this.limiter = limiter;
+    }
+
+    /**
+     * The request completed; its round trip time feeds the limit.
+     */
+    public void success() {
+      release(SUCCESS);
+    }
+
+    /**
+     * The request was throttled, rejected as unavailable or timed out.
+     */
+    public void dropped() {
+      release(DROPPED);
+    }
+
+    /**
+     * The request ended without telling anything about server load, e.g. it
+     * was malformed.
+     */
+    public void ignore() {
+      release(IGNORED);
+    }
+
+    private void release(int outcome) {
+      if (released || limiter == null)
+        return;
+      released = true;
+      limiter.release(this, outcome);
+    }
+  }
+
+}
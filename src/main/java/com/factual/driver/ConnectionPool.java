@@ -0,0 +1,345 @@
+package com.factual.driver;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.tsccm.AbstractConnPool;
+import org.apache.http.impl.conn.tsccm.BasicPoolEntry;
+import org.apache.http.impl.conn.tsccm.ConnPoolByRoute;
+import org.apache.http.impl.conn.tsccm.RouteSpecificPool;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A long-lived pool of keep-alive HTTP connections to Factual, shared by all
+ * requests made through one {@link Factual} instance.
+ * <p>
+ * Configure the pool before handing it to {@link Factual}; once the first
+ * request has been made its settings are fixed. Example:
+ * <pre>
+ * ConnectionPool pool = new ConnectionPool()
+ *     .maxConnections(200)
+ *     .maxConnectionsPerHost(100)
+ *     .idleTimeout(30, TimeUnit.SECONDS);
+ * Factual factual = new Factual(key, secret, pool);
+ * </pre>
+ */
+public class ConnectionPool implements Transport {
+  public static final int DEFAULT_MAX_CONNECTIONS = 100;
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 50;
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+  public static final long DEFAULT_EVICTION_INTERVAL_MILLIS = 5000;
+
+  /**
+   * One daemon thread evicts idle connections for every pool in the JVM.
+   */
+  private static final ScheduledExecutorService EVICTOR = Executors
+      .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("factual-connection-evictor").setDaemon(true).build());
+
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+  private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+  private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+  private long evictionIntervalMillis = DEFAULT_EVICTION_INTERVAL_MILLIS;
+  private long keepAliveMillis = -1;
+  private long connectionRequestTimeoutMillis = 0;
+
+  private StatsConnManager manager = null;
+  private volatile ApacheHttpTransport transport = null;
+  private ScheduledFuture<?> eviction = null;
+  private boolean shutdown = false;
+
+  /**
+   * Constructor. Creates a pool with the default limits; nothing is opened
+   * until the first request is made.
+   */
+  public ConnectionPool() {
+  }
+
+  /**
+   * Sets the maximum number of connections held open across all hosts.
+   *
+   * @param maxConnections
+   *          the total connection limit.
+   * @return this ConnectionPool
+   */
+  public synchronized ConnectionPool maxConnections(int maxConnections) {
+    checkNotStarted();
+    if (maxConnections <= 0)
+      throw new IllegalArgumentException("maxConnections must be > 0");
+    this.maxConnections = maxConnections;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of connections held open to a single host.
+   *
+   * @param maxConnectionsPerHost
+   *          the per-host connection limit.
+   * @return this ConnectionPool
+   */
+  public synchronized ConnectionPool maxConnectionsPerHost(int maxConnectionsPerHost) {
+    checkNotStarted();
+    if (maxConnectionsPerHost <= 0)
+      throw new IllegalArgumentException("maxConnectionsPerHost must be > 0");
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    return this;
+  }
+
+  /**
+   * Sets how long a connection may sit unused in the pool before it is
+   * closed by the background evictor.
+   *
+   * @param idleTimeout
+   *          the idle time after which a pooled connection is closed.
+   * @param unit
+   *          the unit of <tt>idleTimeout</tt>.
+   * @return this ConnectionPool
+   */
+  public synchronized ConnectionPool idleTimeout(long idleTimeout, TimeUnit unit) {
+    checkNotStarted();
+    this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+    return this;
+  }
+
+  /**
+   * Sets how often the background evictor checks for idle and expired
+   * connections.
+   *
+   * @param interval
+   *          the time between eviction runs.
+   * @param unit
+   *          the unit of <tt>interval</tt>.
+   * @return this ConnectionPool
+   */
+  public synchronized ConnectionPool evictionInterval(long interval, TimeUnit unit) {
+    checkNotStarted();
+    if (interval <= 0)
+      throw new IllegalArgumentException("Eviction interval must be > 0");
+    this.evictionIntervalMillis = unit.toMillis(interval);
+    return this;
+  }
+
+  /**
+   * Caps how long a connection is kept alive for reuse. The server's
+   * <tt>Keep-Alive</tt> hint is honoured when it is shorter. By default
+   * connections are kept for as long as the server allows.
+   *
+   * @param keepAlive
+   *          the maximum time a connection is reused.
+   * @param unit
+   *          the unit of <tt>keepAlive</tt>.
+   * @return this ConnectionPool
+   */
+  public synchronized ConnectionPool keepAlive(long keepAlive, TimeUnit unit) {
+    checkNotStarted();
+    this.keepAliveMillis = unit.toMillis(keepAlive);
+    return this;
+  }
+
+  /**
+   * Sets how long a request waits for a free connection when the pool is
+   * exhausted, or {@code 0} to wait indefinitely (the default).
+   *
+   * @param timeout
+   *          the time to wait for a pooled connection.
+   * @param unit
+   *          the unit of <tt>timeout</tt>.
+   * @return this ConnectionPool
+   */
+  public synchronized ConnectionPool connectionRequestTimeout(long timeout, TimeUnit unit) {
+    checkNotStarted();
+    this.connectionRequestTimeoutMillis = unit.toMillis(timeout);
+    return this;
+  }
+
+  /**
+   * @return the transport backed by this pool, creating the pool on first
+   *         use.
+   */
+  @Override
+  public HttpTransport getHttpTransport() {
+    HttpTransport started = transport;
+    if (started != null)
+      return started;
+    synchronized (this) {
+      if (shutdown)
+        throw new IllegalStateException("ConnectionPool has been shut down");
+      if (transport == null)
+        start();
+      return transport;
+    }
+  }
+
+  /**
+   * @return a snapshot of this pool's current usage.
+   */
+  public synchronized ConnectionPoolStats getStats() {
+    if (manager == null)
+      return new ConnectionPoolStats(maxConnections, maxConnectionsPerHost, 0, 0, 0, 0, 0, 0);
+    return manager.stats();
+  }
+
+  /**
+   * Closes every pooled connection and stops eviction. Requests made after
+   * this call will fail.
+   */
+  @Override
+  public synchronized void shutdown() {
+    shutdown = true;
+    if (eviction != null)
+      eviction.cancel(false);
+    if (manager != null)
+      manager.shutdown();
+  }
+
+  private void checkNotStarted() {
+    if (transport != null)
+      throw new IllegalStateException("ConnectionPool is already in use and can no longer be configured");
+  }
+
+  private void start() {
+    HttpParams params = new BasicHttpParams();
+    HttpConnectionParams.setStaleCheckingEnabled(params, true);
+    HttpConnectionParams.setSocketBufferSize(params, 8192);
+    ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+    ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerHost));
+    ConnManagerParams.setTimeout(params, connectionRequestTimeoutMillis);
+
+    SchemeRegistry registry = new SchemeRegistry();
+    registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+    registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+    manager = new StatsConnManager(params, registry);
+    DefaultHttpClient client = new DefaultHttpClient(manager, params);
+    // Retries are the caller's decision, not the connection pool's.
+    client.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+    client.setKeepAliveStrategy(new CappedKeepAliveStrategy(keepAliveMillis));
+    transport = new ApacheHttpTransport(client);
+
+    eviction = EVICTOR.scheduleWithFixedDelay(new IdleConnectionEvictor(manager, idleTimeoutMillis),
+        evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Periodically closes expired and idle connections. Only holds the
+   * connection manager weakly so an abandoned pool can still be collected.
+   */
+  private static class IdleConnectionEvictor implements Runnable {
+    private final WeakReference<StatsConnManager> ref;
+    private final long idleTimeoutMillis;
+
+    public IdleConnectionEvictor(StatsConnManager manager, long idleTimeoutMillis) {
+      this.ref = new WeakReference<StatsConnManager>(manager);
+      this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    @Override
+    public void run() {
+      StatsConnManager manager = ref.get();
+      if (manager == null)
+        throw new IllegalStateException("Connection pool was garbage collected");
+      manager.closeExpiredConnections();
+      manager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Uses the server's keep-alive hint, bounded by a configured maximum.
+   */
+  private static class CappedKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+    private final ConnectionKeepAliveStrategy delegate = new DefaultConnectionKeepAliveStrategy();
+    private final long maxMillis;
+
+    public CappedKeepAliveStrategy(long maxMillis) {
+      this.maxMillis = maxMillis;
+    }
+
+    @Override
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+      long duration = delegate.getKeepAliveDuration(response, context);
+      if (maxMillis < 0)
+        return duration;
+      return duration < 0 ? maxMillis : Math.min(duration, maxMillis);
+    }
+  }
+
+  /**
+   * Connection manager whose pool counts opened and reused connections.
+   */
+  private class StatsConnManager extends ThreadSafeClientConnManager {
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private StatsConnPool statsPool;
+
+    public StatsConnManager(HttpParams params, SchemeRegistry registry) {
+      super(params, registry);
+    }
+
+    @Override
+    protected AbstractConnPool createConnectionPool(HttpParams params) {
+      statsPool = new StatsConnPool(connOperator, params);
+      return statsPool;
+    }
+
+    public ConnectionPoolStats stats() {
+      return statsPool.stats();
+    }
+
+    private class StatsConnPool extends ConnPoolByRoute {
+
+      public StatsConnPool(ClientConnectionOperator operator, HttpParams params) {
+        super(operator, params);
+      }
+
+      @Override
+      protected BasicPoolEntry createEntry(RouteSpecificPool rospl, ClientConnectionOperator op) {
+        opened.incrementAndGet();
+        return super.createEntry(rospl, op);
+      }
+
+      @Override
+      protected BasicPoolEntry getFreeEntry(RouteSpecificPool rospl, Object state) {
+        BasicPoolEntry entry = super.getFreeEntry(rospl, state);
+        if (entry != null)
+          reused.incrementAndGet();
+        return entry;
+      }
+
+      public ConnectionPoolStats stats() {
+        poolLock.lock();
+        try {
+          return new ConnectionPoolStats(maxConnections, maxConnectionsPerHost, numConnections,
+              leasedConnections.size(), freeConnections.size(), waitingThreads.size(),
+              opened.get(), reused.get());
+        } finally {
+          poolLock.unlock();
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+package com.factual.driver;
+
+/**
+ * A point-in-time snapshot of a {@link ConnectionPool}'s usage, useful for
+ * sizing the pool.
+ */
+public class ConnectionPoolStats {
+  private final int maxConnections;
+  private final int maxConnectionsPerHost;
+  private final int openConnections;
+  private final int leasedConnections;
+  private final int idleConnections;
+  private final int pendingRequests;
+  private final long connectionsOpened;
+  private final long connectionsReused;
+
+  public ConnectionPoolStats(int maxConnections, int maxConnectionsPerHost,
+      int openConnections, int leasedConnections, int idleConnections,
+      int pendingRequests, long connectionsOpened, long connectionsReused) {
+    this.maxConnections = maxConnections;
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    this.openConnections = openConnections;
+    this.leasedConnections = leasedConnections;
+    this.idleConnections = idleConnections;
+    this.pendingRequests = pendingRequests;
+    this.connectionsOpened = connectionsOpened;
+    this.connectionsReused = connectionsReused;
+  }
+
+  /**
+   * @return the configured total connection limit.
+   */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * @return the configured per-host connection limit.
+   */
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  /**
+   * @return the number of connections currently open, leased or idle.
+   */
+  public int getOpenConnections() {
+    return openConnections;
+  }
+
+  /**
+   * @return the number of connections currently serving a request.
+   */
+  public int getLeasedConnections() {
+    return leasedConnections;
+  }
+
+  /**
+   * @return the number of open connections waiting in the pool for reuse.
+   */
+  public int getIdleConnections() {
+    return idleConnections;
+  }
+
+  /**
+   * @return the number of requests blocked waiting for a free connection.
+   */
+  public int getPendingRequests() {
+    return pendingRequests;
+  }
+
+  /**
+   * @return the total number of connections opened since the pool started.
+   */
+  public long getConnectionsOpened() {
+    return connectionsOpened;
+  }
+
+  /**
+   * @return the total number of times a kept-alive connection was reused.
+   */
+  public long getConnectionsReused() {
+    return connectionsReused;
+  }
+
+  @Override
+  public String toString() {
+    return "ConnectionPoolStats[open=" + openConnections + ", leased="
+        + leasedConnections + ", idle=" + idleConnections + ", pending="
+        + pendingRequests + ", opened=" + connectionsOpened + ", reused="
+        + connectionsReused + ", max=" + maxConnections + ", maxPerHost="
+        + maxConnectionsPerHost + "]";
+  }
+}
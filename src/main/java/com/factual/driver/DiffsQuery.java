@@ -3,13 +3,15 @@ package com.factual.driver;
 import java.util.Date;
 import java.util.Map;
 
+import com.google.common.hash.HashCode;
+
 /**
  * Represents a Factual Diffs query.
  * 
  * @author brandon
  * 
  */
-public class DiffsQuery {
+public class DiffsQuery implements Parameters.Canonical {
 
   public DiffsQuery() {
 
@@ -118,4 +120,30 @@ public class DiffsQuery {
     queryParams.setParam(key, value);
     return this;
   }
+
+  /**
+   * @return the canonical form of this DiffsQuery; see
+   *         {@link Query#toCanonicalString()}.
+   */
+  public String toCanonicalString() {
+    return toUrlQuery();
+  }
+
+  /**
+   * @return a stable 128-bit fingerprint of this DiffsQuery's canonical form.
+   */
+  public HashCode fingerprint() {
+    return Parameters.fingerprint(getClass(), toCanonicalString());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Parameters.canonicalEquals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Parameters.canonicalHashCode(this);
+  }
+
 }
@@ -0,0 +1,511 @@
+package com.factual.driver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * A persistent tier behind a {@link ResponseCache}, keeping response bodies
+ * in memory-mapped segment files so that a restarted process serves warm
+ * results at once. Attach it with {@link ResponseCache#diskTier(DiskCache)}.
+ * <p>
+ * Bodies are appended to segment files of up to 16 MB. An on-disk hash index
+ * maps each key to its record, with the record's checksum and expiry times.
+ * Opening a cache only maps the index; segments are mapped when first read,
+ * so opening takes the same time whatever the size of the cache. Records
+ * whose checksum does not match, e.g. after a crash mid-write, are dropped
+ * when read.
+ * <p>
+ * Replaced and expired records stay on disk until compaction, which rewrites
+ * the live records into a new generation of files and deletes the old. It
+ * runs when the index fills up or the files reach the size bound, keeping
+ * records up to three quarters of the bound and dropping the rest.
+ * <p>
+ * A directory can be used by one DiskCache at a time; others, in this
+ * process or another, fail to open it.
+ */
+public class DiskCache implements Closeable {
+  private static final int MAGIC = 0xFAC7CAC4;
+  private static final int SEGMENT_BYTES = 16 * 1024 * 1024;
+  private static final int SEGMENT_HEADER = 8;
+  private static final int RECORD_HEADER = 24;
+  private static final int INDEX_HEADER = 32;
+  private static final int SLOT = 48;
+  private static final int EMPTY = 0, TOMBSTONE = -1;
+
+  /**
+   * A cached response body and when it expires, in milliseconds since the
+   * epoch.
+   */
+  static final class Record {
+    final byte[] body;
+    final long expiresAt;
+    final long staleUntil;
+
+    Record(byte[] body, long expiresAt, long staleUntil) {
+      this.body = body;
+      this.expiresAt = expiresAt;
+      this.staleUntil = staleUntil;
+    }
+  }
+
+  private final File directory;
+  private final long maximumBytes;
+  private final RandomAccessFile lockFile;
+  private final FileLock lock;
+
+  private int generation;
+  private MappedByteBuffer index;
+  private int capacity;
+  private int live;
+  private int tombstones;
+  private final Map<Integer, MappedByteBuffer> segments = Maps.newHashMap();
+  private int segmentCount;
+  private long bytesUsed;
+  private long checksumFailures = 0;
+
+  /**
+   * Opens, or creates, the cache in <tt>directory</tt>, bounded to 256 MB.
+   */
+  public DiskCache(File directory) throws IOException {
+    this(directory, 256L * 1024 * 1024);
+  }
+
+  /**
+   * Opens, or creates, the cache in <tt>directory</tt>.
+   *
+   * @param maximumBytes
+   *          the bound on the size of the segment files.
+   */
+  public DiskCache(File directory, long maximumBytes) throws IOException {
+    if (maximumBytes < SEGMENT_HEADER + RECORD_HEADER)
+      throw new IllegalArgumentException("maximumBytes too small: " + maximumBytes);
+    this.directory = directory;
+    this.maximumBytes = maximumBytes;
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException("Cannot create " + directory);
+    lockFile = new RandomAccessFile(new File(directory, "lock"), "rw");
+    FileLock acquired;
+    try {
+      acquired = lockFile.getChannel().tryLock();
+    } catch (IOException e) {
+      acquired = null;
+    } catch (OverlappingFileLockException e) {
+      // held by another DiskCache in this process
+      acquired = null;
+    }
+    if (acquired == null) {
+      lockFile.close();
+      throw new IOException(directory + " is in use by another DiskCache");
+    }
+    lock = acquired;
+    File current = new File(directory, "CURRENT");
+    if (current.exists()) {
+      generation = Integer.parseInt(Files.toString(current, Charsets.UTF_8).trim());
+      openGeneration();
+    } else {
+      generation = 0;
+      createGeneration(initialCapacity());
+    }
+  }
+
+  /**
+   * @return the record for <tt>key</tt>, or null if there is none or it is
+   *         corrupt.
+   */
+  synchronized Record get(HashCode key) {
+    if (index == null)
+      return null;
+    long hi = hi(key), lo = lo(key);
+    int slot = find(hi, lo);
+    if (slot < 0)
+      return null;
+    int at = slotOffset(slot);
+    byte[] body = read(index.getInt(at + 16), index.getInt(at + 20), index.getInt(at + 24),
+        index.getInt(at + 28), hi, lo);
+    if (body == null) {
+      checksumFailures++;
+      remove(slot);
+      return null;
+    }
+    return new Record(body, index.getLong(at + 32), index.getLong(at + 40));
+  }
+
+  /**
+   * Stores <tt>body</tt> for <tt>key</tt>, replacing any earlier record. Does
+   * nothing if the body cannot fit even after compaction.
+   */
+  synchronized void put(HashCode key, byte[] body, long expiresAt, long staleUntil) {
+    if (index == null || body.length + RECORD_HEADER > SEGMENT_BYTES - SEGMENT_HEADER)
+      return;
+    try {
+      long hi = hi(key), lo = lo(key);
+      int existing = find(hi, lo);
+      if (existing >= 0)
+        remove(existing);
+      if (live + tombstones + 1 > capacity * 3 / 4 || !hasRoom(body.length)) {
+        compact();
+        if (!hasRoom(body.length))
+          return;
+      }
+      insert(hi, lo, body, expiresAt, staleUntil);
+    } catch (IOException e) {
+      // a persistent tier that cannot be written to just stops caching
+    }
+  }
+
+  /**
+   * Rewrites the live, unexpired records into a new generation of files and
+   * deletes the old ones, reclaiming the space of replaced and expired
+   * records.
+   *
+   * @throws IllegalStateException
+   *           if the cache is closed.
+   */
+  public synchronized void compact() throws IOException {
+    checkOpen();
+    MappedByteBuffer oldIndex = index;
+    int oldCapacity = capacity;
+    int oldGeneration = generation;
+    int oldSegmentCount = segmentCount;
+    Map<Integer, MappedByteBuffer> oldSegments = Maps.newHashMap(segments);
+    long now = System.currentTimeMillis();
+
+    generation = oldGeneration + 1;
+    createGeneration(live * 2 > oldCapacity * 3 / 4 ? oldCapacity * 2 : oldCapacity);
+    for (int slot = 0; slot < oldCapacity; slot++) {
+      int at = INDEX_HEADER + slot * SLOT;
+      int segment = oldIndex.getInt(at + 16);
+      if (segment <= 0 || oldIndex.getLong(at + 40) <= now)
+        continue;
+      long hi = oldIndex.getLong(at), lo = oldIndex.getLong(at + 8);
+      byte[] body = read(oldSegments, oldGeneration, segment, oldIndex.getInt(at + 20),
+          oldIndex.getInt(at + 24), oldIndex.getInt(at + 28), hi, lo);
+      if (body == null) {
+        checksumFailures++;
+        continue;
+      }
+      // leave headroom, so the next writes do not compact again at once
+      if (bytesUsed + RECORD_HEADER + body.length <= maximumBytes * 3 / 4 && hasRoom(body.length))
+        insert(hi, lo, body, oldIndex.getLong(at + 32), oldIndex.getLong(at + 40));
+    }
+    force();
+    writeCurrent();
+    new File(directory, indexName(oldGeneration)).delete();
+    for (int segment = 1; segment <= oldSegmentCount; segment++) {
+      new File(directory, segmentName(oldGeneration, segment)).delete();
+    }
+  }
+
+  /**
+   * Drops every record.
+   *
+   * @throws IllegalStateException
+   *           if the cache is closed.
+   */
+  public synchronized void clear() throws IOException {
+    checkOpen();
+    int oldGeneration = generation;
+    int oldSegmentCount = segmentCount;
+    generation++;
+    createGeneration(initialCapacity());
+    writeCurrent();
+    new File(directory, indexName(oldGeneration)).delete();
+    for (int segment = 1; segment <= oldSegmentCount; segment++) {
+      new File(directory, segmentName(oldGeneration, segment)).delete();
+    }
+  }
+
+  /**
+   * @return the number of records held, including expired ones not yet
+   *         compacted away.
+   */
+  public synchronized int size() {
+    return live;
+  }
+
+  /**
+   * @return the bytes of segment files written, including replaced and
+   *         expired records not yet compacted away.
+   */
+  public synchronized long getBytesUsed() {
+    return bytesUsed;
+  }
+
+  /**
+   * @return the number of records dropped because their checksum did not
+   *         match.
+   */
+  public synchronized long getChecksumFailureCount() {
+    return checksumFailures;
+  }
+
+  /**
+   * Flushes the index and segments to disk and releases the directory.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (index == null)
+      return;
+    force();
+    index = null;
+    segments.clear();
+    try {
+      lock.release();
+    } finally {
+      Closeables.close(lockFile, true);
+    }
+  }
+
+  private void checkOpen() {
+    if (index == null)
+      throw new IllegalStateException("DiskCache is closed: " + directory);
+  }
+
+  private void insert(long hi, long lo, byte[] body, long expiresAt, long staleUntil)
+      throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    int checksum = (int) crc.getValue();
+
+    MappedByteBuffer segment = segment(segmentCount);
+    int offset = segment.getInt(4);
+    segment.putLong(offset, hi);
+    segment.putLong(offset + 8, lo);
+    segment.putInt(offset + 16, body.length);
+    segment.putInt(offset + 20, checksum);
+    ByteBuffer target = segment.duplicate();
+    target.position(offset + RECORD_HEADER);
+    target.put(body);
+    segment.putInt(4, offset + RECORD_HEADER + body.length);
+    bytesUsed += RECORD_HEADER + body.length;
+
+    int slot = (int) mix(hi, lo) & (capacity - 1);
+    while (index.getInt(slotOffset(slot) + 16) > 0) {
+      slot = (slot + 1) & (capacity - 1);
+    }
+    int at = slotOffset(slot);
+    if (index.getInt(at + 16) == TOMBSTONE)
+      tombstones--;
+    index.putLong(at, hi);
+    index.putLong(at + 8, lo);
+    index.putInt(at + 20, offset);
+    index.putInt(at + 24, body.length);
+    index.putInt(at + 28, checksum);
+    index.putLong(at + 32, expiresAt);
+    index.putLong(at + 40, staleUntil);
+    // written last, so a torn slot reads as empty or fails its checksum
+    index.putInt(at + 16, segmentCount);
+    live++;
+    writeCounts();
+  }
+
+  /**
+   * @return whether a body of <tt>length</tt> bytes fits, moving on to a new
+   *         segment if the current one is full.
+   */
+  private boolean hasRoom(int length) throws IOException {
+    int needed = RECORD_HEADER + length;
+    if (segmentCount > 0) {
+      MappedByteBuffer current = segment(segmentCount);
+      if (current.getInt(4) + needed <= current.capacity())
+        return bytesUsed + needed <= maximumBytes;
+    }
+    if (needed > segmentBytes() - SEGMENT_HEADER
+        || (long) (segmentCount + 1) * SEGMENT_HEADER + bytesUsed + needed > maximumBytes)
+      return false;
+    segmentCount++;
+    MappedByteBuffer segment = map(segmentName(generation, segmentCount), segmentBytes());
+    segment.putInt(0, MAGIC);
+    segment.putInt(4, SEGMENT_HEADER);
+    segments.put(segmentCount, segment);
+    writeCounts();
+    return true;
+  }
+
+  private int find(long hi, long lo) {
+    int slot = (int) mix(hi, lo) & (capacity - 1);
+    for (int probes = 0; probes < capacity; probes++) {
+      int at = slotOffset(slot);
+      int segment = index.getInt(at + 16);
+      if (segment == EMPTY)
+        return -1;
+      if (segment > 0 && index.getLong(at) == hi && index.getLong(at + 8) == lo)
+        return slot;
+      slot = (slot + 1) & (capacity - 1);
+    }
+    return -1;
+  }
+
+  private void remove(int slot) {
+    index.putInt(slotOffset(slot) + 16, TOMBSTONE);
+    live--;
+    tombstones++;
+    writeCounts();
+  }
+
+  private byte[] read(int segment, int offset, int length, int checksum, long hi, long lo) {
+    return read(segments, generation, segment, offset, length, checksum, hi, lo);
+  }
+
+  /**
+   * @return the body of the record at <tt>offset</tt>, or null if it does
+   *         not match the index entry or its checksum.
+   */
+  private byte[] read(Map<Integer, MappedByteBuffer> mapped, int gen, int segment, int offset,
+      int length, int checksum, long hi, long lo) {
+    try {
+      MappedByteBuffer buffer = mapped.get(segment);
+      if (buffer == null) {
+        File file = new File(directory, segmentName(gen, segment));
+        if (!file.exists())
+          return null;
+        buffer = map(file.getName(), file.length());
+        mapped.put(segment, buffer);
+      }
+      if (offset < SEGMENT_HEADER || (long) offset + RECORD_HEADER + length > buffer.getInt(4)
+          || buffer.getLong(offset) != hi || buffer.getLong(offset + 8) != lo
+          || buffer.getInt(offset + 16) != length || buffer.getInt(offset + 20) != checksum)
+        return null;
+      byte[] body = new byte[length];
+      ByteBuffer source = buffer.duplicate();
+      source.position(offset + RECORD_HEADER);
+      source.get(body);
+      CRC32 crc = new CRC32();
+      crc.update(body);
+      return (int) crc.getValue() == checksum ? body : null;
+    } catch (IOException e) {
+      return null;
+    } catch (IndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+
+  private MappedByteBuffer segment(int segment) throws IOException {
+    MappedByteBuffer buffer = segments.get(segment);
+    if (buffer == null) {
+      File file = new File(directory, segmentName(generation, segment));
+      buffer = map(file.getName(), file.exists() ? file.length() : segmentBytes());
+      segments.put(segment, buffer);
+    }
+    return buffer;
+  }
+
+  private void openGeneration() throws IOException {
+    File file = new File(directory, indexName(generation));
+    if (!file.exists()) {
+      createGeneration(initialCapacity());
+      return;
+    }
+    segments.clear();
+    index = map(file.getName(), file.length());
+    if (index.getInt(0) != MAGIC)
+      throw new IOException("Not a DiskCache index: " + file);
+    capacity = index.getInt(4);
+    live = index.getInt(8);
+    tombstones = index.getInt(12);
+    segmentCount = index.getInt(16);
+    bytesUsed = index.getLong(24);
+  }
+
+  private void createGeneration(int capacity) throws IOException {
+    segments.clear();
+    this.capacity = capacity;
+    this.live = 0;
+    this.tombstones = 0;
+    this.segmentCount = 0;
+    this.bytesUsed = 0;
+    File file = new File(directory, indexName(generation));
+    file.delete();
+    index = map(file.getName(), INDEX_HEADER + (long) capacity * SLOT);
+    index.putInt(0, MAGIC);
+    index.putInt(4, capacity);
+    writeCounts();
+    if (generation == 0)
+      writeCurrent();
+  }
+
+  private void writeCounts() {
+    index.putInt(8, live);
+    index.putInt(12, tombstones);
+    index.putInt(16, segmentCount);
+    index.putLong(24, bytesUsed);
+  }
+
+  private void writeCurrent() throws IOException {
+    File tmp = new File(directory, "CURRENT.tmp");
+    Files.write(String.valueOf(generation), tmp, Charsets.UTF_8);
+    File current = new File(directory, "CURRENT");
+    if (!tmp.renameTo(current)) {
+      current.delete();
+      if (!tmp.renameTo(current))
+        throw new IOException("Cannot write " + current);
+    }
+  }
+
+  private void force() {
+    index.force();
+    for (MappedByteBuffer segment : segments.values()) {
+      segment.force();
+    }
+  }
+
+  private MappedByteBuffer map(String name, long size) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(new File(directory, name), "rw");
+    try {
+      return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } finally {
+      // the mapping stays valid once the file is closed
+      file.close();
+    }
+  }
+
+  private int segmentBytes() {
+    return (int) Math.min(SEGMENT_BYTES, maximumBytes);
+  }
+
+  private int initialCapacity() {
+    long expected = maximumBytes / 2048;
+    return Integer.highestOneBit((int) Math.max(1024, Math.min(1 << 24, expected)) - 1) << 1;
+  }
+
+  private static int slotOffset(int slot) {
+    return INDEX_HEADER + slot * SLOT;
+  }
+
+  private static String indexName(int generation) {
+    return "index-" + generation;
+  }
+
+  private static String segmentName(int generation, int segment) {
+    return "segment-" + generation + "-" + segment;
+  }
+
+  private static long hi(HashCode key) {
+    return ByteBuffer.wrap(key.asBytes()).getLong(0);
+  }
+
+  private static long lo(HashCode key) {
+    return ByteBuffer.wrap(key.asBytes()).getLong(8);
+  }
+
+  private static long mix(long hi, long lo) {
+    long h = hi ^ lo;
+    return h ^ (h >>> 31);
+  }
+
+}
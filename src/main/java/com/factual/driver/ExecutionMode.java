@@ -0,0 +1,64 @@
+package com.factual.driver;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * How {@link FactualAsync} runs the blocking calls it is given.
+ */
+public enum ExecutionMode {
+
+  /**
+   * Runs calls on a cached pool of daemon platform threads. Idle threads are
+   * reused; a new one is started whenever every thread is busy.
+   */
+  CACHED_THREAD_POOL,
+
+  /**
+   * Runs every call on its own virtual thread, so the number of calls in
+   * flight is bounded by the transport rather than by a thread pool. Virtual
+   * threads need Java 21 or later; on older JVMs this mode falls back to
+   * {@link #CACHED_THREAD_POOL}. See {@link #isVirtualThreadSupported()}.
+   */
+  VIRTUAL_THREAD_PER_TASK;
+
+  private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+  /**
+   * @return true if this JVM can run calls on virtual threads.
+   */
+  public static boolean isVirtualThreadSupported() {
+    return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+  }
+
+  /**
+   * @return a new executor running calls in this mode. The caller owns it
+   *         and is responsible for shutting it down.
+   */
+  public ExecutorService newExecutor() {
+    if (this == VIRTUAL_THREAD_PER_TASK && isVirtualThreadSupported()) {
+      try {
+        return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("factual-async-%d").setDaemon(true).build());
+  }
+
+  /**
+   * The driver is built for Java 6, so the Java 21 factory is looked up
+   * reflectively.
+   */
+  private static Method findVirtualThreadExecutor() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
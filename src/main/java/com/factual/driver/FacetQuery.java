@@ -3,6 +3,8 @@ package com.factual.driver;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.hash.HashCode;
+
 /**
  * Represents a top level Factual facet query. Knows how to represent the facet
  * query as URL encoded key value pairs, ready for the query string in a GET
@@ -10,7 +12,7 @@ import java.util.Map;
  * 
  * @author brandon
  */
-public class FacetQuery implements Filterable {
+public class FacetQuery implements Filterable, Parameters.Canonical {
 
   private boolean includeRowCount;
 
@@ -179,4 +181,30 @@ public class FacetQuery implements Filterable {
   public String toUrlQuery() {
     return UrlUtil.toUrlQuery(toUrlParams());
   }
+
+  /**
+   * @return the canonical form of this FacetQuery; see
+   *         {@link Query#toCanonicalString()}.
+   */
+  public String toCanonicalString() {
+    return toUrlQuery();
+  }
+
+  /**
+   * @return a stable 128-bit fingerprint of this FacetQuery's canonical form.
+   */
+  public HashCode fingerprint() {
+    return Parameters.fingerprint(getClass(), toCanonicalString());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Parameters.canonicalEquals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Parameters.canonicalHashCode(this);
+  }
+
 }
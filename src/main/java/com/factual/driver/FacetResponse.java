@@ -1,9 +1,12 @@
 package com.factual.driver;
 
+import java.io.IOException;
 import java.util.Map;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.google.common.collect.Maps;
 
 /**
  * Represents the response from running a Facet lookup against Factual.
@@ -11,25 +14,27 @@ import org.json.JSONObject;
  * @author brandon
  */
 public class FacetResponse extends Response {
-  private Map<String, Map<String, Object>> data = null;
+  private final Map<String, Map<String, Object>> data = Maps.newHashMap();
   private InternalResponse resp = null;
 
   /**
-   * Constructor, parses from a JSON response String.
+   * Constructor, parses the JSON response in a single streaming pass.
    */
   public FacetResponse(InternalResponse resp) {
     this.resp = resp;
-    try {
-      JSONObject rootJsonObj = new JSONObject(resp.getContent());
-      Response.withMeta(this, rootJsonObj);
-      parseResponse(rootJsonObj.getJSONObject(Constants.RESPONSE));
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
-  private void parseResponse(JSONObject jo) throws JSONException {
-    data = JsonUtil.data(jo.getJSONObject(Constants.FACET_DATA));
+    ResponseParser.parse(this, resp, new ResponseParser.Handler() {
+      @Override
+      public boolean field(String name, JsonParser jp) throws IOException {
+        if (!Constants.FACET_DATA.equals(name) || jp.getCurrentToken() != JsonToken.START_OBJECT)
+          return false;
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+          String field = jp.getCurrentName();
+          jp.nextToken();
+          data.put(field, ResponseParser.readRow(jp));
+        }
+        return true;
+      }
+    });
   }
 
   /**
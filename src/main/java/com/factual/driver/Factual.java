@@ -1,19 +1,24 @@
 package com.factual.driver;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.security.GeneralSecurityException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.channels.WritableByteChannel;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 import java.util.logging.StreamHandler;
 
-import com.google.api.client.auth.oauth.OAuthHmacSigner;
-import com.google.api.client.auth.oauth.OAuthParameters;
 import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpRequest;
@@ -22,7 +27,8 @@ import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.UrlEncodedContent;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
 
@@ -36,15 +42,26 @@ import com.google.common.io.Closeables;
 public class Factual {
   private static final String DRIVER_HEADER_TAG = "factual-java-driver-v1.7.8";
   private static final String DEFAULT_HOST_HEADER = "api.v3.factual.com";
-  private String factHome = "http://api.v3.factual.com/";
-  private String host = DEFAULT_HOST_HEADER;
-  private final String key;
-  private final OAuthHmacSigner signer;
-  private boolean debug = false;
-  private int readTimeout = -1;
-  private int connectionTimeout = -1;
-  private StreamHandler debugHandler = null;
-  private Logger logger = null;
+  private volatile String factHome = "http://api.v3.factual.com/";
+  private volatile String host = DEFAULT_HOST_HEADER;
+  private final RequestSigner signer;
+  private final Transport transport;
+  private volatile boolean debug = false;
+  private volatile int readTimeout = -1;
+  private volatile int connectionTimeout = -1;
+  private volatile StreamHandler debugHandler = null;
+  private volatile RetryPolicy retryPolicy = RetryPolicy.NONE;
+  private volatile RateLimiter rateLimiter = null;
+  private volatile ConcurrencyLimiter concurrencyLimiter = null;
+  private volatile HedgePolicy hedgePolicy = null;
+  private volatile boolean keepRawJson = true;
+  private volatile RowFormat rowFormat = RowFormat.MAP;
+  private volatile StringPool stringPool = null;
+  private volatile Executor multiParseExecutor = null;
+  private volatile MultiPolicy multiPolicy = new MultiPolicy();
+  private volatile ReadBatcher batcher = null;
+  private volatile ResponseCache responseCache = null;
+  private volatile RequestCoalescer requestCoalescer = null;
 
   /**
    * Constructor. Represents your authenticated access to Factual.
@@ -69,12 +86,27 @@ public class Factual {
    *          whether or not this is in debug mode
    */
   public Factual(String key, String secret, boolean debug) {
-    this.key = key;
-    this.signer = new OAuthHmacSigner();
-    this.signer.clientSharedSecret = secret;
+    this(key, secret, new ConnectionPool());
     debug(debug);
   }
 
+  /**
+   * Constructor. Represents your authenticated access to Factual, sending all
+   * requests through <tt>transport</tt>.
+   * 
+   * @param key
+   *          your oauth key.
+   * @param secret
+   *          your oauth secret.
+   * @param transport
+   *          the HTTP backend used for every request made by this instance,
+   *          e.g. a configured {@link ConnectionPool}. See {@link Transports}.
+   */
+  public Factual(String key, String secret, Transport transport) {
+    this.signer = new RequestSigner(key, secret);
+    this.transport = transport;
+  }
+
   /**
    * Change the base URL at which to contact Factual's API. This may be useful
    * if you want to talk to a test or staging server.
@@ -84,7 +116,7 @@ public class Factual {
    * @param urlBase
    *          the base URL at which to contact Factual's API.
    */
-  public synchronized void setFactHome(String urlBase) {
+  public void setFactHome(String urlBase) {
     this.factHome = urlBase;
   }
 
@@ -94,7 +126,7 @@ public class Factual {
    * @param host
    *          the host header value for a request to Factual's API.
    */
-  public synchronized void setRequestHost(String host) {
+  public void setRequestHost(String host) {
     this.host = host;
   }
 
@@ -108,7 +140,51 @@ public class Factual {
    * @return the response of running <tt>query</tt> against Factual.
    */
   public ReadResponse fetch(String tableName, Query query) {
-    return new ReadResponse(getInternal(urlForFetch(tableName), query.toUrlParams()));
+    return (ReadResponse) read(new ReadRequest(urlForFetch(tableName), query.toUrlParams()),
+        ResponseCache.Endpoint.FETCH);
+  }
+
+  /**
+   * Walks every row of a read <tt>query</tt> against the specified Factual
+   * table, fetching it a page at a time and the next pages in the
+   * background. See {@link QueryIterator} for the page size and prefetch
+   * depth.
+   *
+   * @param tableName
+   *          the name of the table you wish to query (e.g., "places")
+   * @param query
+   *          the read query to run against <tt>table</tt>; its offset and
+   *          limit, if set, bound the rows walked.
+   * @return an iterator over the rows matching <tt>query</tt>.
+   */
+  public QueryIterator iterate(String tableName, Query query) {
+    return new QueryIterator(this, tableName, query.toUrlParams());
+  }
+
+  /**
+   * Runs one page of a {@link QueryIterator}.
+   */
+  ReadResponse fetchPage(String tableName, Map<String, Object> params) {
+    return (ReadResponse) read(new ReadRequest(urlForFetch(tableName), params),
+        ResponseCache.Endpoint.FETCH);
+  }
+
+  /**
+   * Runs a read <tt>query</tt> against the specified Factual table, decoding
+   * each row into an instance of <tt>type</tt>.
+   *
+   * @param tableName
+   *          the name of the table you wish to query (e.g., "places")
+   * @param query
+   *          the read query to run against <tt>table</tt>.
+   * @param type
+   *          the row type; a {@link FactualRow} class or one with a codec
+   *          installed via {@link RowCodec#register(Class, RowCodec)}.
+   * @return the response of running <tt>query</tt> against Factual.
+   */
+  public <T> TypedReadResponse<T> fetch(String tableName, Query query, Class<T> type) {
+    RowCodec<T> codec = RowCodec.forClass(type);
+    return new TypedReadResponse<T>(getInternal(urlForFetch(tableName), query.toUrlParams()), codec);
   }
 
   /**
@@ -123,7 +199,8 @@ public class Factual {
    * @return the response of running <tt>query</tt> against Factual.
    */
   public RowResponse fetchRow(String tableName, String factualId, RowQuery query) {
-    return new RowResponse(getInternal(urlForFetchRow(tableName, factualId), query.toUrlParams()));
+    return (RowResponse) read(new RowRequest(urlForFetchRow(tableName, factualId),
+        query.toUrlParams()), ResponseCache.Endpoint.FETCH_ROW);
   }
 
   /**
@@ -179,7 +256,8 @@ public class Factual {
    * @return the response of running <tt>geopulse</tt> against Factual.
    */
   public ReadResponse geopulse(Geopulse geopulse) {
-    return new ReadResponse(getInternal(urlForGeopulse(), geopulse.toUrlParams()));
+    return (ReadResponse) read(new ReadRequest(urlForGeopulse(), geopulse.toUrlParams()),
+        ResponseCache.Endpoint.GEOPULSE);
   }
 
   /**
@@ -192,8 +270,8 @@ public class Factual {
    *         against Factual.
    */
   public ReadResponse reverseGeocode(Point point) {
-    return new ReadResponse(getInternal(urlForGeocode(),
-        new Geocode(point).toUrlParams()));
+    return (ReadResponse) read(new ReadRequest(urlForGeocode(),
+        new Geocode(point).toUrlParams()), ResponseCache.Endpoint.REVERSE_GEOCODE);
   }
 
   /**
@@ -208,7 +286,8 @@ public class Factual {
    * @return the response of running <tt>facet</tt> against Factual.
    */
   public FacetResponse fetch(String tableName, FacetQuery facet) {
-    return new FacetResponse(getInternal(urlForFacets(tableName), facet.toUrlParams()));
+    return (FacetResponse) read(new FacetRequest(urlForFacets(tableName), facet.toUrlParams()),
+        ResponseCache.Endpoint.FACETS);
   }
 
   /**
@@ -451,6 +530,56 @@ public class Factual {
     return request(new RawReadRequest(path, queryParams));
   }
 
+  /**
+   * Runs a read, answering it from the cache set by
+   * {@link #setResponseCache(ResponseCache)} where possible.
+   */
+  private Response read(RequestImpl request, final ResponseCache.Endpoint endpoint) {
+    ResponseCache cache = responseCache;
+    if (cache == null || !cache.caches(endpoint))
+      return send(request, endpoint);
+    String url = factHome + request.toUrlString();
+    final RequestImpl caching = new CachingRequest(request, cache, endpoint, url);
+    byte[] body = cache.get(endpoint, url, new Runnable() {
+      @Override
+      public void run() {
+        send(caching, endpoint);
+      }
+    });
+    if (body == null)
+      return send(caching, endpoint);
+    InternalResponse resp = new InternalResponse(body, keepRawJson, rowFormat);
+    resp.setStringPool(stringPool);
+    return request.getResponse(resp);
+  }
+
+  /**
+   * Sends a read, or joins the identical read in flight as set by
+   * {@link #setRequestCoalescer(RequestCoalescer)}.
+   */
+  private Response send(final RequestImpl request, final ResponseCache.Endpoint endpoint) {
+    RequestCoalescer coalescer = requestCoalescer;
+    if (coalescer == null)
+      return dispatch(request, endpoint);
+    return coalescer.call(factHome + request.toUrlString(), new Supplier<Response>() {
+      @Override
+      public Response get() {
+        return dispatch(request, endpoint);
+      }
+    });
+  }
+
+  /**
+   * Sends a read, batched with others as set by
+   * {@link #setBatchPolicy(BatchPolicy)} unless it is for a schema.
+   */
+  private Response dispatch(RequestImpl request, ResponseCache.Endpoint endpoint) {
+    ReadBatcher batcher = this.batcher;
+    if (batcher != null && endpoint != ResponseCache.Endpoint.SCHEMA)
+      return batcher.call(request);
+    return request.getResponse(request(request));
+  }
+
   /**
    * 
    * Runs a "GET" request against the path specified using the parameter string
@@ -498,6 +627,113 @@ public class Factual {
     return requestPost(new RawReadRequest(path, queryParams, postContent));
   }
 
+  /**
+   * Runs a GET request against the specified endpoint path, like
+   * {@link #get(String, Map)}, streaming the response body straight into
+   * <tt>out</tt> instead of reading it into memory. Suited to relaying
+   * Factual's JSON unchanged, e.g. from a proxy. The body is written as it
+   * arrives, without being parsed, and <tt>out</tt> is neither flushed nor
+   * closed.
+   * <p>
+   * Retries (see {@link #setRetryPolicy(RetryPolicy)}) only happen before any
+   * of the body has been written. Hedging does not apply.
+   * 
+   * @param path
+   *          the endpoint path to run the request against. example: "t/places"
+   * @param queryParams
+   *          the query string parameters to send with the request. do not
+   *          encode or escape these; that will be done automatically.
+   * @param out
+   *          where the response body is written.
+   * @return the status, headers and size of the response.
+   * @throws FactualApiException
+   *           if the request fails, or writing the body fails.
+   */
+  public RawResponse getRaw(String path, Map<String, Object> queryParams, final OutputStream out) {
+    return raw(new RawReadRequest(path, queryParams), new BodySink() {
+      @Override
+      public long write(InputStream in) throws IOException {
+        return BodyReader.copy(in, out);
+      }
+    });
+  }
+
+  /**
+   * Runs a GET request against the specified endpoint path, streaming the
+   * response body straight into <tt>out</tt>.
+   * 
+   * @see #getRaw(String, Map, OutputStream)
+   */
+  public RawResponse getRaw(String path, Map<String, Object> queryParams,
+      final WritableByteChannel out) {
+    return raw(new RawReadRequest(path, queryParams), new BodySink() {
+      @Override
+      public long write(InputStream in) throws IOException {
+        return BodyReader.copy(in, out);
+      }
+    });
+  }
+
+  /**
+   * Runs a read <tt>query</tt> against the specified Factual table,
+   * streaming the JSON response straight into <tt>out</tt>.
+   * 
+   * @see #getRaw(String, Map, OutputStream)
+   */
+  public RawResponse fetchRaw(String tableName, Query query, OutputStream out) {
+    return getRaw(urlForFetch(tableName), query.toUrlParams(), out);
+  }
+
+  /**
+   * Runs a read <tt>query</tt> against the specified Factual table,
+   * streaming the JSON response straight into <tt>out</tt>.
+   * 
+   * @see #getRaw(String, Map, OutputStream)
+   */
+  public RawResponse fetchRaw(String tableName, Query query, WritableByteChannel out) {
+    return getRaw(urlForFetch(tableName), query.toUrlParams(), out);
+  }
+
+  /**
+   * Writes a response body to the caller's destination.
+   */
+  private interface BodySink {
+    long write(InputStream in) throws IOException;
+  }
+
+  private RawResponse raw(final Request fullQuery, final BodySink sink) {
+    final String urlStr = factHome + fullQuery.toUrlString();
+    return execute(fullQuery, "GET", true, new ResponseReader<RawResponse>() {
+      @Override
+      public RawResponse read(HttpResponse resp) throws IOException {
+        Map<String, List<String>> headers = Maps.newLinkedHashMap();
+        for (Entry<String, Object> header : resp.getHeaders().entrySet()) {
+          List<String> values = Lists.newArrayList();
+          if (header.getValue() instanceof Iterable) {
+            for (Object value : (Iterable<?>) header.getValue()) {
+              values.add(String.valueOf(value));
+            }
+          } else if (header.getValue() != null) {
+            values.add(String.valueOf(header.getValue()));
+          }
+          headers.put(header.getKey().toLowerCase(), values);
+        }
+        InputStream in = null;
+        long written;
+        try {
+          in = resp.getContent();
+          written = sink.write(in);
+        } catch (IOException e) {
+          // part of the body may already be written, so this is not retried
+          throw new FactualApiException(e).requestUrl(urlStr).requestMethod("GET");
+        } finally {
+          Closeables.close(in, true);
+        }
+        return new RawResponse(resp.getStatusCode(), resp.getContentType(), written, headers);
+      }
+    });
+  }
+
   public FactualStream stream(String tableName, DiffsQuery diff, DiffsCallback cb) {
     return stream(new DiffsRequest(urlForFetch(tableName) + "/diffs", diff.toUrlParams(), cb), "GET", true);
   }
@@ -549,13 +785,76 @@ public class Factual {
   }
 
   /**
-   * Use this to send all queued reads as a multi request
+   * Use this to send all queued reads as a multi request. A request too
+   * large for one call is split into several, sent concurrently, as set by
+   * {@link #setMultiPolicy(MultiPolicy)}.
    * 
    * @return response for a multi request
    */
   public MultiResponse sendRequests(MultiRequest multiRequest) {
+    return sendRequests(multiRequest.getQueries());
+  }
+
+  private MultiResponse sendRequests(Map<String, RequestImpl> queries) {
+    List<Map<String, RequestImpl>> chunks = chunk(queries, multiPolicy);
+    if (chunks.size() <= 1)
+      return sendChunk(queries);
+
+    List<FutureTask<MultiResponse>> tasks = Lists.newArrayList();
+    for (final Map<String, RequestImpl> chunk : chunks) {
+      FutureTask<MultiResponse> task = new FutureTask<MultiResponse>(new Callable<MultiResponse>() {
+        @Override
+        public MultiResponse call() {
+          return sendChunk(chunk);
+        }
+      });
+      tasks.add(task);
+      multiPolicy.getExecutor().execute(task);
+    }
+    List<MultiResponse> parts = Lists.newArrayList();
+    Map<String, FactualApiException> errors = Maps.newHashMap();
+    FactualApiException firstError = null;
+    try {
+      for (int i = 0; i < tasks.size(); i++) {
+        FutureTask<MultiResponse> task = tasks.get(i);
+        // run here any chunk the executor has not started yet
+        task.run();
+        try {
+          parts.add(task.get());
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Error)
+            throw (Error) e.getCause();
+          FactualApiException error = e.getCause() instanceof FactualApiException
+              ? (FactualApiException) e.getCause() : new FactualApiException((Exception) e.getCause());
+          if (firstError == null)
+            firstError = error;
+          for (String key : chunks.get(i).keySet()) {
+            errors.put(key, error);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FactualApiException(e);
+    } finally {
+      for (FutureTask<MultiResponse> task : tasks) {
+        task.cancel(true);
+      }
+    }
+    if (parts.isEmpty())
+      throw firstError;
+    return MultiResponse.merge(queries, parts, errors);
+  }
+
+  private MultiResponse sendChunk(Map<String, RequestImpl> queries) {
+    InternalResponse internalResp = request(multiRequest(queries));
+    MultiResponse resp = new MultiResponse(queries);
+    resp.parse(internalResp, multiParseExecutor);
+    return resp;
+  }
+
+  private static MultiReadRequest multiRequest(Map<String, RequestImpl> queries) {
     Map<String, String> multi = Maps.newHashMap();
-    Map<String, RequestImpl> queries = multiRequest.getQueries();
     for (Entry<String, RequestImpl> entry : queries.entrySet()) {
       RequestImpl fullQuery = entry.getValue();
       String url = "/" + fullQuery.toUrlString();
@@ -565,10 +864,39 @@ public class Factual {
     String json = JsonUtil.toJsonStr(multi);
     Map<String, Object> params = Maps.newHashMap();
     params.put("queries", json);
-    InternalResponse internalResp = getInternal("multi", params);
-    MultiResponse resp = new MultiResponse(queries);
-    resp.setJson(internalResp.getContent());
-    return resp;
+    return new MultiReadRequest("multi", params);
+  }
+
+  /**
+   * Splits <tt>queries</tt>, in key order, into the fewest consecutive
+   * chunks within the query count and URL length limits of <tt>policy</tt>.
+   */
+  private List<Map<String, RequestImpl>> chunk(Map<String, RequestImpl> queries,
+      MultiPolicy policy) {
+    List<Map<String, RequestImpl>> chunks = Lists.newArrayList();
+    if (queries.size() <= policy.getMaxQueries()
+        && urlLength(queries) <= policy.getMaxUrlLength()) {
+      chunks.add(queries);
+      return chunks;
+    }
+    Map<String, RequestImpl> chunk = Maps.newLinkedHashMap();
+    for (Entry<String, RequestImpl> entry : new TreeMap<String, RequestImpl>(queries).entrySet()) {
+      chunk.put(entry.getKey(), entry.getValue());
+      if (chunk.size() > 1 && (chunk.size() > policy.getMaxQueries()
+          || urlLength(chunk) > policy.getMaxUrlLength())) {
+        chunk.remove(entry.getKey());
+        chunks.add(chunk);
+        chunk = Maps.newLinkedHashMap();
+        chunk.put(entry.getKey(), entry.getValue());
+      }
+    }
+    if (!chunk.isEmpty())
+      chunks.add(chunk);
+    return chunks;
+  }
+
+  private int urlLength(Map<String, RequestImpl> queries) {
+    return factHome.length() + multiRequest(queries).toUrlString().length();
   }
 
   /**
@@ -697,7 +1025,8 @@ public class Factual {
 
   public SchemaResponse schema(String tableName) {
     Map<String, Object> params = Maps.newHashMap();
-    return new SchemaResponse(getInternal(urlForSchema(tableName), params));
+    return (SchemaResponse) read(new SchemaRequest(urlForSchema(tableName), params),
+        ResponseCache.Endpoint.SCHEMA);
   }
 
   private String urlForSchema(String tableName) {
@@ -720,97 +1049,145 @@ public class Factual {
     return request(query, "POST", useOAuth);
   }
 
-  private InternalResponse request(Request fullQuery, String requestMethod,
-      boolean useOAuth) {
-    String urlStr = factHome + fullQuery.toUrlString();
+  private InternalResponse request(final Request fullQuery, final String requestMethod,
+      final boolean useOAuth) {
+    final ResponseReader<InternalResponse> reader = new ResponseReader<InternalResponse>() {
+      @Override
+      public InternalResponse read(HttpResponse resp) throws IOException {
+        InternalResponse response = new InternalResponse(resp, fullQuery.getLineCallback(),
+            keepRawJson, rowFormat);
+        response.setStringPool(stringPool);
+        return response;
+      }
+    };
+    HedgePolicy hedge = hedgePolicy;
+    if (hedge == null || !isIdempotent(requestMethod))
+      return execute(fullQuery, requestMethod, useOAuth, reader);
+    return hedge.call(new Callable<InternalResponse>() {
+      @Override
+      public InternalResponse call() {
+        return execute(fullQuery, requestMethod, useOAuth, reader);
+      }
+    });
+  }
 
-    BufferedReader br = null;
-    try {
-      HttpRequest request = createRequest(urlStr, fullQuery, requestMethod, useOAuth);
-      // get the response
-      HttpResponse resp = request.execute();
-
-      InternalResponse internalResponse = new InternalResponse(resp, fullQuery.getLineCallback());
-      /*
-      br = new BufferedReader(new InputStreamReader(resp
-          .getContent()));
-      String line = null;
-      StringBuffer sb = new StringBuffer();
-      LineCallback cb = fullQuery.getLineCallback();
-      while ((line = br.readLine()) != null) {
-        if (cb != null)
-          cb.onLine(line);
-        sb.append(line);
+  /**
+   * Reads the response to a request once it has succeeded.
+   */
+  private interface ResponseReader<T> {
+    T read(HttpResponse resp) throws IOException;
+  }
+
+  private <T> T execute(Request fullQuery, String requestMethod,
+      boolean useOAuth, ResponseReader<T> reader) {
+    String urlStr = factHome + fullQuery.toUrlString();
+    RetryPolicy.Attempts attempts = retryPolicy.begin(isIdempotent(requestMethod));
+
+    while (true) {
+      acquirePermit(fullQuery, requestMethod, urlStr);
+      ConcurrencyLimiter.Slot slot = acquireSlot(urlStr, requestMethod);
+      try {
+        HttpRequest request = createRequest(urlStr, fullQuery, requestMethod, useOAuth);
+        limitReadTimeout(request, attempts);
+        // get the response
+        HttpResponse resp = request.execute();
+        if (Thread.currentThread().isInterrupted()) {
+          // cancelled, e.g. a hedged copy already answered: drop the body unread
+          resp.disconnect();
+          throw new FactualApiException("Request cancelled").requestUrl(urlStr)
+          .requestMethod(requestMethod);
+        }
+        T response = reader.read(resp);
+        slot.success();
+        return response;
+      } catch (HttpResponseException e) {
+        // release before any backoff so a sleeping retry holds no slot
+        if (e.getStatusCode() == 429 || e.getStatusCode() == 503)
+          slot.dropped();
+        else
+          slot.ignore();
+        if (!attempts.retry(e.getStatusCode(), e.getHeaders()))
+          throw new FactualApiException(e).requestUrl(urlStr)
+          .requestMethod(requestMethod).response(e.getStatusCode(), e.getMessage());
+      } catch (IOException e) {
+        if (e instanceof SocketTimeoutException)
+          slot.dropped();
+        else
+          slot.ignore();
+        if (!attempts.retry(0, null))
+          throw new FactualApiException(e).requestUrl(urlStr).requestMethod(
+              requestMethod);
+      } finally {
+        slot.ignore();
       }
-      return sb.toString();
-       */
-      return internalResponse;
-    } catch (HttpResponseException e) {
-      throw new FactualApiException(e).requestUrl(urlStr)
-      .requestMethod(requestMethod).response(e.getStatusCode(), e.getMessage());
-    } catch (IOException e) {
-      throw new FactualApiException(e).requestUrl(urlStr).requestMethod(
-          requestMethod);
-    } catch (GeneralSecurityException e) {
-      throw new RuntimeException(e);
-    } finally {
-      Closeables.closeQuietly(br);
     }
   }
 
   private FactualStream stream(Request fullQuery, String requestMethod,
       boolean useOAuth) {
     String urlStr = factHome + fullQuery.toUrlString();
-
-    BufferedReader br = null;
-    try {
-      HttpRequest request = createRequest(urlStr, fullQuery, requestMethod, useOAuth);
-
-      // get the response
-      br = new BufferedReader(new InputStreamReader(request.execute()
-          .getContent()));
-      return new FactualStream(br, fullQuery.getLineCallback());
-    } catch (HttpResponseException e) {
-      throw new FactualApiException(e).requestUrl(urlStr)
-      .requestMethod(requestMethod).response(e.getStatusCode(), e.getMessage());
-    } catch (IOException e) {
-      throw new FactualApiException(e).requestUrl(urlStr).requestMethod(
-          requestMethod);
-    } catch (GeneralSecurityException e) {
-      throw new RuntimeException(e);
+    RetryPolicy.Attempts attempts = retryPolicy.begin(isIdempotent(requestMethod));
+
+    while (true) {
+      try {
+        acquirePermit(fullQuery, requestMethod, urlStr);
+        HttpRequest request = createRequest(urlStr, fullQuery, requestMethod, useOAuth);
+
+        // get the response
+        return new FactualStream(request.execute().getContent(), fullQuery.getLineCallback());
+      } catch (HttpResponseException e) {
+        if (!attempts.retry(e.getStatusCode(), e.getHeaders()))
+          throw new FactualApiException(e).requestUrl(urlStr)
+          .requestMethod(requestMethod).response(e.getStatusCode(), e.getMessage());
+      } catch (IOException e) {
+        if (!attempts.retry(0, null))
+          throw new FactualApiException(e).requestUrl(urlStr).requestMethod(
+              requestMethod);
+      }
     }
   }
 
+  private void acquirePermit(Request fullQuery, String requestMethod, String urlStr) {
+    RateLimiter limiter = rateLimiter;
+    if (limiter != null)
+      limiter.acquire(!isIdempotent(requestMethod), fullQuery instanceof MultiReadRequest,
+          urlStr, requestMethod);
+  }
+
+  private ConcurrencyLimiter.Slot acquireSlot(String urlStr, String requestMethod) {
+    ConcurrencyLimiter limiter = concurrencyLimiter;
+    return limiter == null ? ConcurrencyLimiter.UNLIMITED : limiter.acquire(urlStr, requestMethod);
+  }
+
+  private static boolean isIdempotent(String requestMethod) {
+    return "GET".equals(requestMethod);
+  }
+
+  /**
+   * Keeps a single attempt from running past the retry deadline.
+   */
+  private void limitReadTimeout(HttpRequest request, RetryPolicy.Attempts attempts) {
+    if (!retryPolicy.limitsReadTimeout())
+      return;
+    int remaining = (int) Math.min(Integer.MAX_VALUE, attempts.remainingMillis());
+    if (request.getReadTimeout() == 0 || request.getReadTimeout() > remaining)
+      request.setReadTimeout(remaining);
+  }
+
   private HttpRequest createRequest(String urlStr, Request fullQuery, String requestMethod,
-      boolean useOAuth) throws GeneralSecurityException, IOException {
+      boolean useOAuth) throws IOException {
     Map<String, String> postData = fullQuery.getPostData();
     GenericUrl url = new GenericUrl(urlStr);
     if (debug) {
       fullQuery.printDebug();
-      logger = Logger.getLogger(HttpTransport.class.getName());
+      Logger logger = Logger.getLogger(HttpTransport.class.getName());
       logger.removeHandler(debugHandler);
       logger.setLevel(Level.ALL);
       logger.addHandler(debugHandler);
     }
 
-    // Configure OAuth request params
-    OAuthParameters params = new OAuthParameters();
-    params.consumerKey = key;
-    params.computeNonce();
-    params.computeTimestamp();
-    params.signer = signer;
-
-    // generate the signature
-    params.computeSignature(requestMethod, url);
-
     // make the request
-    HttpTransport transport = new NetHttpTransport();
-    HttpRequestFactory f = null;
-    if (useOAuth) {
-      f = transport.createRequestFactory(params);
-    } else {
-      f = transport.createRequestFactory();
-    }
+    HttpRequestFactory f = transport.getHttpTransport().createRequestFactory();
     HttpRequest request = null;
     if ("POST".equals(requestMethod))
       if (postData == null)
@@ -828,6 +1205,9 @@ public class Factual {
     HttpHeaders headers = new HttpHeaders();
     headers.set("X-Factual-Lib", DRIVER_HEADER_TAG);
     headers.set("Host", host);
+    // sign once here rather than through an OAuthParameters interceptor
+    if (useOAuth)
+      headers.setAuthorization(signer.authorizationHeader(requestMethod, urlStr));
     request.setHeaders(headers);
     return request;
   }
@@ -838,12 +1218,13 @@ public class Factual {
    * @param debug
    *          whether or not this is in debug mode
    */
-  public synchronized void debug(boolean debug) {
-    this.debug = debug;
+  public void debug(boolean debug) {
     if (debug && debugHandler == null) {
-      debugHandler = new StreamHandler(System.out, new SimpleFormatter());
-      debugHandler.setLevel(Level.ALL);
+      StreamHandler handler = new StreamHandler(System.out, new SimpleFormatter());
+      handler.setLevel(Level.ALL);
+      debugHandler = handler;
     }
+    this.debug = debug;
   }
 
   /**
@@ -870,6 +1251,201 @@ public class Factual {
     this.readTimeout = readTimeout;
   }
 
+  /**
+   * Sets how failed requests are retried. By default nothing is retried.
+   * 
+   * @param retryPolicy
+   *          the retry policy applied to every request made by this instance.
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Paces the requests made by this instance with <tt>rateLimiter</tt>, or
+   * removes pacing if it is null (the default). Every attempt, including
+   * retries, takes a permit.
+   * 
+   * @param rateLimiter
+   *          the client-side rate limiter for this instance's API key.
+   */
+  public void setRateLimiter(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * Caps the number of requests this instance has in flight with
+   * <tt>concurrencyLimiter</tt>, which adapts the cap to observed latency and
+   * throttling, or removes the cap if it is null (the default). Streamed diffs
+   * are not counted, since they hold a connection for as long as the caller
+   * reads.
+   * 
+   * @param concurrencyLimiter
+   *          the adaptive concurrency limiter for this instance.
+   */
+  public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  /**
+   * Hedges slow reads made by this instance with <tt>hedgePolicy</tt>, or
+   * disables hedging if it is null (the default). Only GET requests are
+   * hedged; writes are never sent twice.
+   * 
+   * @param hedgePolicy
+   *          the hedging policy for this instance's reads.
+   */
+  public void setHedgePolicy(HedgePolicy hedgePolicy) {
+    this.hedgePolicy = hedgePolicy;
+  }
+
+  /**
+   * Sets whether parsed responses keep the raw JSON they were parsed from, as
+   * returned by {@link Response#getJson()}. The default is true. Turning it off
+   * lets large responses be parsed without ever holding their JSON as a String;
+   * <tt>getJson()</tt> then returns null for parsed reads, facets and schemas.
+   * 
+   * @param keepRawJson
+   *          whether to keep the raw JSON of parsed responses.
+   */
+  public void setKeepRawJson(boolean keepRawJson) {
+    this.keepRawJson = keepRawJson;
+  }
+
+  /**
+   * Sets whether read responses build their rows lazily. The default is
+   * false. When set, a response only indexes where each row lies in the
+   * payload; a row is built the first time it is reached through
+   * {@link ReadResponse#getData()}, and each of its fields is decoded the
+   * first time it is read. Calls that look at a few fields of the first rows
+   * then skip most of the decoding. The row list is read-only in this mode.
+   * Same as <tt>setRowFormat(lazyRows ? RowFormat.LAZY : RowFormat.MAP)</tt>.
+   * 
+   * @param lazyRows
+   *          whether to build rows on first access.
+   */
+  public void setLazyRows(boolean lazyRows) {
+    this.rowFormat = lazyRows ? RowFormat.LAZY : RowFormat.MAP;
+  }
+
+  /**
+   * Sets how read responses represent their rows. The default is
+   * {@link RowFormat#MAP}. Use {@link RowFormat#COMPACT} for results that are
+   * cached or held for long, and {@link RowFormat#LAZY} when only a few
+   * fields of a few rows are read.
+   * 
+   * @param rowFormat
+   *          the representation of read rows.
+   */
+  public void setRowFormat(RowFormat rowFormat) {
+    this.rowFormat = rowFormat;
+  }
+
+  /**
+   * Sets the pool that interns the string values of chosen fields as read
+   * responses are parsed, so long-held rows share repeated values. The
+   * default is null, interning nothing.
+   * 
+   * @param stringPool
+   *          the pool to intern with, which may be shared between instances;
+   *          null to stop interning.
+   */
+  public void setStringPool(StringPool stringPool) {
+    this.stringPool = stringPool;
+  }
+
+  /**
+   * Sets an executor on which the responses to the queries of a multi
+   * request are parsed concurrently. The default is null, parsing them one
+   * after another on the calling thread. Worth setting when multi requests
+   * return several large responses.
+   * 
+   * @param executor
+   *          the executor to parse on, which remains owned by the caller;
+   *          null to parse on the calling thread.
+   */
+  public void setMultiParseExecutor(Executor executor) {
+    this.multiParseExecutor = executor;
+  }
+
+  /**
+   * Sets how a MultiRequest too large for one call is split. The default
+   * sends at most 3 queries and 2048 URL characters per call. Use
+   * {@link MultiPolicy#singleCall()} to always send a single call.
+   * 
+   * @param multiPolicy
+   *          the limits and executor for multi requests.
+   */
+  public void setMultiPolicy(MultiPolicy multiPolicy) {
+    this.multiPolicy = multiPolicy;
+  }
+
+  /**
+   * Batches concurrent reads made by this instance into multi calls with
+   * <tt>batchPolicy</tt>, or stops batching if it is null (the default).
+   * 
+   * @param batchPolicy
+   *          the batch window and size for this instance's reads.
+   */
+  public void setBatchPolicy(BatchPolicy batchPolicy) {
+    this.batcher = batchPolicy == null ? null : new ReadBatcher(batchPolicy,
+        new ReadBatcher.Sender() {
+      @Override
+      public Response send(RequestImpl request) {
+        return request.getResponse(request(request));
+      }
+
+      @Override
+      public MultiResponse sendAll(Map<String, RequestImpl> requests) {
+        return sendRequests(requests);
+      }
+    });
+  }
+
+  /**
+   * Answers repeated reads made by this instance from <tt>responseCache</tt>,
+   * or stops caching if it is null (the default).
+   * 
+   * @param responseCache
+   *          the cache for this instance's reads, which may be shared between
+   *          instances using the same credentials.
+   */
+  public void setResponseCache(ResponseCache responseCache) {
+    this.responseCache = responseCache;
+  }
+
+  /**
+   * Collapses identical reads made concurrently by this instance into one
+   * call with <tt>requestCoalescer</tt>, or stops coalescing if it is null
+   * (the default).
+   * 
+   * @param requestCoalescer
+   *          the coalescer for this instance's reads, which may be shared
+   *          between instances using the same credentials.
+   */
+  public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+    this.requestCoalescer = requestCoalescer;
+  }
+
+  /**
+   * @return a snapshot of the usage of the connection pool behind this
+   *         instance, useful for sizing it, or null if this instance does not
+   *         use a {@link ConnectionPool}.
+   */
+  public ConnectionPoolStats getConnectionPoolStats() {
+    if (transport instanceof ConnectionPool)
+      return ((ConnectionPool) transport).getStats();
+    return null;
+  }
+
+  /**
+   * Releases the connections held by this instance's transport. No further
+   * requests can be made after this call.
+   */
+  public void shutdown() {
+    transport.shutdown();
+  }
+
   protected static interface Request {
 
     public String toUrlString();
@@ -895,6 +1471,63 @@ public class Factual {
 
   }
 
+  protected static class RowRequest extends RequestImpl {
+    public RowRequest(String path, Map<String, Object> params) {
+      super(path, params);
+    }
+
+    @Override
+    public Response getResponse(InternalResponse resp) {
+      return new RowResponse(resp);
+    }
+
+  }
+
+  /**
+   * Caches the body of each successful response to the request it wraps.
+   */
+  private static class CachingRequest extends RequestImpl {
+    private final RequestImpl request;
+    private final ResponseCache cache;
+    private final ResponseCache.Endpoint endpoint;
+    private final String url;
+
+    CachingRequest(RequestImpl request, ResponseCache cache, ResponseCache.Endpoint endpoint,
+        String url) {
+      super(null, request.getRequestParams());
+      this.request = request;
+      this.cache = cache;
+      this.endpoint = endpoint;
+      this.url = url;
+    }
+
+    @Override
+    public String toUrlString() {
+      return request.toUrlString();
+    }
+
+    @Override
+    public Response getResponse(InternalResponse resp) {
+      // copy the body before parsing, which may drop it
+      byte[] body = resp.getStatusCode() == 200 ? resp.getBody() : null;
+      Response response = request.getResponse(resp);
+      if (body != null && "ok".equals(response.getStatus()))
+        cache.put(endpoint, url, body);
+      return response;
+    }
+
+    @Override
+    public void printDebug() {
+      request.printDebug();
+    }
+
+    @Override
+    public LineCallback getLineCallback() {
+      return request.getLineCallback();
+    }
+
+  }
+
   /**
    * Represents a request against Factual given a path and parameters
    * 
@@ -1028,6 +1661,14 @@ public class Factual {
 
   }
 
+  protected static class MultiReadRequest extends RawReadRequest {
+
+    public MultiReadRequest(String path, Map<String, Object> params) {
+      super(path, params);
+    }
+
+  }
+
   protected static class SimpleGetRequest implements Request {
     private final String path;
     private final String params;
@@ -0,0 +1,477 @@
+package com.factual.driver;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Asynchronous counterpart to {@link Factual}. Every call returns immediately
+ * with a {@link ListenableFuture} that completes with the same response (or
+ * {@link FactualApiException}) the blocking call would have produced, so
+ * several Factual calls can be fanned out at once and joined with
+ * {@link com.google.common.util.concurrent.Futures#allAsList}.
+ * <p>
+ * Calls run on the executor given at construction time. Cancelling a future
+ * before its call has started means the request is never sent; cancelling it
+ * with <tt>mayInterruptIfRunning</tt> interrupts the worker running the
+ * request.
+ * <p>
+ * Example:
+ * <pre>
+ * FactualAsync async = new FactualAsync(factual);
+ * ListenableFuture&lt;ReadResponse&gt; cafes = async.fetch("places", new Query().search("cafe"));
+ * ListenableFuture&lt;SchemaResponse&gt; schema = async.schema("places");
+ * </pre>
+ */
+public class FactualAsync {
+  private final Factual factual;
+  private final ListeningExecutorService executor;
+  private final boolean ownsExecutor;
+
+  /**
+   * Constructor. Runs calls on a cached pool of daemon threads owned by this
+   * instance; release it with {@link #shutdown()}.
+   *
+   * @param factual
+   *          the Factual instance used to make the underlying calls.
+   */
+  public FactualAsync(Factual factual) {
+    this(factual, ExecutionMode.CACHED_THREAD_POOL);
+  }
+
+  /**
+   * Constructor. Runs calls on an executor of the given mode owned by this
+   * instance; release it with {@link #shutdown()}. Use
+   * {@link ExecutionMode#VIRTUAL_THREAD_PER_TASK} for large fan-outs.
+   *
+   * @param factual
+   *          the Factual instance used to make the underlying calls.
+   * @param mode
+   *          how calls are run.
+   */
+  public FactualAsync(Factual factual, ExecutionMode mode) {
+    this(factual, mode.newExecutor(), true);
+  }
+
+  /**
+   * Constructor. Runs calls on <tt>executor</tt>, which remains owned by the
+   * caller.
+   *
+   * @param factual
+   *          the Factual instance used to make the underlying calls.
+   * @param executor
+   *          the executor on which calls are run.
+   */
+  public FactualAsync(Factual factual, ExecutorService executor) {
+    this(factual, executor, false);
+  }
+
+  private FactualAsync(Factual factual, ExecutorService executor, boolean ownsExecutor) {
+    this.factual = factual;
+    this.executor = MoreExecutors.listeningDecorator(executor);
+    this.ownsExecutor = ownsExecutor;
+  }
+
+  /**
+   * @return the blocking Factual instance behind this one.
+   */
+  public Factual getFactual() {
+    return factual;
+  }
+
+  /**
+   * @see Factual#fetch(String, Query)
+   */
+  public ListenableFuture<ReadResponse> fetch(final String tableName, final Query query) {
+    return async(new Callable<ReadResponse>() {
+      @Override
+      public ReadResponse call() {
+        return factual.fetch(tableName, query);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#fetch(String, Query, Class)
+   */
+  public <T> ListenableFuture<TypedReadResponse<T>> fetch(final String tableName,
+      final Query query, final Class<T> type) {
+    return async(new Callable<TypedReadResponse<T>>() {
+      @Override
+      public TypedReadResponse<T> call() {
+        return factual.fetch(tableName, query, type);
+      }
+    });
+  }
+
+  /**
+   * Runs every query in <tt>queries</tt> against <tt>tableName</tt>
+   * concurrently.
+   *
+   * @return a future of the responses, in the order of <tt>queries</tt>.
+   *         Fails with the first call that fails.
+   * @see Factual#fetch(String, Query)
+   */
+  public ListenableFuture<List<ReadResponse>> fetchAll(String tableName, List<Query> queries) {
+    List<ListenableFuture<ReadResponse>> futures = Lists.newArrayList();
+    for (Query query : queries) {
+      futures.add(fetch(tableName, query));
+    }
+    return Futures.allAsList(futures);
+  }
+
+  /**
+   * @see Factual#fetch(String, FacetQuery)
+   */
+  public ListenableFuture<FacetResponse> fetch(final String tableName, final FacetQuery facet) {
+    return async(new Callable<FacetResponse>() {
+      @Override
+      public FacetResponse call() {
+        return factual.fetch(tableName, facet);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#fetch(String, ResolveQuery)
+   */
+  public ListenableFuture<ResolveResponse> fetch(final String tableName, final ResolveQuery query) {
+    return async(new Callable<ResolveResponse>() {
+      @Override
+      public ResolveResponse call() {
+        return factual.fetch(tableName, query);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#fetch(String, DiffsQuery)
+   */
+  public ListenableFuture<DiffsResponse> fetch(final String tableName, final DiffsQuery diff) {
+    return async(new Callable<DiffsResponse>() {
+      @Override
+      public DiffsResponse call() {
+        return factual.fetch(tableName, diff);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#fetchRow(String, String, RowQuery)
+   */
+  public ListenableFuture<RowResponse> fetchRow(final String tableName, final String factualId,
+      final RowQuery query) {
+    return async(new Callable<RowResponse>() {
+      @Override
+      public RowResponse call() {
+        return factual.fetchRow(tableName, factualId, query);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#fetchRow(String, String)
+   */
+  public ListenableFuture<RowResponse> fetchRow(String tableName, String factualId) {
+    return fetchRow(tableName, factualId, new RowQuery());
+  }
+
+  /**
+   * @see Factual#resolves(String, ResolveQuery)
+   */
+  public ListenableFuture<ResolveResponse> resolves(final String tableId, final ResolveQuery query) {
+    return async(new Callable<ResolveResponse>() {
+      @Override
+      public ResolveResponse call() {
+        return factual.resolves(tableId, query);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#resolves(ResolveQuery)
+   */
+  public ListenableFuture<ResolveResponse> resolves(ResolveQuery query) {
+    return resolves("places", query);
+  }
+
+  /**
+   * @see Factual#resolve(String, ResolveQuery)
+   */
+  public ListenableFuture<Map<String, Object>> resolve(final String tableId, final ResolveQuery query) {
+    return async(new Callable<Map<String, Object>>() {
+      @Override
+      public Map<String, Object> call() {
+        return factual.resolve(tableId, query);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#resolve(ResolveQuery)
+   */
+  public ListenableFuture<Map<String, Object>> resolve(ResolveQuery query) {
+    return resolve("places", query);
+  }
+
+  /**
+   * @see Factual#match(String, MatchQuery)
+   */
+  public ListenableFuture<String> match(final String tableId, final MatchQuery query) {
+    return async(new Callable<String>() {
+      @Override
+      public String call() {
+        return factual.match(tableId, query);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#geopulse(Geopulse)
+   */
+  public ListenableFuture<ReadResponse> geopulse(final Geopulse geopulse) {
+    return async(new Callable<ReadResponse>() {
+      @Override
+      public ReadResponse call() {
+        return factual.geopulse(geopulse);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#reverseGeocode(Point)
+   */
+  public ListenableFuture<ReadResponse> reverseGeocode(final Point point) {
+    return async(new Callable<ReadResponse>() {
+      @Override
+      public ReadResponse call() {
+        return factual.reverseGeocode(point);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#monetize(Query)
+   */
+  public ListenableFuture<ReadResponse> monetize(final Query query) {
+    return async(new Callable<ReadResponse>() {
+      @Override
+      public ReadResponse call() {
+        return factual.monetize(query);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#schema(String)
+   */
+  public ListenableFuture<SchemaResponse> schema(final String tableName) {
+    return async(new Callable<SchemaResponse>() {
+      @Override
+      public SchemaResponse call() {
+        return factual.schema(tableName);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#sendRequests(MultiRequest)
+   */
+  public ListenableFuture<MultiResponse> sendRequests(final MultiRequest multiRequest) {
+    return async(new Callable<MultiResponse>() {
+      @Override
+      public MultiResponse call() {
+        return factual.sendRequests(multiRequest);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#submit(String, String, Submit, Metadata)
+   */
+  public ListenableFuture<SubmitResponse> submit(final String tableName, final String factualId,
+      final Submit submit, final Metadata metadata) {
+    return async(new Callable<SubmitResponse>() {
+      @Override
+      public SubmitResponse call() {
+        return factual.submit(tableName, factualId, submit, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#submit(String, Submit, Metadata)
+   */
+  public ListenableFuture<SubmitResponse> submit(final String tableName, final Submit submit,
+      final Metadata metadata) {
+    return async(new Callable<SubmitResponse>() {
+      @Override
+      public SubmitResponse call() {
+        return factual.submit(tableName, submit, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#insert(String, Insert, Metadata)
+   */
+  public ListenableFuture<InsertResponse> insert(final String tableName, final Insert insert,
+      final Metadata metadata) {
+    return async(new Callable<InsertResponse>() {
+      @Override
+      public InsertResponse call() {
+        return factual.insert(tableName, insert, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#insert(String, String, Insert, Metadata)
+   */
+  public ListenableFuture<InsertResponse> insert(final String tableName, final String factualId,
+      final Insert insert, final Metadata metadata) {
+    return async(new Callable<InsertResponse>() {
+      @Override
+      public InsertResponse call() {
+        return factual.insert(tableName, factualId, insert, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#clear(String, String, Clear, Metadata)
+   */
+  public ListenableFuture<ClearResponse> clear(final String tableName, final String factualId,
+      final Clear clear, final Metadata metadata) {
+    return async(new Callable<ClearResponse>() {
+      @Override
+      public ClearResponse call() {
+        return factual.clear(tableName, factualId, clear, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#flagDuplicate(String, String, Metadata)
+   */
+  public ListenableFuture<FlagResponse> flagDuplicate(final String tableName, final String factualId,
+      final Metadata metadata) {
+    return async(new Callable<FlagResponse>() {
+      @Override
+      public FlagResponse call() {
+        return factual.flagDuplicate(tableName, factualId, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#flagInaccurate(String, String, Metadata)
+   */
+  public ListenableFuture<FlagResponse> flagInaccurate(final String tableName, final String factualId,
+      final Metadata metadata) {
+    return async(new Callable<FlagResponse>() {
+      @Override
+      public FlagResponse call() {
+        return factual.flagInaccurate(tableName, factualId, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#flagInappropriate(String, String, Metadata)
+   */
+  public ListenableFuture<FlagResponse> flagInappropriate(final String tableName, final String factualId,
+      final Metadata metadata) {
+    return async(new Callable<FlagResponse>() {
+      @Override
+      public FlagResponse call() {
+        return factual.flagInappropriate(tableName, factualId, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#flagNonExistent(String, String, Metadata)
+   */
+  public ListenableFuture<FlagResponse> flagNonExistent(final String tableName, final String factualId,
+      final Metadata metadata) {
+    return async(new Callable<FlagResponse>() {
+      @Override
+      public FlagResponse call() {
+        return factual.flagNonExistent(tableName, factualId, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#flagSpam(String, String, Metadata)
+   */
+  public ListenableFuture<FlagResponse> flagSpam(final String tableName, final String factualId,
+      final Metadata metadata) {
+    return async(new Callable<FlagResponse>() {
+      @Override
+      public FlagResponse call() {
+        return factual.flagSpam(tableName, factualId, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#flagOther(String, String, Metadata)
+   */
+  public ListenableFuture<FlagResponse> flagOther(final String tableName, final String factualId,
+      final Metadata metadata) {
+    return async(new Callable<FlagResponse>() {
+      @Override
+      public FlagResponse call() {
+        return factual.flagOther(tableName, factualId, metadata);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#get(String, Map)
+   */
+  public ListenableFuture<String> get(final String path, final Map<String, Object> queryParams) {
+    return async(new Callable<String>() {
+      @Override
+      public String call() {
+        return factual.get(path, queryParams);
+      }
+    });
+  }
+
+  /**
+   * @see Factual#post(String, Map, Map)
+   */
+  public ListenableFuture<String> post(final String path, final Map<String, Object> queryParams,
+      final Map<String, String> postContent) {
+    return async(new Callable<String>() {
+      @Override
+      public String call() {
+        return factual.post(path, queryParams, postContent);
+      }
+    });
+  }
+
+  /**
+   * Stops the executor if it is owned by this instance. Calls already
+   * submitted are allowed to finish.
+   */
+  public void shutdown() {
+    if (ownsExecutor)
+      executor.shutdown();
+  }
+
+  private <T> ListenableFuture<T> async(Callable<T> call) {
+    return executor.submit(call);
+  }
+
+}
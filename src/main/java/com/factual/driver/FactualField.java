@@ -0,0 +1,22 @@
+package com.factual.driver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names the Factual column a field of a {@link FactualRow} class is decoded
+ * from, when it is not the snake_case form of the field name.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface FactualField {
+
+  /**
+   * @return the column name, e.g. "$distance".
+   */
+  String value();
+}
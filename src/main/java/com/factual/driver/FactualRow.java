@@ -0,0 +1,37 @@
+package com.factual.driver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class as a typed row of Factual results. At compile time,
+ * {@link RowCodecProcessor} generates a {@link RowCodec} for it, so rows can
+ * be decoded straight into instances without reflection, e.g. with
+ * {@link Factual#fetch(String, Query, Class)}.
+ * <p>
+ * The class needs a non-private no-argument constructor. Each non-static,
+ * non-transient field is filled from the column of the same name in
+ * snake_case (<tt>factualId</tt> from <tt>factual_id</tt>), unless renamed
+ * with {@link FactualField}. Fields must either be non-private or have a
+ * setter.
+ * <p>
+ * Example:
+ * <pre>
+ * {@literal @}FactualRow
+ * public class Place {
+ *   String factualId;
+ *   String name;
+ *   double latitude;
+ *   double longitude;
+ *   {@literal @}FactualField("$distance") double distance;
+ * }
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface FactualRow {
+}
@@ -1,7 +1,9 @@
 package com.factual.driver;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 
 import com.google.common.io.Closeables;
 /**
@@ -12,9 +14,21 @@ import com.google.common.io.Closeables;
 public class FactualStream {
 
   private final BufferedReader br;
+  private final InputStream in;
   private final LineCallback cb;
   public FactualStream(BufferedReader br, LineCallback cb) {
     this.br = br;
+    this.in = null;
+    this.cb = cb;
+  }
+
+  /**
+   * Constructor for a stream read straight from the raw body, splitting lines
+   * on the bytes and decoding them as UTF-8.
+   */
+  public FactualStream(InputStream in, LineCallback cb) {
+    this.br = null;
+    this.in = in;
     this.cb = cb;
   }
 
@@ -22,13 +36,19 @@ public class FactualStream {
    * Start reading the response line by line.  This is a blocking call.
    */
   public void start() {
-    String line = null;
-    StringBuffer sb = new StringBuffer();
     try {
+      if (in != null) {
+        BodyReader.forEachLine(in, cb != null ? cb : new LineCallback() {
+          @Override
+          public void onLine(String line) {
+          }
+        });
+        return;
+      }
+      String line = null;
       while ((line = br.readLine()) != null) {
         if (cb != null)
           cb.onLine(line);
-        sb.append(line);
       }
     } catch (IOException e) {
     }
@@ -38,6 +58,6 @@ public class FactualStream {
    * Terminate the request
    */
   public void end() {
-    Closeables.closeQuietly(br);
+    Closeables.closeQuietly(in != null ? (Closeable) in : br);
   }
 }
@@ -2,13 +2,15 @@ package com.factual.driver;
 
 import java.util.Map;
 
+import com.google.common.hash.HashCode;
+
 /**
  * Represents a Geocode query against Factual
  * 
  * @author brandon
  *
  */
-public class Geocode {
+public class Geocode implements Parameters.Canonical {
   /**
    * Holds all parameters for this Query.
    */
@@ -30,5 +32,30 @@ public class Geocode {
   protected String toUrlQuery() {
 	return UrlUtil.toUrlQuery(toUrlParams());
   }
-  
+
+  /**
+   * @return the canonical form of this Geocode; see
+   *         {@link Query#toCanonicalString()}.
+   */
+  public String toCanonicalString() {
+    return toUrlQuery();
+  }
+
+  /**
+   * @return a stable 128-bit fingerprint of this Geocode's canonical form.
+   */
+  public HashCode fingerprint() {
+    return Parameters.fingerprint(getClass(), toCanonicalString());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Parameters.canonicalEquals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Parameters.canonicalHashCode(this);
+  }
+
 }
@@ -2,6 +2,8 @@ package com.factual.driver;
 
 import java.util.Map;
 
+import com.google.common.hash.HashCode;
+
 /**
  * 
  * Represents a Geopulse query against Factual
@@ -9,7 +11,7 @@ import java.util.Map;
  * @author brandon
  *
  */
-public class Geopulse {
+public class Geopulse implements Parameters.Canonical {
 
   /**
    * Holds all parameters for this Geopulse.
@@ -47,4 +49,30 @@ public class Geopulse {
 	}
     return this;
   }
+
+  /**
+   * @return the canonical form of this Geopulse; see
+   *         {@link Query#toCanonicalString()}.
+   */
+  public String toCanonicalString() {
+    return toUrlQuery();
+  }
+
+  /**
+   * @return a stable 128-bit fingerprint of this Geopulse's canonical form.
+   */
+  public HashCode fingerprint() {
+    return Parameters.fingerprint(getClass(), toCanonicalString());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Parameters.canonicalEquals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Parameters.canonicalHashCode(this);
+  }
+
 }
@@ -0,0 +1,278 @@
+package com.factual.driver;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Sends a second copy of a slow read and takes whichever copy answers first,
+ * so one slow connection or server does not set the tail latency of
+ * interactive lookups such as <tt>fetchRow</tt>, <tt>resolve</tt> and
+ * <tt>reverseGeocode</tt>.
+ * <p>
+ * The hedge is sent once the first copy has been outstanding for longer than
+ * a chosen percentile of recently observed read latencies, bounded by
+ * {@link #delayBounds(long, long, TimeUnit)}. The copy that loses is
+ * cancelled: if it has not been sent yet it never is, and if its response
+ * headers arrive later its body is not read. Hedges are capped at a fraction
+ * of all reads by {@link #maxHedgeRatio(double)}, so an overloaded server
+ * never sees more than that fraction of extra traffic.
+ * <p>
+ * Only idempotent GET requests are hedged. Example:
+ * <pre>
+ * factual.setHedgePolicy(new HedgePolicy()
+ *     .percentile(95)
+ *     .maxHedgeRatio(0.05));
+ * </pre>
+ */
+public class HedgePolicy {
+  private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("factual-hedge-%d").build());
+
+  private static final int WINDOW = 512;
+  private static final int MIN_SAMPLES = 20;
+  private static final int RECOMPUTE_EVERY = 16;
+  private static final double MAX_CREDIT = 10;
+
+  private double percentile = 95;
+  private long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(5);
+  private long maxDelayNanos = TimeUnit.SECONDS.toNanos(1);
+  private double maxHedgeRatio = 0.05;
+  private ExecutorService executor = DEFAULT_EXECUTOR;
+
+  private final long[] latencies = new long[WINDOW];
+  private int samples = 0;
+  private long delayNanos = -1;
+  private double credit = 1;
+  private long requests = 0;
+  private long hedged = 0;
+  private long hedgeWins = 0;
+  private long skipped = 0;
+
+  /**
+   * Sets the percentile of recent read latencies after which a hedge is sent.
+   * The default is 95, hedging roughly the slowest 5% of reads.
+   *
+   * @param percentile
+   *          the latency percentile, between 0 and 100.
+   * @return this HedgePolicy
+   */
+  public HedgePolicy percentile(double percentile) {
+    if (percentile <= 0 || percentile >= 100)
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    synchronized (this) {
+      this.percentile = percentile;
+      this.delayNanos = -1;
+    }
+    return this;
+  }
+
+  /**
+   * Bounds the hedge delay. Until enough reads have been observed to estimate
+   * the percentile, <tt>max</tt> is used. The defaults are 5ms and 1s.
+   *
+   * @param min
+   *          the shortest delay before a hedge is sent.
+   * @param max
+   *          the longest delay before a hedge is sent.
+   * @param unit
+   *          the unit of <tt>min</tt> and <tt>max</tt>.
+   * @return this HedgePolicy
+   */
+  public HedgePolicy delayBounds(long min, long max, TimeUnit unit) {
+    if (min < 0 || max < min)
+      throw new IllegalArgumentException("Delay bounds must satisfy 0 <= min <= max");
+    synchronized (this) {
+      this.minDelayNanos = unit.toNanos(min);
+      this.maxDelayNanos = unit.toNanos(max);
+      this.delayNanos = -1;
+    }
+    return this;
+  }
+
+  /**
+   * Caps hedges at a fraction of all hedgeable reads. The default is 0.05,
+   * i.e. at most 5% extra read traffic.
+   *
+   * @param maxHedgeRatio
+   *          the hedge budget, between 0 and 1.
+   * @return this HedgePolicy
+   */
+  public HedgePolicy maxHedgeRatio(double maxHedgeRatio) {
+    if (maxHedgeRatio < 0 || maxHedgeRatio > 1)
+      throw new IllegalArgumentException("maxHedgeRatio must be between 0 and 1");
+    synchronized (this) {
+      this.maxHedgeRatio = maxHedgeRatio;
+    }
+    return this;
+  }
+
+  /**
+   * Sets the executor both copies of a hedged read run on. By default a
+   * shared pool of daemon threads is used. The executor is not shut down by
+   * this policy.
+   *
+   * @param executor
+   *          the executor for hedged reads.
+   * @return this HedgePolicy
+   */
+  public HedgePolicy executor(ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * @return the current delay before a hedge is sent, in milliseconds.
+   */
+  public synchronized long getDelayMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(delayNanos());
+  }
+
+  /**
+   * @return the number of reads that went through this policy.
+   */
+  public synchronized long getRequestCount() {
+    return requests;
+  }
+
+  /**
+   * @return the number of reads for which a hedge was sent.
+   */
+  public synchronized long getHedgedCount() {
+    return hedged;
+  }
+
+  /**
+   * @return the number of hedged reads answered by the hedge rather than the
+   *         first copy.
+   */
+  public synchronized long getHedgeWinCount() {
+    return hedgeWins;
+  }
+
+  /**
+   * @return the number of slow reads not hedged because the budget was spent.
+   */
+  public synchronized long getSkippedCount() {
+    return skipped;
+  }
+
+  /**
+   * Runs <tt>read</tt>, and a second copy of it if the first is slow,
+   * returning the first successful result.
+   */
+  protected <T> T call(final Callable<T> read) {
+    synchronized (this) {
+      requests++;
+      credit = Math.min(MAX_CREDIT, credit + maxHedgeRatio);
+    }
+    LinkedBlockingQueue<Future<T>> done = new LinkedBlockingQueue<Future<T>>();
+    Future<T> primary = submit(new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        long start = System.nanoTime();
+        T result = read.call();
+        record(System.nanoTime() - start);
+        return result;
+      }
+    }, done);
+    Future<T> hedge = null;
+    try {
+      Future<T> first = done.poll(delayNanos(), TimeUnit.NANOSECONDS);
+      if (first == null && takeCredit())
+        hedge = submit(read, done);
+      if (first == null)
+        first = done.take();
+      if (hedge != null && !succeeded(first))
+        first = done.take();
+      if (first == hedge && succeeded(first))
+        synchronized (this) {
+          hedgeWins++;
+        }
+      return result(succeeded(first) ? first : primary);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FactualApiException(e);
+    } finally {
+      primary.cancel(true);
+      if (hedge != null)
+        hedge.cancel(true);
+    }
+  }
+
+  private <T> Future<T> submit(Callable<T> read, final LinkedBlockingQueue<Future<T>> done) {
+    FutureTask<T> task = new FutureTask<T>(read) {
+      @Override
+      protected void done() {
+        done.add(this);
+      }
+    };
+    executor.execute(task);
+    return task;
+  }
+
+  private static boolean succeeded(Future<?> future) {
+    try {
+      future.get();
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private static <T> T result(Future<T> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (CancellationException e) {
+      throw new FactualApiException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new FactualApiException((Exception) cause);
+    }
+  }
+
+  private synchronized boolean takeCredit() {
+    if (credit < 1) {
+      skipped++;
+      return false;
+    }
+    credit--;
+    hedged++;
+    return true;
+  }
+
+  private synchronized void record(long latencyNanos) {
+    latencies[samples % WINDOW] = latencyNanos;
+    samples++;
+    if (samples % RECOMPUTE_EVERY == 0)
+      delayNanos = -1;
+  }
+
+  private synchronized long delayNanos() {
+    if (delayNanos < 0) {
+      if (samples < MIN_SAMPLES) {
+        return maxDelayNanos;
+      }
+      long[] window = Arrays.copyOf(latencies, Math.min(samples, WINDOW));
+      Arrays.sort(window);
+      int index = (int) Math.ceil(percentile / 100 * window.length) - 1;
+      long p = window[Math.max(0, Math.min(window.length - 1, index))];
+      delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, p));
+    }
+    return delayNanos;
+  }
+
+}
@@ -1,53 +1,237 @@
 package com.factual.driver;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.codehaus.jackson.JsonParser;
 
 import com.google.api.client.http.HttpResponse;
+import com.google.common.base.Charsets;
 
 /**
  * Wrapper for a response from a Factual query.
+ * <p>
+ * The body is kept as the raw UTF-8 bytes read from the connection, which the
+ * response classes parse directly with a streaming parser. It is only decoded
+ * into a String if {@link #getContent()} is called, and is also available as
+ * bytes through {@link #getBody()} and {@link #getBodyBuffer()}.
  *
  * @author brandon
  */
 public class InternalResponse {
 
+  private byte[] body = null;
+  private int offset = 0;
+  private int length = 0;
   private String content = null;
   private final int statusCode;
+  private final boolean keepContent;
+  private final RowFormat rowFormat;
+  private StringPool stringPool = null;
 
   public InternalResponse(HttpResponse response, LineCallback cb) throws IOException {
-    BufferedReader br = null;
+    this(response, cb, true);
+  }
+
+  /**
+   * Constructor, reads the whole body of <tt>response</tt>.
+   *
+   * @param keepContent
+   *          whether the raw JSON stays available through
+   *          {@link #getContent()} once the response has been parsed.
+   */
+  public InternalResponse(HttpResponse response, LineCallback cb, boolean keepContent)
+      throws IOException {
+    this(response, cb, keepContent, false);
+  }
+
+  /**
+   * Constructor, reads the whole body of <tt>response</tt>.
+   *
+   * @param keepContent
+   *          whether the raw JSON stays available through
+   *          {@link #getContent()} once the response has been parsed.
+   * @param lazyRows
+   *          whether read responses build their rows only when first
+   *          accessed.
+   */
+  public InternalResponse(HttpResponse response, LineCallback cb, boolean keepContent,
+      boolean lazyRows) throws IOException {
+    this(response, cb, keepContent, lazyRows ? RowFormat.LAZY : RowFormat.MAP);
+  }
+
+  /**
+   * Constructor, reads the whole body of <tt>response</tt>.
+   *
+   * @param keepContent
+   *          whether the raw JSON stays available through
+   *          {@link #getContent()} once the response has been parsed.
+   * @param rowFormat
+   *          how read responses represent their rows.
+   */
+  public InternalResponse(HttpResponse response, LineCallback cb, boolean keepContent,
+      RowFormat rowFormat) throws IOException {
+    this.keepContent = keepContent;
+    this.rowFormat = rowFormat;
+    InputStream in = response.getContent();
     try {
-      br = new BufferedReader(new InputStreamReader(response
-          .getContent()));
-      String line = null;
-      StringBuffer sb = new StringBuffer();
-      while ((line = br.readLine()) != null) {
-        if (cb != null)
-          cb.onLine(line);
-        sb.append(line);
-      }
-      this.content = sb.toString();
-      this.statusCode = response.getStatusCode();
+      this.body = BodyReader.read(in, cb);
+      this.length = body.length;
     } finally {
-      if (br != null) {
-        br.close();
-      }
+      if (in != null)
+        in.close();
     }
+    this.statusCode = response.getStatusCode();
   }
 
   public InternalResponse(String content) {
     this.content = content;
     this.statusCode = 200;
+    this.keepContent = true;
+    this.rowFormat = RowFormat.MAP;
+  }
+
+  /**
+   * Constructor for a response whose body has already been read as bytes.
+   */
+  public InternalResponse(byte[] body, boolean keepContent) {
+    this(body, keepContent, false);
+  }
+
+  /**
+   * Constructor for a response whose body has already been read as bytes.
+   */
+  public InternalResponse(byte[] body, boolean keepContent, boolean lazyRows) {
+    this(body, keepContent, lazyRows ? RowFormat.LAZY : RowFormat.MAP);
+  }
+
+  /**
+   * Constructor for a response whose body has already been read as bytes.
+   */
+  public InternalResponse(byte[] body, boolean keepContent, RowFormat rowFormat) {
+    this(body, 0, body.length, keepContent, rowFormat);
+  }
+
+  /**
+   * Constructor for a response whose body is the <tt>length</tt> bytes of
+   * <tt>body</tt> starting at <tt>offset</tt>, which are not copied.
+   */
+  public InternalResponse(byte[] body, int offset, int length, boolean keepContent,
+      RowFormat rowFormat) {
+    this.body = body;
+    this.offset = offset;
+    this.length = length;
+    this.statusCode = 200;
+    this.keepContent = keepContent;
+    this.rowFormat = rowFormat;
   }
 
+  /**
+   * @return the raw JSON of this response, or null if it was not kept after
+   *         parsing.
+   */
   public String getContent() {
+    if (content == null && body != null)
+      content = new String(body, offset, length, Charsets.UTF_8);
     return this.content;
   }
 
+  /**
+   * @return a copy of the raw body bytes, or null if the body was not kept
+   *         after parsing or was given as a String.
+   */
+  public byte[] getBody() {
+    return body == null ? null : Arrays.copyOfRange(body, offset, offset + length);
+  }
+
+  /**
+   * @return a read-only view of the raw body bytes, without copying them, or
+   *         null if the body was not kept after parsing or was given as a
+   *         String.
+   */
+  public ByteBuffer getBodyBuffer() {
+    return body == null ? null : ByteBuffer.wrap(body, offset, length).slice().asReadOnlyBuffer();
+  }
+
   public int getStatusCode() {
     return statusCode;
   }
 
+  /**
+   * @return whether the raw JSON is kept after parsing.
+   */
+  public boolean isKeepContent() {
+    return keepContent;
+  }
+
+  /**
+   * @return whether read responses build their rows only when first accessed.
+   */
+  public boolean isLazyRows() {
+    return rowFormat == RowFormat.LAZY;
+  }
+
+  /**
+   * @return how read responses represent their rows.
+   */
+  public RowFormat getRowFormat() {
+    return rowFormat;
+  }
+
+  /**
+   * @return the pool interning string values as this response is parsed, or
+   *         null.
+   */
+  public StringPool getStringPool() {
+    return stringPool;
+  }
+
+  /**
+   * Sets the pool interning string values as this response is parsed.
+   */
+  public void setStringPool(StringPool stringPool) {
+    this.stringPool = stringPool;
+  }
+
+  /**
+   * @return a scanner over the raw body bytes, or null if the body was read
+   *         as text.
+   */
+  protected JsonScanner createScanner() {
+    return body == null ? null : new JsonScanner(body, offset, offset + length);
+  }
+
+  /**
+   * @return a streaming parser over the body, read straight from the bytes
+   *         where possible.
+   */
+  protected JsonParser createParser() throws IOException {
+    if (body != null)
+      return ResponseParser.FACTORY.createJsonParser(body, offset, length);
+    return ResponseParser.FACTORY.createJsonParser(content == null ? "" : content);
+  }
+
+  /**
+   * @return a response over the bytes <tt>[start, end)</tt> of this one's
+   *         body, sharing the array and this response's settings.
+   */
+  InternalResponse slice(int start, int end) {
+    InternalResponse sub = new InternalResponse(body, start, end - start, keepContent, rowFormat);
+    sub.setStringPool(stringPool);
+    return sub;
+  }
+
+  /**
+   * Called once the body has been parsed; drops the raw JSON unless it is to
+   * be kept.
+   */
+  protected void parsed() {
+    if (!keepContent) {
+      body = null;
+      content = null;
+    }
+  }
+
 }
@@ -0,0 +1,208 @@
+package com.factual.driver;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.codehaus.jackson.JsonParser;
+import org.json.JSONObject;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Finds the boundaries of JSON values in a UTF-8 payload without decoding
+ * them, so a response can be indexed in one cheap pass and its values decoded
+ * only when they are asked for.
+ * <p>
+ * The scanner assumes well-formed JSON, as returned by Factual; it does not
+ * validate.
+ */
+final class JsonScanner {
+  private final byte[] b;
+  private final int start;
+  private final int end;
+
+  JsonScanner(byte[] b) {
+    this(b, 0, b.length);
+  }
+
+  /**
+   * Constructor for a scanner over <tt>[start, end)</tt> of <tt>b</tt>.
+   * Indexes passed to and returned by the scanner are into <tt>b</tt>.
+   */
+  JsonScanner(byte[] b, int start, int end) {
+    this.b = b;
+    this.start = start;
+    this.end = end;
+  }
+
+  byte[] bytes() {
+    return b;
+  }
+
+  /**
+   * @return the index of the first byte scanned.
+   */
+  int start() {
+    return start;
+  }
+
+  /**
+   * @return the index just past the last byte scanned.
+   */
+  int end() {
+    return end;
+  }
+
+  /**
+   * @return the index of the first non-whitespace byte at or after <tt>i</tt>.
+   */
+  int skipWhitespace(int i) {
+    while (i < end && (b[i] == ' ' || b[i] == '\n' || b[i] == '\r' || b[i] == '\t'))
+      i++;
+    return i;
+  }
+
+  /**
+   * @return the index just past the value starting at <tt>i</tt>.
+   */
+  int skipValue(int i) throws IOException {
+    byte c = b[i];
+    if (c == '"')
+      return skipString(i);
+    if (c == '{' || c == '[') {
+      int depth = 0;
+      while (i < end) {
+        c = b[i];
+        if (c == '"') {
+          i = skipString(i);
+          continue;
+        }
+        if (c == '{' || c == '[') {
+          depth++;
+        } else if (c == '}' || c == ']') {
+          if (--depth == 0)
+            return i + 1;
+        }
+        i++;
+      }
+      throw new IOException("Unterminated JSON value");
+    }
+    while (i < end && b[i] != ',' && b[i] != '}' && b[i] != ']' && b[i] != ' '
+        && b[i] != '\n' && b[i] != '\r' && b[i] != '\t')
+      i++;
+    return i;
+  }
+
+  /**
+   * @return the index just past the string whose opening quote is at
+   *         <tt>i</tt>.
+   */
+  int skipString(int i) throws IOException {
+    i++;
+    while (i < end) {
+      byte c = b[i];
+      if (c == '\\')
+        i += 2;
+      else if (c == '"')
+        return i + 1;
+      else
+        i++;
+    }
+    throw new IOException("Unterminated JSON string");
+  }
+
+  /**
+   * Finds members of the object starting at <tt>objStart</tt> in one pass.
+   *
+   * @return for each of <tt>names</tt>, the index where the member's value
+   *         starts, or -1 if the object has no such member.
+   */
+  int[] findMembers(int objStart, String... names) throws IOException {
+    int[] found = new int[names.length];
+    Arrays.fill(found, -1);
+    if (b[objStart] != '{')
+      return found;
+    int i = skipWhitespace(objStart + 1);
+    while (i < end && b[i] == '"') {
+      int keyEnd = skipString(i);
+      int match = -1;
+      for (int n = 0; n < names.length && match < 0; n++) {
+        if (keyEquals(i + 1, keyEnd - 1, names[n]))
+          match = n;
+      }
+      i = skipWhitespace(keyEnd);
+      i = skipWhitespace(i + 1); // past ':'
+      if (match >= 0)
+        found[match] = i;
+      i = skipWhitespace(skipValue(i));
+      if (i < end && b[i] == ',')
+        i = skipWhitespace(i + 1);
+    }
+    return found;
+  }
+
+  private boolean keyEquals(int from, int to, String name) {
+    if (to - from != name.length())
+      return false;
+    for (int k = 0; k < name.length(); k++) {
+      if (b[from + k] != name.charAt(k))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Decodes the value in <tt>[start, end)</tt> into the types org.json would
+   * give, with fast paths for plain strings, numbers and literals.
+   */
+  Object decode(int start, int end) throws IOException {
+    return decode(start, end, null);
+  }
+
+  /**
+   * Decodes the value in <tt>[start, end)</tt> as {@link #decode(int, int)}
+   * does, interning every string in it through <tt>strings</tt>, if given.
+   */
+  Object decode(int start, int end, StringPool.FieldPool strings) throws IOException {
+    byte c = b[start];
+    if (c == '"') {
+      boolean escaped = false;
+      for (int i = start + 1; i < end - 1 && !escaped; i++) {
+        escaped = b[i] == '\\';
+      }
+      if (!escaped) {
+        String s = new String(b, start + 1, end - start - 2, Charsets.UTF_8);
+        return strings == null ? s : strings.intern(s);
+      }
+    } else if (c == 't') {
+      return Boolean.TRUE;
+    } else if (c == 'f') {
+      return Boolean.FALSE;
+    } else if (c == 'n') {
+      return JSONObject.NULL;
+    } else if (c == '-' || (c >= '0' && c <= '9')) {
+      return decodeNumber(new String(b, start, end - start, Charsets.US_ASCII));
+    }
+    JsonParser jp = ResponseParser.FACTORY.createJsonParser(b, start, end - start);
+    try {
+      jp.nextToken();
+      return ResponseParser.readValue(jp, strings);
+    } finally {
+      jp.close();
+    }
+  }
+
+  private static Object decodeNumber(String s) {
+    if (s.indexOf('.') >= 0 || s.indexOf('e') >= 0 || s.indexOf('E') >= 0)
+      return Double.valueOf(s);
+    try {
+      long l = Long.parseLong(s);
+      if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE)
+        return Integer.valueOf((int) l);
+      return Long.valueOf(l);
+    } catch (NumberFormatException e) {
+      return Double.valueOf(s);
+    }
+  }
+
+}
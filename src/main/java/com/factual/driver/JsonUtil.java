@@ -1,6 +1,8 @@
 package com.factual.driver;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -58,8 +60,11 @@ public class JsonUtil {
     return row;
   }
 
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
   /**
-   * Serialize a Java object to json.
+   * Serialize a Java object to json. The keys of maps are written in sorted
+   * order, so equal structures always serialize to the same string.
    * Use Maps and Lists to specify object and array structures respectively.
    * 
    * For example, the following value as input:
@@ -86,7 +91,7 @@ public class JsonUtil {
    */
   public static String toJsonStr(Object obj) {
     try {
-      return new ObjectMapper().writeValueAsString(obj);
+      return MAPPER.writeValueAsString(sorted(obj));
     } catch (JsonGenerationException e) {
       throw new RuntimeException(e);
     } catch (JsonMappingException e) {
@@ -96,4 +101,27 @@ public class JsonUtil {
     }
   }
 
+  /**
+   * @return <tt>obj</tt> with every map in it replaced by a copy sorted by
+   *         key.
+   */
+  private static Object sorted(Object obj) {
+    if (obj instanceof Map) {
+      Map<String, Object> sorted = Maps.newTreeMap();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+        sorted.put(String.valueOf(entry.getKey()), sorted(entry.getValue()));
+      }
+      return sorted;
+    } else if (obj instanceof Collection) {
+      List<Object> list = Lists.newArrayListWithCapacity(((Collection<?>) obj).size());
+      for (Object element : (Collection<?>) obj) {
+        list.add(sorted(element));
+      }
+      return list;
+    } else if (obj instanceof Object[]) {
+      return sorted(Arrays.asList((Object[]) obj));
+    }
+    return obj;
+  }
+
 }
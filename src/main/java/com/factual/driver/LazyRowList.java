@@ -0,0 +1,206 @@
+package com.factual.driver;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+
+/**
+ * The rows of a read response, indexed by their position in the raw payload
+ * and only built when first reached. Each row in turn only decodes a field
+ * when it is first read.
+ * <p>
+ * Rows behave as ordinary maps: the first call that needs every entry, such
+ * as <tt>entrySet()</tt>, <tt>equals</tt> or a write, decodes the rest of the
+ * row into a HashMap. The list itself is read-only.
+ */
+class LazyRowList extends AbstractList<Map<String, Object>> {
+  private final JsonScanner scanner;
+  private final int[] starts;
+  private final int[] ends;
+  private final LazyRow[] rows;
+  private final StringPool pool;
+
+  private LazyRowList(JsonScanner scanner, int[] starts, int[] ends, int size, StringPool pool) {
+    this.scanner = scanner;
+    this.pool = pool;
+    this.starts = starts;
+    this.ends = ends;
+    this.rows = new LazyRow[size];
+  }
+
+  /**
+   * Indexes the rows of the value at <tt>start</tt>, either an array of row
+   * objects or a single row object. Strings of fields pooled by <tt>pool</tt>,
+   * if given, are interned as they are decoded.
+   */
+  static LazyRowList index(JsonScanner scanner, int start, StringPool pool) throws IOException {
+    int[] starts = new int[16];
+    int[] ends = new int[16];
+    int size = 0;
+    if (scanner.bytes()[start] == '{') {
+      starts[0] = start;
+      ends[0] = scanner.skipValue(start);
+      size = 1;
+    } else if (scanner.bytes()[start] == '[') {
+      int i = scanner.skipWhitespace(start + 1);
+      while (scanner.bytes()[i] != ']') {
+        if (size == starts.length) {
+          starts = Arrays.copyOf(starts, size * 2);
+          ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = i;
+        ends[size] = scanner.skipValue(i);
+        i = scanner.skipWhitespace(ends[size]);
+        size++;
+        if (scanner.bytes()[i] == ',')
+          i = scanner.skipWhitespace(i + 1);
+      }
+    }
+    return new LazyRowList(scanner, starts, ends, size, pool);
+  }
+
+  @Override
+  public synchronized Map<String, Object> get(int index) {
+    if (index < 0 || index >= rows.length)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rows.length);
+    if (rows[index] == null)
+      rows[index] = new LazyRow(scanner, starts[index], ends[index], pool);
+    return rows[index];
+  }
+
+  @Override
+  public int size() {
+    return rows.length;
+  }
+
+  /**
+   * A row whose fields are located on first access and decoded one by one as
+   * they are read.
+   */
+  static class LazyRow extends AbstractMap<String, Object> {
+    private final JsonScanner scanner;
+    private final int start;
+    private final int end;
+    private final StringPool pool;
+    private String[] keys;
+    private int[] valueStarts;
+    private int[] valueEnds;
+    private Object[] values;
+    private Map<String, Object> map;
+
+    private LazyRow(JsonScanner scanner, int start, int end, StringPool pool) {
+      this.scanner = scanner;
+      this.pool = pool;
+      this.start = start;
+      this.end = end;
+    }
+
+    private void index() {
+      if (keys != null)
+        return;
+      try {
+        String[] k = new String[16];
+        int[] vs = new int[16];
+        int[] ve = new int[16];
+        int n = 0;
+        int i = scanner.skipWhitespace(start + 1);
+        while (i < end && scanner.bytes()[i] == '"') {
+          if (n == k.length) {
+            k = Arrays.copyOf(k, n * 2);
+            vs = Arrays.copyOf(vs, n * 2);
+            ve = Arrays.copyOf(ve, n * 2);
+          }
+          int keyEnd = scanner.skipString(i);
+          k[n] = (String) scanner.decode(i, keyEnd);
+          i = scanner.skipWhitespace(scanner.skipWhitespace(keyEnd) + 1);
+          vs[n] = i;
+          ve[n] = scanner.skipValue(i);
+          i = scanner.skipWhitespace(ve[n]);
+          if (i < end && scanner.bytes()[i] == ',')
+            i = scanner.skipWhitespace(i + 1);
+          n++;
+        }
+        keys = Arrays.copyOf(k, n);
+        valueStarts = vs;
+        valueEnds = ve;
+        values = new Object[n];
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private int indexOf(Object key) {
+      index();
+      // last one wins on duplicate keys, as with a HashMap
+      for (int i = keys.length - 1; i >= 0; i--) {
+        if (keys[i].equals(key))
+          return i;
+      }
+      return -1;
+    }
+
+    private Object value(int i) {
+      if (values[i] == null) {
+        try {
+          values[i] = scanner.decode(valueStarts[i], valueEnds[i],
+              pool == null ? null : pool.forField(keys[i]));
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return values[i];
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+      if (map != null)
+        return map.get(key);
+      int i = indexOf(key);
+      return i < 0 ? null : value(i);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+      if (map != null)
+        return map.containsKey(key);
+      return indexOf(key) >= 0;
+    }
+
+    @Override
+    public synchronized int size() {
+      if (map != null)
+        return map.size();
+      index();
+      return keys.length;
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+      return materialize().put(key, value);
+    }
+
+    @Override
+    public synchronized Set<Entry<String, Object>> entrySet() {
+      return materialize().entrySet();
+    }
+
+    private Map<String, Object> materialize() {
+      if (map == null) {
+        index();
+        Map<String, Object> m = Maps.newHashMapWithExpectedSize(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+          m.put(keys[i], value(i));
+        }
+        map = m;
+        values = null;
+      }
+      return map;
+    }
+  }
+
+}
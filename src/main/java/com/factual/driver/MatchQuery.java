@@ -2,7 +2,9 @@ package com.factual.driver;
 
 import java.util.Map;
 
-public class MatchQuery {
+import com.google.common.hash.HashCode;
+
+public class MatchQuery implements Parameters.Canonical {
 
   /**
    * Holds all parameters.
@@ -21,4 +23,30 @@ public class MatchQuery {
   protected String toUrlQuery() {
     return UrlUtil.toUrlQuery(toUrlParams());
   }
+
+  /**
+   * @return the canonical form of this MatchQuery; see
+   *         {@link Query#toCanonicalString()}.
+   */
+  public String toCanonicalString() {
+    return toUrlQuery();
+  }
+
+  /**
+   * @return a stable 128-bit fingerprint of this MatchQuery's canonical form.
+   */
+  public HashCode fingerprint() {
+    return Parameters.fingerprint(getClass(), toCanonicalString());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Parameters.canonicalEquals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Parameters.canonicalHashCode(this);
+  }
+
 }
@@ -0,0 +1,91 @@
+package com.factual.driver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Splits a {@link MultiRequest} that is too large for one call to Factual's
+ * multi endpoint into several calls, each within the endpoint's limit on
+ * queries and the server's limit on URL length. The calls run concurrently
+ * and their responses are merged into one {@link MultiResponse}.
+ * <p>
+ * A call that fails does not fail the others: the keys it carried are
+ * reported through {@link MultiResponse#getErrors()}, and only if every call
+ * fails is the error thrown. A MultiRequest that fits one call is sent and
+ * fails exactly as before.
+ * <p>
+ * Example:
+ * <pre>
+ * factual.setMultiPolicy(new MultiPolicy()
+ *     .maxQueries(3)
+ *     .maxUrlLength(4096));
+ * </pre>
+ */
+public class MultiPolicy {
+  private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("factual-multi-%d").build());
+
+  private int maxQueries = 3;
+  private int maxUrlLength = 2048;
+  private ExecutorService executor = DEFAULT_EXECUTOR;
+
+  /**
+   * Sets the most queries sent in one call. The default is 3, the multi
+   * endpoint's limit.
+   *
+   * @return this MultiPolicy
+   */
+  public MultiPolicy maxQueries(int maxQueries) {
+    if (maxQueries < 1)
+      throw new IllegalArgumentException("maxQueries must be at least 1: " + maxQueries);
+    this.maxQueries = maxQueries;
+    return this;
+  }
+
+  /**
+   * Sets the longest URL, including the base URL, sent in one call. The
+   * default is 2048. A single query too long on its own is still sent alone.
+   *
+   * @return this MultiPolicy
+   */
+  public MultiPolicy maxUrlLength(int maxUrlLength) {
+    this.maxUrlLength = maxUrlLength;
+    return this;
+  }
+
+  /**
+   * Sets the executor the calls of a split MultiRequest run on; the calling
+   * thread runs any call the executor has not started. By default a shared
+   * pool of daemon threads is used. The executor is not shut down by the
+   * driver.
+   *
+   * @return this MultiPolicy
+   */
+  public MultiPolicy executor(ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * @return a new policy that always sends a MultiRequest as a single call,
+   *         however large.
+   */
+  public static MultiPolicy singleCall() {
+    return new MultiPolicy().maxQueries(Integer.MAX_VALUE).maxUrlLength(Integer.MAX_VALUE);
+  }
+
+  public int getMaxQueries() {
+    return maxQueries;
+  }
+
+  public int getMaxUrlLength() {
+    return maxUrlLength;
+  }
+
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+}
@@ -1,13 +1,17 @@
 package com.factual.driver;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import com.factual.driver.Factual.RequestImpl;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
 
 /**
  * Represents a Factual Multi response.
@@ -16,8 +20,9 @@ import com.factual.driver.Factual.RequestImpl;
  *
  */
 public class MultiResponse extends Response {
-  private String json = null;
+  private InternalResponse resp = null;
   private final Map<String, Response> data = new HashMap<String, Response>();
+  private final Map<String, FactualApiException> errors = Maps.newHashMap();
 
   private Map<String, RequestImpl> requestMapping = null;
 
@@ -34,27 +39,104 @@ public class MultiResponse extends Response {
    * @param json json response string to parse from
    */
   public void setJson(String json) {
-    this.json = json;
+    parse(new InternalResponse(json.getBytes(Charsets.UTF_8), true, RowFormat.MAP));
+  }
+
+  /**
+   * Parses the responses to each query of <tt>resp</tt> on the calling
+   * thread.
+   */
+  protected void parse(InternalResponse resp) {
+    parse(resp, null);
+  }
+
+  /**
+   * Parses the responses to each query of <tt>resp</tt>. One scan over the
+   * body finds where each keyed response lies, without decoding it; each is
+   * then parsed once, straight from its slice of the body. With an
+   * <tt>executor</tt>, the responses are parsed concurrently on it.
+   */
+  protected void parse(InternalResponse resp, Executor executor) {
+    this.resp = resp;
+    data.clear();
+    JsonScanner scanner = resp.createScanner();
+    if (scanner == null) {
+      String json = resp.getContent();
+      InternalResponse bytes = new InternalResponse(json == null ? new byte[0]
+          : json.getBytes(Charsets.UTF_8), resp.isKeepContent(), resp.getRowFormat());
+      bytes.setStringPool(resp.getStringPool());
+      parse(bytes, executor);
+      this.resp = resp;
+      return;
+    }
+    Map<String, InternalResponse> slices = Maps.newLinkedHashMap();
     try {
-      JSONObject rootJsonObj = new JSONObject(json);
-      parseResponse(rootJsonObj);
-    } catch (JSONException e) {
+      int i = scanner.skipWhitespace(scanner.start());
+      if (i >= scanner.end() || scanner.bytes()[i] != '{')
+        throw new IOException("Expected a JSON object");
+      i = scanner.skipWhitespace(i + 1);
+      while (i < scanner.end() && scanner.bytes()[i] == '"') {
+        int keyEnd = scanner.skipString(i);
+        String key = (String) scanner.decode(i, keyEnd);
+        int valueStart = scanner.skipWhitespace(scanner.skipWhitespace(keyEnd) + 1);
+        int valueEnd = scanner.skipValue(valueStart);
+        if (requestMapping.containsKey(key))
+          slices.put(key, resp.slice(valueStart, valueEnd));
+        i = scanner.skipWhitespace(valueEnd);
+        if (i < scanner.end() && scanner.bytes()[i] == ',')
+          i = scanner.skipWhitespace(i + 1);
+      }
+    } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    if (executor == null || slices.size() < 2) {
+      for (Map.Entry<String, InternalResponse> slice : slices.entrySet()) {
+        put(slice.getKey(), requestMapping.get(slice.getKey()).getResponse(slice.getValue()));
+      }
+    } else {
+      parseConcurrently(slices, executor);
+    }
+    resp.parsed();
   }
 
-  private void parseResponse(JSONObject jo) throws JSONException {
-    data.clear();
-    for (Entry<String, RequestImpl> entry : requestMapping.entrySet()) {
-      String responseJson = jo.getJSONObject(entry.getKey()).toString();
-      RequestImpl query = entry.getValue();
-      InternalResponse internalResp = new InternalResponse(responseJson);
-      Response resp = query.getResponse(internalResp);
-      if (resp != null)
-        data.put(entry.getKey(), resp);
+  private void parseConcurrently(Map<String, InternalResponse> slices, Executor executor) {
+    Map<String, FutureTask<Response>> tasks = Maps.newLinkedHashMap();
+    for (final Map.Entry<String, InternalResponse> slice : slices.entrySet()) {
+      final RequestImpl query = requestMapping.get(slice.getKey());
+      FutureTask<Response> task = new FutureTask<Response>(new Callable<Response>() {
+        @Override
+        public Response call() {
+          return query.getResponse(slice.getValue());
+        }
+      });
+      tasks.put(slice.getKey(), task);
+      executor.execute(task);
+    }
+    try {
+      for (Map.Entry<String, FutureTask<Response>> task : tasks.entrySet()) {
+        // run here any task the executor has not started yet
+        task.getValue().run();
+        put(task.getKey(), task.getValue().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FactualApiException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw new RuntimeException(e.getCause());
+    } finally {
+      for (FutureTask<Response> task : tasks.values()) {
+        task.cancel(false);
+      }
     }
   }
 
+  private void put(String key, Response sub) {
+    if (sub != null)
+      data.put(key, sub);
+  }
+
   /**
    * A collection of the responses returned by Factual for a multi query.
    * 
@@ -64,8 +146,47 @@ public class MultiResponse extends Response {
     return data;
   }
 
+  /**
+   * The errors of queries whose call failed, when a large multi request was
+   * split into several calls (see {@link MultiPolicy}) and only some of them
+   * failed. Queries that failed are absent from {@link #getData()}.
+   * 
+   * @return the error of each query that got no response, by query name.
+   */
+  public Map<String, FactualApiException> getErrors() {
+    return errors;
+  }
+
+  /**
+   * Merges the responses to the calls a multi request was split into.
+   * 
+   * @param errors
+   *          the error of each query whose call failed.
+   */
+  static MultiResponse merge(Map<String, RequestImpl> requestMapping, List<MultiResponse> parts,
+      Map<String, FactualApiException> errors) {
+    MultiResponse merged = new MultiResponse(requestMapping);
+    StringBuilder json = new StringBuilder("{");
+    for (MultiResponse part : parts) {
+      merged.data.putAll(part.data);
+      String partJson = part.getJson();
+      if (json != null && partJson != null) {
+        String members = partJson.trim();
+        members = members.substring(1, members.length() - 1).trim();
+        if (!members.isEmpty())
+          json.append(json.length() > 1 ? "," : "").append(members);
+      } else {
+        json = null;
+      }
+    }
+    merged.errors.putAll(errors);
+    if (json != null)
+      merged.resp = new InternalResponse(json.append('}').toString());
+    return merged;
+  }
+
   @Override
   public String getJson() {
-    return json;
+    return resp == null ? null : resp.getContent();
   }
 }
@@ -1,13 +1,16 @@
 package com.factual.driver;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 
 /**
  * Internal.  Holds a mapping between parameters and their values for serialization to a URL-encoded string.
@@ -66,8 +69,12 @@ public class Parameters {
 		return toUrlParams(null);
 	}
 	
+	/**
+	 * Returns the parameters in sorted order, with values serialized the same
+	 * way whatever order they were set in, so equal queries give equal URLs.
+	 */
 	protected Map<String, Object> toUrlParams(Parameters additionalParams) {
-		Map<String, Object> paramMap = Maps.newHashMap();
+		Map<String, Object> paramMap = Maps.newTreeMap();
 		for (Entry<Object, Object> entry : params.entrySet()) {
 			paramMap.put(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
 		}
@@ -76,8 +83,44 @@ public class Parameters {
 		return paramMap;
 	}
 
+	/**
+	 * Returns a stable 128-bit fingerprint of a query of type <tt>type</tt>
+	 * whose canonical form is <tt>canonical</tt>.
+	 */
+	protected static HashCode fingerprint(Class<?> type, String canonical) {
+		return Hashing.murmur3_128().newHasher()
+				.putString(type.getName(), Charsets.UTF_8)
+				.putByte((byte) 0)
+				.putString(canonical, Charsets.UTF_8)
+				.hash();
+	}
+
+	/**
+	 * Implemented by queries that have a canonical form, which defines their
+	 * equality.
+	 */
+	interface Canonical {
+		String toCanonicalString();
+	}
+
+	/**
+	 * The equality of queries: the same type, with the same canonical form.
+	 */
+	static boolean canonicalEquals(Canonical a, Object b) {
+		return b != null && b.getClass() == a.getClass()
+				&& a.toCanonicalString().equals(((Canonical) b).toCanonicalString());
+	}
+
+	/**
+	 * The hash code consistent with {@link #canonicalEquals(Canonical, Object)}.
+	 */
+	static int canonicalHashCode(Canonical a) {
+		return a.toCanonicalString().hashCode();
+	}
+
 	/**
 	 * Convenience method for adding comma separated parameters to a field.
+	 * Values keep the order they were added in, as it matters for sorts.
 	 * Example: name,region,address
 	 */
 	protected void addCommaSeparatedParam(String key, Object value) {
@@ -172,7 +215,7 @@ public class Parameters {
 	/**
 	 * Holds a comma-separated parameter value representation
 	 */
-	private static class CommaSeparatedData extends HashSet<Object> {
+	private static class CommaSeparatedData extends LinkedHashSet<Object> {
 		public CommaSeparatedData() {
 		}
 
@@ -5,6 +5,8 @@ import java.net.URLDecoder;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.hash.HashCode;
+
 /**
  * Represents a top level Factual query. Knows how to represent the query as URL
  * encoded key value pairs, ready for the query string in a GET request. (See
@@ -12,7 +14,7 @@ import java.util.Map;
  * 
  * @author aaron
  */
-public class Query implements Filterable {
+public class Query implements Filterable, Parameters.Canonical {
 
   private boolean includeRowCount;
 
@@ -266,4 +268,37 @@ public class Query implements Filterable {
     return UrlUtil.toUrlQuery(toUrlParams());
   }
 
-}
\ No newline at end of file
+  /**
+   * Returns this query in canonical form: its URL query string, with
+   * parameters and the keys of JSON values in sorted order. Two queries that
+   * ask for the same thing give the same string, whatever order they were
+   * built in, so it can key caches and coalesce identical requests.
+   * <p>
+   * Queries are mutable; like {@link #equals(Object)} and {@link #hashCode()},
+   * the canonical form reflects the query as it is now.
+   * 
+   * @return the canonical form of this query.
+   */
+  public String toCanonicalString() {
+    return toUrlQuery();
+  }
+
+  /**
+   * @return a stable 128-bit fingerprint of this query's type and canonical
+   *         form.
+   */
+  public HashCode fingerprint() {
+    return Parameters.fingerprint(getClass(), toCanonicalString());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Parameters.canonicalEquals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Parameters.canonicalHashCode(this);
+  }
+
+}
@@ -0,0 +1,285 @@
+package com.factual.driver;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Walks every row of a read query, page by page, fetching the next pages in
+ * the background while the current one is read. Obtain one with
+ * {@link Factual#iterate(String, Query)}.
+ * <p>
+ * The query's own offset and limit, if set, bound the rows walked. Iteration
+ * stops at the total row count Factual reports, at a page shorter than asked
+ * for, or at the deepest offset Factual serves, 500 rows by default. Pages
+ * are ordinary reads, so they are cached, coalesced and batched like any
+ * other. Page size and prefetch depth are set before iteration starts:
+ * <pre>
+ * QueryIterator rows = factual.iterate("places", new Query().search("cafe"))
+ *     .pageSize(50)
+ *     .prefetch(2);
+ * while (rows.hasNext()) {
+ *   Map&lt;String, Object&gt; row = rows.next();
+ *   ...
+ * }
+ * </pre>
+ * A failed page is thrown as {@link FactualApiException} from
+ * {@link #hasNext()}. Call {@link #close()} to stop early, which cancels the
+ * pages being prefetched. Not thread safe.
+ */
+public class QueryIterator implements Iterator<Map<String, Object>>, Closeable {
+  private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("factual-iterate-%d").build());
+
+  private final Factual factual;
+  private final String tableName;
+  private final Map<String, Object> params;
+  private final long firstOffset;
+  private final long lastOffset;
+
+  private int pageSize = 50;
+  private int prefetch = 1;
+  private long maxOffset = 500;
+  private Executor executor = DEFAULT_EXECUTOR;
+
+  private boolean started = false;
+  private boolean closed = false;
+  private long nextOffset;
+  private long stop;
+  private int totalRowCount = Response.UNDEFINED;
+  private final LinkedList<Page> pages = new LinkedList<Page>();
+  private Iterator<Map<String, Object>> rows = Collections.<Map<String, Object>> emptyList()
+      .iterator();
+
+  QueryIterator(Factual factual, String tableName, Map<String, Object> queryParams) {
+    this.factual = factual;
+    this.tableName = tableName;
+    this.params = Maps.newTreeMap();
+    params.putAll(queryParams);
+    Object offset = params.remove(Constants.QUERY_OFFSET);
+    Object limit = params.remove(Constants.QUERY_LIMIT);
+    params.remove(Constants.INCLUDE_COUNT);
+    this.firstOffset = offset == null ? 0 : Long.parseLong(offset.toString());
+    this.lastOffset = limit == null ? Long.MAX_VALUE : firstOffset + Long.parseLong(limit.toString());
+  }
+
+  /**
+   * Sets how many rows each page asks for. The default is 50, the most
+   * Factual returns per read.
+   *
+   * @param pageSize
+   *          the rows per page.
+   * @return this QueryIterator
+   */
+  public QueryIterator pageSize(int pageSize) {
+    if (pageSize < 1)
+      throw new IllegalArgumentException("pageSize must be at least 1: " + pageSize);
+    checkNotStarted();
+    this.pageSize = pageSize;
+    return this;
+  }
+
+  /**
+   * Sets how many pages are fetched ahead of the one being read. The default
+   * is 1; 0 fetches each page only once the previous one is used up.
+   *
+   * @param prefetch
+   *          the pages fetched in the background.
+   * @return this QueryIterator
+   */
+  public QueryIterator prefetch(int prefetch) {
+    if (prefetch < 0)
+      throw new IllegalArgumentException("prefetch must not be negative: " + prefetch);
+    checkNotStarted();
+    this.prefetch = prefetch;
+    return this;
+  }
+
+  /**
+   * Sets the deepest offset Factual serves rows from; no page reaches past
+   * it. The default is 500.
+   *
+   * @param maxOffset
+   *          the row offset iteration stops at.
+   * @return this QueryIterator
+   */
+  public QueryIterator maxOffset(long maxOffset) {
+    if (maxOffset < 0)
+      throw new IllegalArgumentException("maxOffset must not be negative: " + maxOffset);
+    checkNotStarted();
+    this.maxOffset = maxOffset;
+    return this;
+  }
+
+  /**
+   * Sets the executor pages are prefetched on. By default a shared pool of
+   * daemon threads is used. The executor is not shut down by the iterator.
+   *
+   * @return this QueryIterator
+   */
+  public QueryIterator executor(Executor executor) {
+    checkNotStarted();
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * @return the total row count Factual reported for the query, or
+   *         {@link Response#UNDEFINED} before the first page is read or if it
+   *         was not reported.
+   */
+  public int getTotalRowCount() {
+    return totalRowCount;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!rows.hasNext()) {
+      if (closed)
+        return false;
+      if (!started) {
+        started = true;
+        nextOffset = firstOffset;
+        stop = Math.min(lastOffset, maxOffset);
+      }
+      Page page = pages.isEmpty() ? nextPage() : pages.removeFirst();
+      if (page == null) {
+        close();
+        return false;
+      }
+      if (!page.isDone())
+        page.run();
+      ReadResponse resp = page.response();
+      if (page.first) {
+        totalRowCount = resp.getTotalRowCount();
+        if (totalRowCount != Response.UNDEFINED)
+          stop = Math.min(stop, totalRowCount);
+      }
+      if (resp.size() < page.limit) {
+        // a short page is the last: drop anything fetched beyond it
+        stop = Math.min(stop, page.offset + resp.size());
+        cancelPages();
+      }
+      rows = resp.getData().iterator();
+      fill();
+    }
+    return true;
+  }
+
+  @Override
+  public Map<String, Object> next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    return rows.next();
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops iterating, cancelling the pages being prefetched.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    rows = Collections.<Map<String, Object>> emptyList().iterator();
+    cancelPages();
+  }
+
+  private void checkNotStarted() {
+    if (started)
+      throw new IllegalStateException("Iteration has started");
+  }
+
+  /**
+   * Starts fetching pages in the background, up to the prefetch depth.
+   */
+  private void fill() {
+    while (!closed && pages.size() < prefetch) {
+      Page page = nextPage();
+      if (page == null)
+        return;
+      pages.add(page);
+      executor.execute(page);
+    }
+  }
+
+  /**
+   * @return the page after those already taken, not yet started, or null if
+   *         there are no more.
+   */
+  private Page nextPage() {
+    if (nextOffset >= stop)
+      return null;
+    int limit = (int) Math.min(pageSize, stop - nextOffset);
+    Page page = new Page(nextOffset, limit, nextOffset == firstOffset);
+    nextOffset += limit;
+    return page;
+  }
+
+  private void cancelPages() {
+    for (Page page : pages) {
+      page.cancel(true);
+    }
+    pages.clear();
+  }
+
+  private class Page extends FutureTask<ReadResponse> {
+    final long offset;
+    final int limit;
+    final boolean first;
+
+    Page(final long offset, final int limit, final boolean first) {
+      super(new Callable<ReadResponse>() {
+        @Override
+        public ReadResponse call() {
+          Map<String, Object> pageParams = Maps.newTreeMap();
+          pageParams.putAll(params);
+          pageParams.put(Constants.QUERY_LIMIT, String.valueOf(limit));
+          if (offset > 0)
+            pageParams.put(Constants.QUERY_OFFSET, String.valueOf(offset));
+          // the first page learns the total, to know where to stop
+          if (first)
+            pageParams.put(Constants.INCLUDE_COUNT, "true");
+          return factual.fetchPage(tableName, pageParams);
+        }
+      });
+      this.offset = offset;
+      this.limit = limit;
+      this.first = first;
+    }
+
+    ReadResponse response() {
+      try {
+        return get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close();
+        throw new FactualApiException(e);
+      } catch (ExecutionException e) {
+        close();
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw new FactualApiException((Exception) cause);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,136 @@
+package com.factual.driver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the requests one {@link Factual} instance sends, so it stays inside
+ * the API key's throttle limits instead of discovering them through a burst
+ * of failed requests. Reads, writes and multi calls each have their own
+ * {@link TokenBucket}; a category without a bucket is not limited.
+ * <p>
+ * By default a request waits as long as it takes for a permit. With
+ * {@link #maxWait(long, TimeUnit)} a request that would wait longer fails
+ * straight away with a {@link FactualApiException} instead; a max wait of 0
+ * makes every request non-blocking.
+ * <p>
+ * Example:
+ * <pre>
+ * factual.setRateLimiter(new RateLimiter()
+ *     .reads(50, 100)
+ *     .writes(5, 5)
+ *     .maxWait(2, TimeUnit.SECONDS));
+ * </pre>
+ */
+public class RateLimiter {
+  private TokenBucket reads = null;
+  private TokenBucket writes = null;
+  private TokenBucket multi = null;
+  private long maxWaitNanos = Long.MAX_VALUE;
+
+  /**
+   * Limits read requests (fetch, fetchRow, resolve, match, geopulse, geocode,
+   * schema and raw GETs).
+   *
+   * @param permitsPerSecond
+   *          the sustained rate of reads.
+   * @param burst
+   *          the number of reads that may be sent at once after a quiet
+   *          period.
+   * @return this RateLimiter
+   */
+  public RateLimiter reads(double permitsPerSecond, int burst) {
+    this.reads = new TokenBucket(permitsPerSecond, burst);
+    return this;
+  }
+
+  /**
+   * Limits write requests (submit, insert, clear, flag and raw POSTs).
+   *
+   * @param permitsPerSecond
+   *          the sustained rate of writes.
+   * @param burst
+   *          the number of writes that may be sent at once after a quiet
+   *          period.
+   * @return this RateLimiter
+   */
+  public RateLimiter writes(double permitsPerSecond, int burst) {
+    this.writes = new TokenBucket(permitsPerSecond, burst);
+    return this;
+  }
+
+  /**
+   * Limits multi requests sent through {@link Factual#sendRequests}.
+   *
+   * @param permitsPerSecond
+   *          the sustained rate of multi requests.
+   * @param burst
+   *          the number of multi requests that may be sent at once after a
+   *          quiet period.
+   * @return this RateLimiter
+   */
+  public RateLimiter multi(double permitsPerSecond, int burst) {
+    this.multi = new TokenBucket(permitsPerSecond, burst);
+    return this;
+  }
+
+  /**
+   * Sets the longest a request may wait for a permit before it fails. Use 0
+   * for non-blocking behaviour.
+   *
+   * @param maxWait
+   *          the longest wait for a permit.
+   * @param unit
+   *          the unit of <tt>maxWait</tt>.
+   * @return this RateLimiter
+   */
+  public RateLimiter maxWait(long maxWait, TimeUnit unit) {
+    this.maxWaitNanos = unit.toNanos(maxWait);
+    return this;
+  }
+
+  /**
+   * @return the bucket limiting reads, holding its wait metrics, or null if
+   *         reads are not limited.
+   */
+  public TokenBucket getReads() {
+    return reads;
+  }
+
+  /**
+   * @return the bucket limiting writes, holding its wait metrics, or null if
+   *         writes are not limited.
+   */
+  public TokenBucket getWrites() {
+    return writes;
+  }
+
+  /**
+   * @return the bucket limiting multi requests, holding its wait metrics, or
+   *         null if multi requests are not limited.
+   */
+  public TokenBucket getMulti() {
+    return multi;
+  }
+
+  /**
+   * Takes a permit for one request, waiting up to the configured max wait.
+   *
+   * @throws FactualApiException
+   *           if no permit became available in time.
+   */
+  protected void acquire(boolean write, boolean isMulti, String urlStr, String requestMethod) {
+    TokenBucket bucket = write ? writes : (isMulti ? multi : reads);
+    if (bucket == null)
+      return;
+    try {
+      if (bucket.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS))
+        return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FactualApiException(e).requestUrl(urlStr).requestMethod(requestMethod);
+    }
+    throw new FactualApiException("Client-side rate limit exceeded").requestUrl(urlStr)
+    .requestMethod(requestMethod);
+  }
+
+}
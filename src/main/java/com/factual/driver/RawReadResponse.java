@@ -1,8 +1,5 @@
 package com.factual.driver;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 public class RawReadResponse extends Response {
 
   private final InternalResponse resp;
@@ -12,12 +9,7 @@ public class RawReadResponse extends Response {
    */
   public RawReadResponse(InternalResponse resp) {
     this.resp = resp;
-    try{
-      JSONObject rootJsonObj = new JSONObject(resp.getContent());
-      Response.withMeta(this, rootJsonObj);
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
-    }
+    ResponseParser.parseMeta(this, resp);
   }
 
   @Override
@@ -0,0 +1,89 @@
+package com.factual.driver;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Describes a response whose body was streamed straight to a caller's
+ * OutputStream or channel by {@link Factual#getRaw(String, Map, java.io.OutputStream)}
+ * and its variants, without being buffered or parsed.
+ */
+public class RawResponse {
+  private final int statusCode;
+  private final String contentType;
+  private final long bytesWritten;
+  private final Map<String, List<String>> headers;
+
+  RawResponse(int statusCode, String contentType, long bytesWritten,
+      Map<String, List<String>> headers) {
+    this.statusCode = statusCode;
+    this.contentType = contentType;
+    this.bytesWritten = bytesWritten;
+    this.headers = ImmutableMap.copyOf(headers);
+  }
+
+  /**
+   * @return the HTTP status code.
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * @return the Content-Type of the body, or null.
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * @return the number of body bytes written to the caller's stream.
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * @return the response headers, keyed by lower-case name.
+   */
+  public Map<String, List<String>> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * @return the values of header <tt>name</tt>, matched ignoring case; empty
+   *         if there are none.
+   */
+  public List<String> getHeader(String name) {
+    List<String> values = headers.get(name.toLowerCase());
+    return values == null ? Collections.<String> emptyList() : ImmutableList.copyOf(values);
+  }
+
+  /**
+   * @return the first value of header <tt>name</tt>, matched ignoring case, or
+   *         null.
+   */
+  public String getFirstHeader(String name) {
+    List<String> values = headers.get(name.toLowerCase());
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+
+  /**
+   * @return the value of Factual's <tt>X-Factual-Throttle-Allocation</tt>
+   *         header, describing how much of the key's allocation has been used,
+   *         or null if it was not sent.
+   */
+  public String getThrottleAllocation() {
+    return getFirstHeader(RetryPolicy.THROTTLE_ALLOCATION_HEADER);
+  }
+
+  @Override
+  public String toString() {
+    return "RawResponse[status=" + statusCode + ", bytes=" + bytesWritten + "]";
+  }
+
+}
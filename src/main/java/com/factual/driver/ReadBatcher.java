@@ -0,0 +1,163 @@
+package com.factual.driver;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.factual.driver.Factual.RequestImpl;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Gathers the reads of one Factual instance into batches as set by a
+ * {@link BatchPolicy}. No thread of its own is used: the first caller of a
+ * batch waits out the window and sends the batch, and every caller then
+ * takes its own response from it.
+ */
+final class ReadBatcher {
+
+  /**
+   * Sends reads on behalf of the batcher.
+   */
+  interface Sender {
+    Response send(RequestImpl request);
+
+    MultiResponse sendAll(Map<String, RequestImpl> requests);
+  }
+
+  private final BatchPolicy policy;
+  private final Sender sender;
+  private Batch open = null;
+
+  ReadBatcher(BatchPolicy policy, Sender sender) {
+    this.policy = policy;
+    this.sender = sender;
+  }
+
+  /**
+   * Runs <tt>request</tt> as part of a batch.
+   *
+   * @return the response to <tt>request</tt>.
+   */
+  Response call(RequestImpl request) {
+    Pending pending = new Pending(request);
+    Batch batch;
+    boolean first;
+    synchronized (this) {
+      if (open == null)
+        open = new Batch();
+      batch = open;
+      first = batch.pending.isEmpty();
+      batch.pending.add(pending);
+      if (batch.pending.size() >= policy.getMaxBatchSize()) {
+        open = null;
+        batch.close();
+      }
+    }
+    if (first) {
+      boolean interrupted = batch.awaitClose(policy.getWindowNanos());
+      synchronized (this) {
+        if (open == batch)
+          open = null;
+      }
+      send(batch.pending);
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    }
+    return pending.get();
+  }
+
+  private void send(List<Pending> batch) {
+    long now = System.nanoTime();
+    long[] waits = new long[batch.size()];
+    for (int i = 0; i < waits.length; i++) {
+      waits[i] = now - batch.get(i).queued;
+    }
+    policy.record(waits);
+    try {
+      if (batch.size() == 1) {
+        batch.get(0).result.set(sender.send(batch.get(0).request));
+        return;
+      }
+      Map<String, RequestImpl> requests = Maps.newLinkedHashMap();
+      for (int i = 0; i < batch.size(); i++) {
+        requests.put("q" + i, batch.get(i).request);
+      }
+      MultiResponse multi = sender.sendAll(requests);
+      for (int i = 0; i < batch.size(); i++) {
+        SettableFuture<Response> result = batch.get(i).result;
+        Response resp = multi.getData().get("q" + i);
+        if (multi.getErrors().containsKey("q" + i))
+          result.setException(multi.getErrors().get("q" + i));
+        else if (resp == null)
+          result.setException(new FactualApiException("No response to batched read"));
+        else if (resp.getStatus() != null && !"ok".equals(resp.getStatus()))
+          result.setException(new FactualApiException("Batched read failed with status "
+              + resp.getStatus()).requestUrl(batch.get(i).request.toUrlString())
+              .requestMethod("GET"));
+        else
+          result.set(resp);
+      }
+    } catch (Throwable t) {
+      for (Pending pending : batch) {
+        pending.result.setException(t);
+      }
+    }
+  }
+
+  private static class Batch {
+    final List<Pending> pending = Lists.newArrayList();
+    // a latch rather than a monitor wait, so a virtual thread waiting out the
+    // window does not pin its carrier
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    void close() {
+      closed.countDown();
+    }
+
+    /**
+     * Waits until the batch is full or <tt>windowNanos</tt> have passed. An
+     * interrupt ends the wait early, as the others in the batch are waiting
+     * on it being sent.
+     *
+     * @return whether the wait was interrupted.
+     */
+    boolean awaitClose(long windowNanos) {
+      try {
+        closed.await(windowNanos, TimeUnit.NANOSECONDS);
+        return false;
+      } catch (InterruptedException e) {
+        return true;
+      }
+    }
+  }
+
+  private static class Pending {
+    final RequestImpl request;
+    final long queued = System.nanoTime();
+    final SettableFuture<Response> result = SettableFuture.create();
+
+    Pending(RequestImpl request) {
+      this.request = request;
+    }
+
+    Response get() {
+      try {
+        // the batch is bounded by the request timeouts of whoever sends it
+        return Uninterruptibles.getUninterruptibly(result);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw new FactualApiException((Exception) cause);
+      }
+    }
+  }
+
+}
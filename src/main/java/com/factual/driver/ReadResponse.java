@@ -1,15 +1,13 @@
 package com.factual.driver;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
 
 
@@ -23,30 +21,54 @@ import com.google.common.collect.Lists;
 public class ReadResponse extends Response implements Tabular {
   protected InternalResponse resp = null;
   private List<Map<String, Object>> data = Lists.newArrayList();
+  private volatile ColumnarView columns = null;
 
 
   /**
-   * Constructor, parses from a JSON response String.
+   * Constructor, parses the JSON response in a single streaming pass, or, if
+   * <tt>resp</tt> asks for lazy rows, only indexes the rows so each is built
+   * when first accessed.
    */
   public ReadResponse(InternalResponse resp) {
     this.resp = resp;
-    try{
-      JSONObject rootJsonObj = new JSONObject(resp.getContent());
-      Response.withMeta(this, rootJsonObj);
-      JSONObject respJson = rootJsonObj.getJSONObject(Constants.RESPONSE);
-      Object dataObj = respJson.get(Constants.QUERY_DATA);
-      if (dataObj instanceof JSONArray) {
-        data = JsonUtil.data(respJson.getJSONArray(Constants.QUERY_DATA));
-      } else if (dataObj instanceof JSONObject) {
-        data.add(JsonUtil.toMap((JSONObject) dataObj));
+    List<Map<String, Object>> lazy = resp.isLazyRows() ? ResponseParser.indexRows(this, resp) : null;
+    if (lazy != null)
+      data = lazy;
+    else
+      parse(resp);
+  }
+
+  private void parse(InternalResponse resp) {
+    final CompactRow.Keys keys = resp.getRowFormat() == RowFormat.COMPACT
+        ? new CompactRow.Keys() : null;
+    final StringPool pool = resp.getStringPool();
+    ResponseParser.parse(this, resp, new ResponseParser.Handler() {
+      @Override
+      public boolean field(String name, JsonParser jp) throws IOException {
+        if (!Constants.QUERY_DATA.equals(name))
+          return false;
+        if (jp.getCurrentToken() == JsonToken.START_ARRAY) {
+          while (jp.nextToken() != JsonToken.END_ARRAY) {
+            data.add(readRow(jp, keys, pool));
+          }
+          return true;
+        } else if (jp.getCurrentToken() == JsonToken.START_OBJECT) {
+          data.add(readRow(jp, keys, pool));
+          return true;
+        }
+        return false;
       }
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
-    }
+    });
+  }
+
+  private static Map<String, Object> readRow(JsonParser jp, CompactRow.Keys keys, StringPool pool)
+      throws IOException {
+    return keys != null ? CompactRow.read(jp, keys, pool) : ResponseParser.readRow(jp, pool);
   }
 
   /**
-   * @return The full JSON response from Factual
+   * @return The full JSON response from Factual, or null if raw JSON is not
+   *         kept (see {@link Factual#setKeepRawJson(boolean)}).
    */
   @Override
   public String getJson() {
@@ -66,7 +88,9 @@ public class ReadResponse extends Response implements Tabular {
 
   /**
    * An ordered collection of the main data returned by Factual. Represented as
-   * Maps, where each Map is a record in the results.
+   * Maps, where each Map is a record in the results. With lazy rows (see
+   * {@link Factual#setLazyRows(boolean)}) the list is read-only; with compact
+   * rows (see {@link Factual#setRowFormat(RowFormat)}) the rows are.
    * 
    * @return the main data returned by Factual.
    */
@@ -82,19 +106,46 @@ public class ReadResponse extends Response implements Tabular {
     return data.size();
   }
 
+  /**
+   * @return a column-oriented view of the rows, whose columns are materialised
+   *         once on first access. Each column is a snapshot of the rows as
+   *         they were then: later changes to {@link #getData()} are not seen
+   *         by the view, nor by {@link #mapStrings(String)} or
+   *         {@link #mapDoubles(String)}.
+   */
+  public ColumnarView columns() {
+    ColumnarView view = columns;
+    if (view == null) {
+      view = new ColumnarView(this);
+      columns = view;
+    }
+    return view;
+  }
+
   /**
    * @return a Collection of all String values found in this Response's data
-   *         rows as the <tt>field</tt> attribute.
+   *         rows as the <tt>field</tt> attribute, null where a row has no
+   *         value. The column is built once and reused by later calls, so
+   *         it is a snapshot of the rows when first asked for; see
+   *         {@link #columns()}.
    */
-  public Collection<String> mapStrings(final String field) {
-    return Collections2.transform(data, new Function<Map<String, Object>, String>() {
-      @Override
-      public String apply(Map<String, Object> row) {
-        Object val = row.get(field);
-        return val != null ? val.toString() : null;
-      }});
+  public Collection<String> mapStrings(String field) {
+    return columns().strings(field).asList();
   }
 
-  //TODO: Bradley: "mapToStrings, mapToDoubles, etc."
+  /**
+   * @return the values of <tt>field</tt> across the data rows as doubles, with
+   *         <tt>Double.NaN</tt> where a row has no numeric value, read from
+   *         the same snapshot as {@link #columns()}.
+   */
+  public double[] mapDoubles(String field) {
+    ColumnarView.DoubleColumn col = columns().doubles(field);
+    double[] values = col.toArray();
+    for (int i = 0; i < values.length; i++) {
+      if (col.isNull(i))
+        values[i] = Double.NaN;
+    }
+    return values;
+  }
 
 }
@@ -0,0 +1,136 @@
+package com.factual.driver;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Collapses identical reads in flight at the same time into one call to
+ * Factual. The first caller of a read sends it; every caller asking for the
+ * same read before it is answered waits for that call and is given the same
+ * parsed response, or the same exception. Reads are identical when their
+ * canonical URLs are, so equal queries are collapsed however they were built.
+ * <p>
+ * Coalescing applies to <tt>fetch</tt> of read and facet queries,
+ * <tt>fetchRow</tt>, <tt>schema</tt>, <tt>geopulse</tt> and
+ * <tt>reverseGeocode</tt>, including through {@link FactualAsync}. Callers of
+ * a coalesced read share one response object, so should not modify its rows.
+ * <p>
+ * A waiting caller that is interrupted, e.g. by cancelling its
+ * {@link FactualAsync} future, stops waiting without affecting the others.
+ * If the caller sending the read is interrupted instead, the others do not
+ * see its cancellation: one of them sends the read again. Example:
+ * <pre>
+ * RequestCoalescer coalescer = new RequestCoalescer();
+ * factual.setRequestCoalescer(coalescer);
+ * ...
+ * long saved = coalescer.getSavedCount();
+ * </pre>
+ */
+public class RequestCoalescer {
+  private final ConcurrentMap<String, SettableFuture<Response>> inFlight =
+      new ConcurrentHashMap<String, SettableFuture<Response>>();
+
+  private long requests = 0;
+  private long saved = 0;
+
+  /**
+   * @return the number of reads that went through this coalescer.
+   */
+  public synchronized long getRequestCount() {
+    return requests;
+  }
+
+  /**
+   * @return the number of reads answered by another caller's call, and so
+   *         never sent.
+   */
+  public synchronized long getSavedCount() {
+    return saved;
+  }
+
+  /**
+   * @return the number of distinct reads in flight now.
+   */
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  /**
+   * Runs the read identified by <tt>key</tt>, or joins the identical read
+   * already in flight.
+   *
+   * @return the response to the read.
+   */
+  Response call(String key, Supplier<Response> read) {
+    synchronized (this) {
+      requests++;
+    }
+    while (true) {
+      SettableFuture<Response> flight = SettableFuture.create();
+      SettableFuture<Response> leader = inFlight.putIfAbsent(key, flight);
+      if (leader == null)
+        return lead(key, flight, read);
+      Response resp = follow(leader);
+      if (resp != null)
+        return resp;
+      // the leader was cancelled; try again, perhaps as the leader
+    }
+  }
+
+  private Response lead(String key, SettableFuture<Response> flight, Supplier<Response> read) {
+    Response resp;
+    try {
+      resp = read.get();
+    } catch (RuntimeException e) {
+      inFlight.remove(key, flight);
+      // a cancelled leader's failure is its own: null sends the followers again
+      if (Thread.currentThread().isInterrupted())
+        flight.set(null);
+      else
+        flight.setException(e);
+      throw e;
+    } catch (Error e) {
+      inFlight.remove(key, flight);
+      flight.setException(e);
+      throw e;
+    }
+    inFlight.remove(key, flight);
+    flight.set(resp);
+    return resp;
+  }
+
+  /**
+   * Waits for the leader's call.
+   *
+   * @return its response, or null if the leader was cancelled.
+   */
+  private Response follow(SettableFuture<Response> leader) {
+    try {
+      Response resp = leader.get();
+      if (resp != null) {
+        synchronized (this) {
+          saved++;
+        }
+      }
+      return resp;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FactualApiException("Request cancelled");
+    } catch (ExecutionException e) {
+      synchronized (this) {
+        saved++;
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new FactualApiException((Exception) cause);
+    }
+  }
+
+}
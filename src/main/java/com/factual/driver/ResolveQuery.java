@@ -2,7 +2,9 @@ package com.factual.driver;
 
 import java.util.Map;
 
-public class ResolveQuery {
+import com.google.common.hash.HashCode;
+
+public class ResolveQuery implements Parameters.Canonical {
 
   /**
    * Holds all parameters for this ResolveQuery.
@@ -47,4 +49,30 @@ public class ResolveQuery {
   protected String toUrlQuery() {
     return UrlUtil.toUrlQuery(toUrlParams());
   }
+
+  /**
+   * @return the canonical form of this ResolveQuery; see
+   *         {@link Query#toCanonicalString()}.
+   */
+  public String toCanonicalString() {
+    return toUrlQuery();
+  }
+
+  /**
+   * @return a stable 128-bit fingerprint of this ResolveQuery's canonical form.
+   */
+  public HashCode fingerprint() {
+    return Parameters.fingerprint(getClass(), toCanonicalString());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Parameters.canonicalEquals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Parameters.canonicalHashCode(this);
+  }
+
 }
@@ -81,9 +81,21 @@ public abstract class Response {
     }
   }
 
+  /**
+   * Sets response metadata read by a streaming parser.
+   */
+  static void withMeta(Response resp, String version, String status, int totalRowCount,
+      int includedRows) {
+    resp.version = version;
+    resp.status = status;
+    resp.totalRowCount = totalRowCount;
+    resp.includedRows = includedRows;
+  }
+
   @Override
   public String toString() {
-    return getJson();
+    String json = getJson();
+    return json != null ? json : super.toString();
   }
 
   /**
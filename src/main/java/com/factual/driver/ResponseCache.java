@@ -0,0 +1,401 @@
+package com.factual.driver;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Keeps the bodies of recent read responses in memory, so a repeated
+ * <tt>fetch</tt>, <tt>fetchRow</tt>, <tt>schema</tt>, <tt>reverseGeocode</tt>
+ * or <tt>geopulse</tt> is answered without a round trip to Factual. Entries
+ * are keyed on the fingerprint of the request's canonical URL, so equal
+ * queries share an entry however they were built.
+ * <p>
+ * The cache is bounded in bytes of response body and evicts by W-TinyLFU:
+ * a new response is only kept in place of another if its query has been
+ * asked for more often lately, so a burst of one-off queries does not flush
+ * the popular ones. Each endpoint has its own time to live; with
+ * {@link #staleWhileRevalidate(long, TimeUnit)}, an expired response is
+ * still served for a while as it is refreshed in the background.
+ * <p>
+ * Responses are cached as raw bytes and parsed afresh for each caller, so
+ * callers never share parsed rows. Only successful responses are cached.
+ * Example:
+ * <pre>
+ * factual.setResponseCache(new ResponseCache()
+ *     .maximumBytes(64 * 1024 * 1024)
+ *     .ttl(ResponseCache.Endpoint.FETCH, 30, TimeUnit.SECONDS)
+ *     .staleWhileRevalidate(5, TimeUnit.MINUTES));
+ * </pre>
+ */
+public class ResponseCache {
+
+  /**
+   * The endpoints whose responses are cached, each with its own time to
+   * live.
+   */
+  public enum Endpoint {
+    /** Read queries, <tt>fetch(table, Query)</tt>; 1 minute by default. */
+    FETCH(TimeUnit.MINUTES.toNanos(1)),
+    /** Single rows, <tt>fetchRow</tt>; 5 minutes by default. */
+    FETCH_ROW(TimeUnit.MINUTES.toNanos(5)),
+    /** Facet queries; 5 minutes by default. */
+    FACETS(TimeUnit.MINUTES.toNanos(5)),
+    /** Table schemas; 1 day by default. */
+    SCHEMA(TimeUnit.DAYS.toNanos(1)),
+    /** Geopulse queries; 1 hour by default. */
+    GEOPULSE(TimeUnit.HOURS.toNanos(1)),
+    /** Reverse geocodes; 1 hour by default. */
+    REVERSE_GEOCODE(TimeUnit.HOURS.toNanos(1));
+
+    private final long defaultTtlNanos;
+
+    private Endpoint(long defaultTtlNanos) {
+      this.defaultTtlNanos = defaultTtlNanos;
+    }
+  }
+
+  private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("factual-cache-%d").build());
+
+  /** The approximate heap cost of an entry, beyond its body. */
+  private static final int ENTRY_OVERHEAD = 128;
+
+  private static final class Entry {
+    final byte[] body;
+    final long expiresAt;
+    final long staleUntil;
+    final AtomicBoolean refreshing = new AtomicBoolean();
+
+    Entry(byte[] body, long expiresAt, long staleUntil) {
+      this.body = body;
+      this.expiresAt = expiresAt;
+      this.staleUntil = staleUntil;
+    }
+  }
+
+  private final Map<Endpoint, Long> ttls = new EnumMap<Endpoint, Long>(Endpoint.class);
+  private long staleNanos = 0;
+  private ExecutorService executor = DEFAULT_EXECUTOR;
+  private long maximumBytes = 32 * 1024 * 1024;
+  private TinyLfuMap<HashCode, Entry> entries;
+
+  private long hits = 0;
+  private long staleHits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+  private long expirations = 0;
+  private long refreshes = 0;
+  private long diskHits = 0;
+  private DiskCache disk = null;
+
+  public ResponseCache() {
+    for (Endpoint endpoint : Endpoint.values()) {
+      ttls.put(endpoint, endpoint.defaultTtlNanos);
+    }
+    entries = newMap(maximumBytes);
+  }
+
+  /**
+   * Bounds the bytes of response body held, and clears the cache. The
+   * default is 32 MB.
+   *
+   * @param maximumBytes
+   *          the most bytes held.
+   * @return this ResponseCache
+   */
+  public synchronized ResponseCache maximumBytes(long maximumBytes) {
+    if (maximumBytes < 0)
+      throw new IllegalArgumentException("maximumBytes must not be negative: " + maximumBytes);
+    this.maximumBytes = maximumBytes;
+    this.entries = newMap(maximumBytes);
+    return this;
+  }
+
+  /**
+   * Sets how long responses from <tt>endpoint</tt> are fresh; 0 stops them
+   * being cached.
+   *
+   * @param endpoint
+   *          the endpoint whose responses this applies to.
+   * @param ttl
+   *          how long a response is served from the cache.
+   * @param unit
+   *          the unit of <tt>ttl</tt>.
+   * @return this ResponseCache
+   */
+  public synchronized ResponseCache ttl(Endpoint endpoint, long ttl, TimeUnit unit) {
+    if (ttl < 0)
+      throw new IllegalArgumentException("ttl must not be negative: " + ttl);
+    ttls.put(endpoint, unit.toNanos(ttl));
+    return this;
+  }
+
+  /**
+   * Serves a response for up to <tt>stale</tt> past its time to live while a
+   * fresh copy is fetched in the background, so callers of popular queries
+   * never wait on a refresh. The default is 0, never serving stale
+   * responses.
+   *
+   * @param stale
+   *          how long past its time to live a response may be served.
+   * @param unit
+   *          the unit of <tt>stale</tt>.
+   * @return this ResponseCache
+   */
+  public synchronized ResponseCache staleWhileRevalidate(long stale, TimeUnit unit) {
+    if (stale < 0)
+      throw new IllegalArgumentException("stale must not be negative: " + stale);
+    this.staleNanos = unit.toNanos(stale);
+    return this;
+  }
+
+  /**
+   * Sets the executor background refreshes run on. By default a shared pool
+   * of daemon threads is used. The executor is not shut down by the cache.
+   *
+   * @return this ResponseCache
+   */
+  public synchronized ResponseCache executor(ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * Backs this cache with a persistent tier: every response cached is also
+   * written to <tt>disk</tt>, and responses missing from memory are looked
+   * for there, so a restarted process starts warm. Expiry is kept on disk in
+   * wall clock time. Null detaches the tier, which remains open.
+   *
+   * @param disk
+   *          the persistent tier, which remains owned by the caller.
+   * @return this ResponseCache
+   */
+  public synchronized ResponseCache diskTier(DiskCache disk) {
+    this.disk = disk;
+    return this;
+  }
+
+  /**
+   * Drops every cached response held in memory; see
+   * {@link DiskCache#clear()} for the persistent tier.
+   */
+  public synchronized void invalidateAll() {
+    entries.clear();
+  }
+
+  /**
+   * @return the number of lookups answered by a fresh response.
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * @return the number of lookups answered by a stale response while it was
+   *         refreshed.
+   */
+  public synchronized long getStaleHitCount() {
+    return staleHits;
+  }
+
+  /**
+   * @return the number of lookups that missed in memory but found a response
+   *         in the persistent tier; these also count as hits or stale hits.
+   */
+  public synchronized long getDiskHitCount() {
+    return diskHits;
+  }
+
+  /**
+   * @return the number of lookups that had to go to Factual.
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /**
+   * @return the share of lookups answered from the cache, fresh or stale.
+   */
+  public synchronized double getHitRate() {
+    long lookups = hits + staleHits + misses;
+    return lookups == 0 ? 0 : (double) (hits + staleHits) / lookups;
+  }
+
+  /**
+   * @return the number of responses evicted to make room for others.
+   */
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  /**
+   * @return the number of responses dropped because they expired.
+   */
+  public synchronized long getExpirationCount() {
+    return expirations;
+  }
+
+  /**
+   * @return the number of background refreshes started.
+   */
+  public synchronized long getRefreshCount() {
+    return refreshes;
+  }
+
+  /**
+   * @return the number of cached responses.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the approximate bytes held, counting response bodies and a fixed
+   *         overhead per entry.
+   */
+  public synchronized long getWeightedSize() {
+    return entries.weight();
+  }
+
+  /**
+   * @return whether responses from <tt>endpoint</tt> are cached.
+   */
+  synchronized boolean caches(Endpoint endpoint) {
+    return ttls.get(endpoint) > 0 && maximumBytes > 0;
+  }
+
+  /**
+   * Looks up the response to the request for <tt>url</tt>, in memory and
+   * then on disk. A stale response is returned once <tt>refresh</tt> has
+   * been started to replace it.
+   *
+   * @return the body of the cached response, or null.
+   */
+  byte[] get(Endpoint endpoint, String url, final Runnable refresh) {
+    HashCode key = key(endpoint, url);
+    Entry found;
+    DiskCache tier;
+    synchronized (this) {
+      found = entries.get(key);
+      tier = disk;
+    }
+    if (found == null && tier != null)
+      found = load(tier, key);
+    final Entry entry = found;
+    ExecutorService refreshExecutor;
+    synchronized (this) {
+      long now = System.nanoTime();
+      if (entry == null) {
+        misses++;
+        return null;
+      }
+      if (now - entry.expiresAt < 0) {
+        hits++;
+        return entry.body;
+      }
+      if (now - entry.staleUntil >= 0) {
+        entries.remove(key);
+        expirations++;
+        misses++;
+        return null;
+      }
+      staleHits++;
+      if (!entry.refreshing.compareAndSet(false, true))
+        return entry.body;
+      refreshes++;
+      refreshExecutor = executor;
+    }
+    try {
+      refreshExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            refresh.run();
+          } catch (RuntimeException e) {
+            // keep serving the stale response; a later lookup retries
+          } finally {
+            entry.refreshing.set(false);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      entry.refreshing.set(false);
+    }
+    return entry.body;
+  }
+
+  /**
+   * Caches <tt>body</tt> as the response to the request for <tt>url</tt>, in
+   * memory and on disk.
+   */
+  void put(Endpoint endpoint, String url, byte[] body) {
+    HashCode key = key(endpoint, url);
+    long ttl, stale;
+    DiskCache tier;
+    synchronized (this) {
+      ttl = ttls.get(endpoint);
+      stale = staleNanos;
+      tier = disk;
+      if (ttl <= 0)
+        return;
+      long now = System.nanoTime();
+      entries.put(key, new Entry(body, now + ttl, now + ttl + stale), body.length + ENTRY_OVERHEAD);
+    }
+    if (tier != null) {
+      long now = System.currentTimeMillis();
+      tier.put(key, body, now + TimeUnit.NANOSECONDS.toMillis(ttl),
+          now + TimeUnit.NANOSECONDS.toMillis(ttl + stale));
+    }
+  }
+
+  /**
+   * Reads the response for <tt>key</tt> from disk into memory.
+   *
+   * @return the entry read, or null.
+   */
+  private Entry load(DiskCache tier, HashCode key) {
+    DiskCache.Record record = tier.get(key);
+    if (record == null)
+      return null;
+    // wall clock times on disk become nano times in memory
+    long nowMillis = System.currentTimeMillis();
+    long now = System.nanoTime();
+    Entry entry = new Entry(record.body,
+        now + TimeUnit.MILLISECONDS.toNanos(record.expiresAt - nowMillis),
+        now + TimeUnit.MILLISECONDS.toNanos(record.staleUntil - nowMillis));
+    synchronized (this) {
+      diskHits++;
+      entries.put(key, entry, record.body.length + ENTRY_OVERHEAD);
+    }
+    return entry;
+  }
+
+  private static HashCode key(Endpoint endpoint, String url) {
+    return Hashing.murmur3_128().newHasher()
+        .putInt(endpoint.ordinal())
+        .putString(url, Charsets.UTF_8)
+        .hash();
+  }
+
+  private TinyLfuMap<HashCode, Entry> newMap(long maximumBytes) {
+    int expectedEntries = (int) Math.min(Integer.MAX_VALUE, maximumBytes / 2048);
+    return new TinyLfuMap<HashCode, Entry>(maximumBytes, expectedEntries,
+        new TinyLfuMap.EvictionListener<HashCode, Entry>() {
+      @Override
+      public void onEviction(HashCode key, Entry value) {
+        evictions++;
+      }
+    });
+  }
+
+}
@@ -0,0 +1,244 @@
+package com.factual.driver;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Parses Factual's JSON responses in one streaming pass with Jackson, without
+ * building an intermediate String or org.json tree for the whole payload.
+ * <p>
+ * Values are produced in the same types org.json would give, so the data of a
+ * response looks the same as before: strings, Integer, Long or Double
+ * numbers, Booleans, {@link JSONObject#NULL} for nulls, and
+ * {@link JSONObject}/{@link JSONArray} for nested values.
+ */
+class ResponseParser {
+  static final JsonFactory FACTORY = new JsonFactory();
+
+  /**
+   * Receives the fields of the <tt>response</tt> object that are not
+   * response metadata.
+   */
+  interface Handler {
+    /**
+     * Reads the value of field <tt>name</tt>, on which <tt>jp</tt> is
+     * positioned.
+     *
+     * @return true if the value was consumed, false to have it skipped.
+     */
+    boolean field(String name, JsonParser jp) throws IOException;
+  }
+
+  /**
+   * Parses the body of <tt>resp</tt> into <tt>target</tt>: response metadata
+   * into the target itself, and everything else inside the
+   * <tt>response</tt> object through <tt>handler</tt>.
+   */
+  static void parse(Response target, InternalResponse resp, Handler handler) {
+    read(target, resp, handler);
+    resp.parsed();
+  }
+
+  /**
+   * Parses only the response metadata of <tt>resp</tt> into <tt>target</tt>,
+   * keeping the raw JSON, which is what the caller is after.
+   */
+  static void parseMeta(Response target, InternalResponse resp) {
+    read(target, resp, null);
+  }
+
+  /**
+   * Reads the response metadata of <tt>resp</tt> into <tt>target</tt> and
+   * indexes its data rows without decoding them, for rows built on first
+   * access.
+   *
+   * @return the lazily built rows, or null if the body is not available as
+   *         bytes.
+   */
+  static List<Map<String, Object>> indexRows(Response target, InternalResponse resp) {
+    JsonScanner scanner = resp.createScanner();
+    if (scanner == null)
+      return null;
+    try {
+      int root = scanner.skipWhitespace(scanner.start());
+      int[] top = scanner.findMembers(root, Constants.VERSION, Constants.STATUS, Constants.RESPONSE);
+      int totalRowCount = Response.UNDEFINED;
+      int includedRows = 0;
+      List<Map<String, Object>> rows = Collections.emptyList();
+      if (top[2] >= 0) {
+        int[] members = scanner.findMembers(top[2], Constants.TOTAL_ROW_COUNT,
+            Constants.INCLUDED_ROWS, Constants.QUERY_DATA);
+        if (members[0] >= 0)
+          totalRowCount = ((Number) decode(scanner, members[0])).intValue();
+        if (members[1] >= 0)
+          includedRows = ((Number) decode(scanner, members[1])).intValue();
+        if (members[2] >= 0)
+          rows = LazyRowList.index(scanner, members[2], resp.getStringPool());
+      }
+      Response.withMeta(target, top[0] < 0 ? null : decode(scanner, top[0]).toString(),
+          top[1] < 0 ? null : decode(scanner, top[1]).toString(), totalRowCount, includedRows);
+      resp.parsed();
+      return rows;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Object decode(JsonScanner scanner, int start) throws IOException {
+    return scanner.decode(start, scanner.skipValue(start));
+  }
+
+  private static void read(Response target, InternalResponse resp, Handler handler) {
+    try {
+      JsonParser jp = resp.createParser();
+      try {
+        parse(target, jp, handler);
+      } finally {
+        jp.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void parse(Response target, JsonParser jp, Handler handler) throws IOException {
+    String version = null;
+    String status = null;
+    int totalRowCount = Response.UNDEFINED;
+    int includedRows = 0;
+    expect(jp.nextToken(), JsonToken.START_OBJECT);
+    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+      String name = jp.getCurrentName();
+      JsonToken token = jp.nextToken();
+      if (Constants.VERSION.equals(name)) {
+        version = jp.getText();
+      } else if (Constants.STATUS.equals(name)) {
+        status = jp.getText();
+      } else if (Constants.RESPONSE.equals(name) && token == JsonToken.START_OBJECT) {
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+          String field = jp.getCurrentName();
+          jp.nextToken();
+          if (Constants.TOTAL_ROW_COUNT.equals(field)) {
+            totalRowCount = jp.getIntValue();
+          } else if (Constants.INCLUDED_ROWS.equals(field)) {
+            includedRows = jp.getIntValue();
+          } else if (handler == null || !handler.field(field, jp)) {
+            jp.skipChildren();
+          }
+        }
+      } else {
+        jp.skipChildren();
+      }
+    }
+    Response.withMeta(target, version, status, totalRowCount, includedRows);
+  }
+
+  /**
+   * Reads the object <tt>jp</tt> is positioned on into a Map.
+   */
+  static Map<String, Object> readRow(JsonParser jp) throws IOException {
+    return readRow(jp, null);
+  }
+
+  /**
+   * Reads the object <tt>jp</tt> is positioned on into a Map, interning the
+   * strings of fields pooled by <tt>pool</tt>, if given.
+   */
+  static Map<String, Object> readRow(JsonParser jp, StringPool pool) throws IOException {
+    expect(jp.getCurrentToken(), JsonToken.START_OBJECT);
+    Map<String, Object> row = Maps.newHashMap();
+    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+      String name = jp.getCurrentName();
+      jp.nextToken();
+      row.put(name, readValue(jp, pool == null ? null : pool.forField(name)));
+    }
+    return row;
+  }
+
+  /**
+   * Reads the value <tt>jp</tt> is positioned on, as org.json would.
+   */
+  static Object readValue(JsonParser jp) throws IOException {
+    return readValue(jp, null);
+  }
+
+  /**
+   * Reads the value <tt>jp</tt> is positioned on, as org.json would,
+   * interning every string in it through <tt>strings</tt>, if given.
+   */
+  static Object readValue(JsonParser jp, StringPool.FieldPool strings) throws IOException {
+    switch (jp.getCurrentToken()) {
+    case START_OBJECT:
+      JSONObject obj = new JSONObject();
+      while (jp.nextToken() == JsonToken.FIELD_NAME) {
+        String name = jp.getCurrentName();
+        jp.nextToken();
+        put(obj, name, readValue(jp, strings));
+      }
+      return obj;
+    case START_ARRAY:
+      JSONArray arr = new JSONArray();
+      while (jp.nextToken() != JsonToken.END_ARRAY) {
+        arr.put(readValue(jp, strings));
+      }
+      return arr;
+    case VALUE_STRING:
+      return strings == null ? jp.getText() : strings.intern(jp.getText());
+    case VALUE_NUMBER_INT:
+      switch (jp.getNumberType()) {
+      case INT:
+        return jp.getIntValue();
+      case LONG:
+        return jp.getLongValue();
+      default:
+        return jp.getDoubleValue();
+      }
+    case VALUE_NUMBER_FLOAT:
+      return jp.getDoubleValue();
+    case VALUE_TRUE:
+      return Boolean.TRUE;
+    case VALUE_FALSE:
+      return Boolean.FALSE;
+    case VALUE_NULL:
+      return JSONObject.NULL;
+    default:
+      throw new IOException("Unexpected JSON token " + jp.getCurrentToken());
+    }
+  }
+
+  /**
+   * Reads a JSON boolean, also accepting the strings "true" and "false" as
+   * org.json does.
+   */
+  static boolean readBoolean(JsonParser jp) throws IOException {
+    JsonToken token = jp.getCurrentToken();
+    if (token == JsonToken.VALUE_STRING)
+      return "true".equalsIgnoreCase(jp.getText());
+    return token == JsonToken.VALUE_TRUE;
+  }
+
+  private static void put(JSONObject obj, String name, Object value) throws IOException {
+    try {
+      obj.put(name, value);
+    } catch (JSONException e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+    if (actual != expected)
+      throw new IOException("Expected " + expected + " but found " + actual);
+  }
+
+}
@@ -0,0 +1,371 @@
+package com.factual.driver;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Decides whether, and after how long, a failed request to Factual is retried.
+ * <p>
+ * Retries back off exponentially with jitter, honour the server's
+ * <tt>Retry-After</tt> and Factual's throttle allocation headers, and always
+ * fit inside an overall deadline so a call never takes much longer than the
+ * deadline no matter how many attempts it makes. By default only reads are
+ * retried; writes (submit, insert, clear, flag and raw POSTs) are retried only
+ * if {@link #retryWrites(boolean)} is enabled.
+ * <p>
+ * Example:
+ * <pre>
+ * factual.setRetryPolicy(new RetryPolicy()
+ *     .maxAttempts(4)
+ *     .backoff(100, 2000, TimeUnit.MILLISECONDS)
+ *     .deadline(5, TimeUnit.SECONDS));
+ * </pre>
+ */
+public class RetryPolicy {
+  public static final String THROTTLE_ALLOCATION_HEADER = "X-Factual-Throttle-Allocation";
+
+  /**
+   * A policy that never retries, which is the default for {@link Factual}.
+   * It is shared, so cannot be changed; its setters throw
+   * UnsupportedOperationException.
+   */
+  public static final RetryPolicy NONE = new RetryPolicy().maxAttempts(1).freeze();
+
+  private static final Set<Integer> DEFAULT_RETRYABLE_STATUS_CODES = ImmutableSet.of(429, 500, 502, 503, 504);
+  private static final Random RANDOM = new Random();
+
+  private int maxAttempts = 3;
+  private long initialBackoffMillis = 100;
+  private long maxBackoffMillis = 5000;
+  private double multiplier = 2.0;
+  private double jitter = 0.5;
+  private long deadlineMillis = 30000;
+  private Set<Integer> retryableStatusCodes = DEFAULT_RETRYABLE_STATUS_CODES;
+  private boolean retryOnIOException = true;
+  private boolean retryWrites = false;
+  private boolean honorRetryAfter = true;
+  private boolean deadlineSet = false;
+  private boolean frozen = false;
+
+  /**
+   * Constructor. Creates a policy making up to 3 attempts, backing off from
+   * 100ms to 5s, within a 30s deadline.
+   */
+  public RetryPolicy() {
+  }
+
+  /**
+   * Sets the maximum number of attempts, including the first.
+   *
+   * @param maxAttempts
+   *          the maximum number of attempts; 1 disables retries.
+   * @return this RetryPolicy
+   */
+  public RetryPolicy maxAttempts(int maxAttempts) {
+    checkMutable();
+    if (maxAttempts < 1)
+      throw new IllegalArgumentException("maxAttempts must be >= 1");
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  /**
+   * Sets the delay before the first retry and the cap on any single delay.
+   *
+   * @param initial
+   *          the delay before the first retry.
+   * @param max
+   *          the longest delay between two attempts.
+   * @param unit
+   *          the unit of <tt>initial</tt> and <tt>max</tt>.
+   * @return this RetryPolicy
+   */
+  public RetryPolicy backoff(long initial, long max, TimeUnit unit) {
+    checkMutable();
+    if (initial < 0 || max < initial)
+      throw new IllegalArgumentException("Backoff must satisfy 0 <= initial <= max");
+    this.initialBackoffMillis = unit.toMillis(initial);
+    this.maxBackoffMillis = unit.toMillis(max);
+    return this;
+  }
+
+  /**
+   * Sets the factor by which the delay grows after each attempt.
+   *
+   * @param multiplier
+   *          the backoff growth factor, at least 1.
+   * @return this RetryPolicy
+   */
+  public RetryPolicy multiplier(double multiplier) {
+    checkMutable();
+    if (multiplier < 1)
+      throw new IllegalArgumentException("multiplier must be >= 1");
+    this.multiplier = multiplier;
+    return this;
+  }
+
+  /**
+   * Sets the fraction of each delay that is randomised, so clients that failed
+   * together do not retry together. With a jitter of 0.5, a 200ms delay
+   * becomes a random delay between 100ms and 200ms.
+   *
+   * @param jitter
+   *          the randomised fraction, between 0 and 1.
+   * @return this RetryPolicy
+   */
+  public RetryPolicy jitter(double jitter) {
+    checkMutable();
+    if (jitter < 0 || jitter > 1)
+      throw new IllegalArgumentException("jitter must be between 0 and 1");
+    this.jitter = jitter;
+    return this;
+  }
+
+  /**
+   * Sets the overall time budget for a call, across all of its attempts and
+   * delays. No retry is started that could not finish within the deadline,
+   * and the read timeout of each attempt is shortened to fit the time left.
+   *
+   * @param deadline
+   *          the time budget for a call.
+   * @param unit
+   *          the unit of <tt>deadline</tt>.
+   * @return this RetryPolicy
+   */
+  public RetryPolicy deadline(long deadline, TimeUnit unit) {
+    checkMutable();
+    if (deadline < 0)
+      throw new IllegalArgumentException("deadline must be >= 0");
+    this.deadlineMillis = unit.toMillis(deadline);
+    this.deadlineSet = true;
+    return this;
+  }
+
+  /**
+   * Sets the HTTP status codes that are retried. Defaults to 429, 500, 502,
+   * 503 and 504.
+   *
+   * @param statusCodes
+   *          the retryable status codes.
+   * @return this RetryPolicy
+   */
+  public RetryPolicy retryOn(Integer... statusCodes) {
+    checkMutable();
+    this.retryableStatusCodes = ImmutableSet.copyOf(statusCodes);
+    return this;
+  }
+
+  /**
+   * Sets whether connection failures, timeouts and resets are retried. The
+   * default is true.
+   *
+   * @param retryOnIOException
+   *          true to retry requests that failed with an I/O error.
+   * @return this RetryPolicy
+   */
+  public RetryPolicy retryOnIOException(boolean retryOnIOException) {
+    checkMutable();
+    this.retryOnIOException = retryOnIOException;
+    return this;
+  }
+
+  /**
+   * Sets whether non-idempotent writes (submit, insert, clear, flag and raw
+   * POSTs) are retried. The default is false, since a write that timed out may
+   * still have been applied.
+   *
+   * @param retryWrites
+   *          true to retry writes as well as reads.
+   * @return this RetryPolicy
+   */
+  public RetryPolicy retryWrites(boolean retryWrites) {
+    checkMutable();
+    this.retryWrites = retryWrites;
+    return this;
+  }
+
+  /**
+   * Sets whether the server's <tt>Retry-After</tt> and throttle allocation
+   * headers take precedence over the computed backoff. The default is true.
+   *
+   * @param honorRetryAfter
+   *          true to wait as long as the server asks.
+   * @return this RetryPolicy
+   */
+  public RetryPolicy honorRetryAfter(boolean honorRetryAfter) {
+    checkMutable();
+    this.honorRetryAfter = honorRetryAfter;
+    return this;
+  }
+
+  /**
+   * @return whether each attempt's read timeout is cut to the time left
+   *         before the deadline: true when retrying or when a deadline was set.
+   */
+  protected boolean limitsReadTimeout() {
+    return maxAttempts > 1 || deadlineSet;
+  }
+
+  private RetryPolicy freeze() {
+    frozen = true;
+    return this;
+  }
+
+  private void checkMutable() {
+    if (frozen)
+      throw new UnsupportedOperationException("This RetryPolicy is shared and cannot be changed");
+  }
+
+  /**
+   * Begins tracking the attempts of one call.
+   *
+   * @param idempotent
+   *          whether the call may safely be repeated.
+   */
+  protected Attempts begin(boolean idempotent) {
+    return new Attempts(idempotent);
+  }
+
+  /**
+   * @return the backoff before retry number <tt>retry</tt> (1-based), with
+   *         jitter applied.
+   */
+  protected long backoffMillis(int retry) {
+    double delay = initialBackoffMillis * Math.pow(multiplier, retry - 1);
+    delay = Math.min(delay, maxBackoffMillis);
+    return (long) (delay * (1 - jitter * RANDOM.nextDouble()));
+  }
+
+  /**
+   * Parses a <tt>Retry-After</tt> value, given either in seconds or as an HTTP
+   * date.
+   *
+   * @return the delay requested by the server, or -1 if there was none.
+   */
+  protected static long parseRetryAfter(String retryAfter, long now) {
+    if (retryAfter == null || retryAfter.trim().length() == 0)
+      return -1;
+    String value = retryAfter.trim();
+    try {
+      return Math.max(0, Long.parseLong(value) * 1000);
+    } catch (NumberFormatException e) {
+      // not delta-seconds, try an HTTP date
+    }
+    try {
+      SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+      return Math.max(0, httpDate.parse(value).getTime() - now);
+    } catch (ParseException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Reads Factual's throttle allocation header, e.g.
+   * <tt>{"daily":"12.5%","minute":"100.0%"}</tt>.
+   *
+   * @return -1 if no window is exhausted, 0 if the daily or hourly allocation
+   *         is exhausted so retrying is pointless, or the delay until the next
+   *         minute if only the per-minute allocation is exhausted.
+   */
+  protected static long throttleDelayMillis(String allocation, long now) {
+    if (allocation == null)
+      return -1;
+    try {
+      JSONObject windows = new JSONObject(allocation);
+      long delay = -1;
+      Iterator<?> iter = windows.keys();
+      while (iter.hasNext()) {
+        String window = iter.next().toString();
+        String used = windows.getString(window).replace("%", "").trim();
+        if (Double.parseDouble(used) < 100)
+          continue;
+        if ("minute".equals(window))
+          delay = Math.max(delay, 60000 - now % 60000);
+        else
+          return 0;
+      }
+      return delay;
+    } catch (JSONException e) {
+      return -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Tracks the attempts of a single call against this policy.
+   */
+  protected class Attempts {
+    private final boolean idempotent;
+    private final long start = System.currentTimeMillis();
+    private int attempt = 1;
+
+    private Attempts(boolean idempotent) {
+      this.idempotent = idempotent;
+    }
+
+    /**
+     * @return the number of the attempt about to be made, starting at 1.
+     */
+    public int getAttempt() {
+      return attempt;
+    }
+
+    /**
+     * @return the time left before the deadline, at least 1ms.
+     */
+    public long remainingMillis() {
+      return Math.max(1, deadlineMillis - (System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Decides whether a failed attempt is retried and, if so, sleeps until
+     * the next attempt is due.
+     *
+     * @param statusCode
+     *          the HTTP status of the failed attempt, or 0 for an I/O error.
+     * @param headers
+     *          the response headers of the failed attempt, or null.
+     * @return true if the caller should make another attempt.
+     */
+    public boolean retry(int statusCode, HttpHeaders headers) {
+      if (attempt >= maxAttempts || !(idempotent || retryWrites))
+        return false;
+      if (statusCode == 0 ? !retryOnIOException : !retryableStatusCodes.contains(statusCode))
+        return false;
+
+      long delay = backoffMillis(attempt);
+      if (honorRetryAfter && headers != null) {
+        long now = System.currentTimeMillis();
+        long throttle = throttleDelayMillis(headers.getFirstHeaderStringValue(THROTTLE_ALLOCATION_HEADER), now);
+        if (throttle == 0)
+          return false;
+        delay = Math.max(delay, throttle);
+        delay = Math.max(delay, parseRetryAfter(headers.getRetryAfter(), now));
+      }
+      if (delay >= remainingMillis())
+        return false;
+
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      attempt++;
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,252 @@
+package com.factual.driver;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Decodes Factual result rows straight from the streaming parser into
+ * instances of <tt>T</tt>, without going through a Map and without boxing
+ * primitive fields.
+ * <p>
+ * Codecs are normally generated at compile time for classes annotated with
+ * {@link FactualRow}, and looked up once per type with {@link #forClass(Class)}.
+ * A codec may also be written by hand and installed with
+ * {@link #register(Class, RowCodec)}.
+ *
+ * @param <T>
+ *          the row type.
+ */
+public abstract class RowCodec<T> {
+  /** Suffix of the class name generated for a row type. */
+  public static final String GENERATED_SUFFIX = "$$RowCodec";
+
+  private static final ConcurrentMap<Class<?>, RowCodec<?>> CODECS = Maps.newConcurrentMap();
+
+  private static final ImmutableSet<Class<?>> DECIMAL_TYPES = ImmutableSet.<Class<?>>of(
+      double.class, Double.class, float.class, Float.class);
+  private static final ImmutableSet<Class<?>> INTEGER_TYPES = ImmutableSet.<Class<?>>of(
+      int.class, Integer.class, long.class, Long.class);
+  private static final ImmutableSet<Class<?>> BOOLEAN_TYPES = ImmutableSet.<Class<?>>of(
+      boolean.class, Boolean.class);
+
+  private final String[] columns;
+  private final Class<?>[] types;
+  private final Map<String, Integer> index;
+
+  /**
+   * Constructor.
+   *
+   * @param columns
+   *          the column each field is decoded from.
+   * @param types
+   *          the Java type of each field.
+   */
+  protected RowCodec(String[] columns, Class<?>[] types) {
+    this.columns = columns;
+    this.types = types;
+    this.index = Maps.newHashMapWithExpectedSize(columns.length);
+    for (int i = 0; i < columns.length; i++) {
+      index.put(columns[i], i);
+    }
+  }
+
+  /**
+   * @return a new, empty row.
+   */
+  protected abstract T newRow();
+
+  /**
+   * Decodes the value <tt>jp</tt> is positioned on into field number
+   * <tt>field</tt> of <tt>row</tt>.
+   */
+  protected abstract void decodeField(T row, int field, JsonParser jp) throws IOException;
+
+  /**
+   * Decodes the row object <tt>jp</tt> is positioned on. Columns without a
+   * matching field are skipped.
+   */
+  public T decode(JsonParser jp) throws IOException {
+    if (jp.getCurrentToken() != JsonToken.START_OBJECT)
+      throw new IOException("Expected a row object but found " + jp.getCurrentToken());
+    T row = newRow();
+    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+      Integer field = index.get(jp.getCurrentName());
+      jp.nextToken();
+      if (field == null)
+        jp.skipChildren();
+      else
+        decodeField(row, field, jp);
+    }
+    return row;
+  }
+
+  /**
+   * @return the columns this codec decodes, in field order.
+   */
+  public String[] getColumns() {
+    return columns.clone();
+  }
+
+  /**
+   * Checks the fields of this codec against the column datatypes of a table,
+   * e.g. that a <tt>Decimal</tt> column such as <tt>latitude</tt> is decoded
+   * into a floating point field rather than an <tt>int</tt>.
+   *
+   * @param schema
+   *          the schema of the table the rows come from.
+   * @return a description of each field that cannot hold its column's values;
+   *         empty if the codec fits the table.
+   */
+  public List<String> validate(SchemaResponse schema) {
+    List<String> problems = Lists.newArrayList();
+    for (int i = 0; i < columns.length; i++) {
+      ColumnSchema column = schema.getColumnSchema(columns[i]);
+      if (column == null || column.datatype == null)
+        continue;
+      if (!accepts(column.datatype, types[i]))
+        problems.add(columns[i] + ": " + column.datatype + " column cannot be decoded into "
+            + types[i].getSimpleName());
+    }
+    return problems;
+  }
+
+  private static boolean accepts(String datatype, Class<?> type) {
+    if (type == String.class || type == Object.class)
+      return true;
+    if ("Decimal".equalsIgnoreCase(datatype) || "Float".equalsIgnoreCase(datatype)
+        || "Double".equalsIgnoreCase(datatype))
+      return DECIMAL_TYPES.contains(type);
+    if ("Integer".equalsIgnoreCase(datatype) || "Int".equalsIgnoreCase(datatype)
+        || "Long".equalsIgnoreCase(datatype))
+      return INTEGER_TYPES.contains(type) || DECIMAL_TYPES.contains(type);
+    if ("Boolean".equalsIgnoreCase(datatype))
+      return BOOLEAN_TYPES.contains(type);
+    return type == JSONArray.class || type == JSONObject.class;
+  }
+
+  /**
+   * Looks up the codec for <tt>type</tt>: one registered with
+   * {@link #register(Class, RowCodec)}, or else the one generated for a
+   * {@link FactualRow} class. The generated codec is loaded once and cached.
+   *
+   * @throws IllegalArgumentException
+   *           if there is no codec for <tt>type</tt>.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> RowCodec<T> forClass(Class<T> type) {
+    RowCodec<?> codec = CODECS.get(type);
+    if (codec == null) {
+      try {
+        Class<?> generated = Class.forName(type.getName() + GENERATED_SUFFIX, true,
+            type.getClassLoader());
+        codec = (RowCodec<?>) generated.newInstance();
+      } catch (ClassNotFoundException e) {
+        throw new IllegalArgumentException("No RowCodec for " + type.getName()
+            + ": annotate it with @FactualRow and compile with annotation processing enabled,"
+            + " or register a codec", e);
+      } catch (InstantiationException e) {
+        throw new IllegalArgumentException(e);
+      } catch (IllegalAccessException e) {
+        throw new IllegalArgumentException(e);
+      }
+      RowCodec<?> existing = CODECS.putIfAbsent(type, codec);
+      if (existing != null)
+        codec = existing;
+    }
+    return (RowCodec<T>) codec;
+  }
+
+  /**
+   * Installs <tt>codec</tt> for <tt>type</tt>, replacing any generated one.
+   */
+  public static <T> void register(Class<T> type, RowCodec<T> codec) {
+    CODECS.put(type, codec);
+  }
+
+  // Readers used by generated codecs. Each leaves the parser on the last
+  // token of the value.
+
+  protected static String readString(JsonParser jp) throws IOException {
+    switch (jp.getCurrentToken()) {
+    case VALUE_NULL:
+      return null;
+    case START_OBJECT:
+    case START_ARRAY:
+      return ResponseParser.readValue(jp).toString();
+    default:
+      return jp.getText();
+    }
+  }
+
+  protected static double readDouble(JsonParser jp) throws IOException {
+    switch (jp.getCurrentToken()) {
+    case VALUE_NUMBER_INT:
+    case VALUE_NUMBER_FLOAT:
+      return jp.getDoubleValue();
+    case VALUE_STRING:
+      try {
+        return Double.parseDouble(jp.getText().trim());
+      } catch (NumberFormatException e) {
+        return Double.NaN;
+      }
+    default:
+      jp.skipChildren();
+      return Double.NaN;
+    }
+  }
+
+  protected static long readLong(JsonParser jp) throws IOException {
+    switch (jp.getCurrentToken()) {
+    case VALUE_NUMBER_INT:
+      return jp.getLongValue();
+    case VALUE_NUMBER_FLOAT:
+      return (long) jp.getDoubleValue();
+    case VALUE_STRING:
+      try {
+        return Long.parseLong(jp.getText().trim());
+      } catch (NumberFormatException e) {
+        return 0;
+      }
+    default:
+      jp.skipChildren();
+      return 0;
+    }
+  }
+
+  protected static boolean readBoolean(JsonParser jp) throws IOException {
+    boolean value = ResponseParser.readBoolean(jp);
+    jp.skipChildren();
+    return value;
+  }
+
+  protected static boolean isNull(JsonParser jp) {
+    return jp.getCurrentToken() == JsonToken.VALUE_NULL;
+  }
+
+  protected static Object readObject(JsonParser jp) throws IOException {
+    Object value = ResponseParser.readValue(jp);
+    return value == JSONObject.NULL ? null : value;
+  }
+
+  protected static JSONArray readJSONArray(JsonParser jp) throws IOException {
+    Object value = readObject(jp);
+    return value instanceof JSONArray ? (JSONArray) value : null;
+  }
+
+  protected static JSONObject readJSONObject(JsonParser jp) throws IOException {
+    Object value = readObject(jp);
+    return value instanceof JSONObject ? (JSONObject) value : null;
+  }
+
+}
@@ -0,0 +1,266 @@
+package com.factual.driver;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Generates a {@link RowCodec} for every class annotated with
+ * {@link FactualRow}. The codec for <tt>com.example.Place</tt> is
+ * <tt>com.example.Place$$RowCodec</tt>; it decodes each column with a
+ * type-specific reader and assigns fields directly, so no reflection runs
+ * while rows are decoded.
+ * <p>
+ * The processor is registered as a service in the driver's jar, so javac
+ * runs it for any project compiling against the driver.
+ */
+@SupportedAnnotationTypes("com.factual.driver.FactualRow")
+public class RowCodecProcessor extends AbstractProcessor {
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(FactualRow.class)) {
+      if (element.getKind() != ElementKind.CLASS) {
+        error(element, "@FactualRow applies to classes only");
+        continue;
+      }
+      try {
+        generate((TypeElement) element);
+      } catch (IOException e) {
+        error(element, "Could not write RowCodec: " + e.getMessage());
+      }
+    }
+    return true;
+  }
+
+  private void generate(TypeElement type) throws IOException {
+    if (!check(type))
+      return;
+    List<String> columns = Lists.newArrayList();
+    List<String> javaTypes = Lists.newArrayList();
+    List<String> assignments = Lists.newArrayList();
+    for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+      Set<Modifier> modifiers = field.getModifiers();
+      if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT))
+        continue;
+      String read = reader(field.asType());
+      if (read == null) {
+        error(field, "Unsupported type for a @FactualRow field: " + field.asType());
+        continue;
+      }
+      String target = target(type, field);
+      if (target == null)
+        continue;
+      FactualField rename = field.getAnnotation(FactualField.class);
+      columns.add(rename != null ? rename.value() : snakeCase(field.getSimpleName().toString()));
+      javaTypes.add(erasure(field.asType()));
+      assignments.add(target.endsWith("(") ? target + read + ");" : target + read + ";");
+    }
+
+    String pkg = packageOf(type);
+    String simpleName = binaryName(type).substring(pkg.isEmpty() ? 0 : pkg.length() + 1)
+        + RowCodec.GENERATED_SUFFIX;
+    String rowType = type.getQualifiedName().toString();
+    PrintWriter out = new PrintWriter(processingEnv.getFiler()
+        .createSourceFile(pkg.isEmpty() ? simpleName : pkg + "." + simpleName, type).openWriter());
+    try {
+      if (!pkg.isEmpty())
+        out.println("package " + pkg + ";");
+      out.println();
+      out.println("/**");
+      out.println(" * RowCodec for {@link " + rowType + "}, generated by RowCodecProcessor.");
+      out.println(" */");
+      out.println("public final class " + simpleName + " extends com.factual.driver.RowCodec<"
+          + rowType + "> {");
+      out.println();
+      out.println("  public " + simpleName + "() {");
+      out.println("    super(new String[] {" + join(columns, true) + "},");
+      out.println("        new Class<?>[] {" + join(javaTypes, false) + "});");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  protected " + rowType + " newRow() {");
+      out.println("    return new " + rowType + "();");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  protected void decodeField(" + rowType
+          + " row, int field, org.codehaus.jackson.JsonParser jp) throws java.io.IOException {");
+      out.println("    switch (field) {");
+      for (int i = 0; i < assignments.size(); i++) {
+        out.println("    case " + i + ":");
+        out.println("      " + assignments.get(i));
+        out.println("      break;");
+      }
+      out.println("    default:");
+      out.println("      jp.skipChildren();");
+      out.println("    }");
+      out.println("  }");
+      out.println("}");
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Checks that generated code in the same package can instantiate
+   * <tt>type</tt>.
+   */
+  private boolean check(TypeElement type) {
+    Element enclosing = type.getEnclosingElement();
+    for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+      if (e.getModifiers().contains(Modifier.PRIVATE)) {
+        error(type, "A @FactualRow class must not be private");
+        return false;
+      }
+    }
+    if (enclosing.getKind() != ElementKind.PACKAGE && !type.getModifiers().contains(Modifier.STATIC)) {
+      error(type, "A nested @FactualRow class must be static");
+      return false;
+    }
+    if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+      error(type, "A @FactualRow class must be concrete and not generic");
+      return false;
+    }
+    for (ExecutableElement ctor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (ctor.getParameters().isEmpty() && !ctor.getModifiers().contains(Modifier.PRIVATE))
+        return true;
+    }
+    error(type, "A @FactualRow class needs a non-private no-argument constructor");
+    return false;
+  }
+
+  /**
+   * @return the start of the statement assigning <tt>field</tt>: either
+   *         <tt>row.field = </tt> or <tt>row.setField(</tt>.
+   */
+  private String target(TypeElement type, VariableElement field) {
+    String name = field.getSimpleName().toString();
+    if (!field.getModifiers().contains(Modifier.PRIVATE)
+        && !field.getModifiers().contains(Modifier.FINAL))
+      return "row." + name + " = ";
+    String setter = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+      if (method.getSimpleName().contentEquals(setter) && method.getParameters().size() == 1
+          && !method.getModifiers().contains(Modifier.PRIVATE)
+          && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), field.asType()))
+        return "row." + setter + "(";
+    }
+    error(field, "A @FactualRow field must be non-private and non-final, or have a setter");
+    return null;
+  }
+
+  /**
+   * @return the expression reading a value of <tt>type</tt>, or null if the
+   *         type is not supported.
+   */
+  private static String reader(TypeMirror type) {
+    String name = erasure(type);
+    if ("double".equals(name))
+      return "readDouble(jp)";
+    if ("float".equals(name))
+      return "(float) readDouble(jp)";
+    if ("long".equals(name))
+      return "readLong(jp)";
+    if ("int".equals(name))
+      return "(int) readLong(jp)";
+    if ("boolean".equals(name))
+      return "readBoolean(jp)";
+    if ("java.lang.Double".equals(name))
+      return "isNull(jp) ? null : Double.valueOf(readDouble(jp))";
+    if ("java.lang.Float".equals(name))
+      return "isNull(jp) ? null : Float.valueOf((float) readDouble(jp))";
+    if ("java.lang.Long".equals(name))
+      return "isNull(jp) ? null : Long.valueOf(readLong(jp))";
+    if ("java.lang.Integer".equals(name))
+      return "isNull(jp) ? null : Integer.valueOf((int) readLong(jp))";
+    if ("java.lang.Boolean".equals(name))
+      return "isNull(jp) ? null : Boolean.valueOf(readBoolean(jp))";
+    if ("java.lang.String".equals(name))
+      return "readString(jp)";
+    if ("java.lang.Object".equals(name))
+      return "readObject(jp)";
+    if ("org.json.JSONArray".equals(name))
+      return "readJSONArray(jp)";
+    if ("org.json.JSONObject".equals(name))
+      return "readJSONObject(jp)";
+    return null;
+  }
+
+  private static String erasure(TypeMirror type) {
+    String name = type.toString();
+    int generic = name.indexOf('<');
+    return generic < 0 ? name : name.substring(0, generic);
+  }
+
+  /**
+   * Turns a Java field name into Factual's column style, e.g.
+   * <tt>factualId</tt> into <tt>factual_id</tt>.
+   */
+  static String snakeCase(String name) {
+    StringBuilder sb = new StringBuilder(name.length() + 4);
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.isUpperCase(c)) {
+        if (i > 0)
+          sb.append('_');
+        sb.append(Character.toLowerCase(c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String packageOf(TypeElement type) {
+    Element e = type;
+    while (e.getKind() != ElementKind.PACKAGE)
+      e = e.getEnclosingElement();
+    return ((PackageElement) e).getQualifiedName().toString();
+  }
+
+  private String binaryName(TypeElement type) {
+    return processingEnv.getElementUtils().getBinaryName(type).toString();
+  }
+
+  private static String join(List<String> values, boolean quote) {
+    StringBuilder sb = new StringBuilder();
+    for (String value : values) {
+      if (sb.length() > 0)
+        sb.append(", ");
+      if (quote)
+        sb.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+      else
+        sb.append(value).append(".class");
+    }
+    return sb.toString();
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+
+}
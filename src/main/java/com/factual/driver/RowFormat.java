@@ -0,0 +1,29 @@
+package com.factual.driver;
+
+/**
+ * How read responses represent their rows. See
+ * {@link Factual#setRowFormat(RowFormat)}.
+ */
+public enum RowFormat {
+  /**
+   * Each row is a mutable HashMap, decoded as the response is parsed. The
+   * default.
+   */
+  MAP,
+
+  /**
+   * Rows are only indexed in the payload as the response is parsed; each row
+   * is built on first access and decodes a field the first time it is read.
+   * The row list is read-only.
+   */
+  LAZY,
+
+  /**
+   * Each row is an immutable map holding only an array of values; all rows of
+   * a response share a single index of their keys, built from the first row.
+   * The map structure of a row shrinks several times, from about 550 bytes
+   * to under 100; with its values, a row retains about 30% less than a
+   * HashMap row, which suits results that are cached or held for long.
+   */
+  COMPACT
+}
@@ -4,6 +4,8 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.Map;
 
+import com.google.common.hash.HashCode;
+
 /**
  * Represents a Factual row query. Knows how to represent the query as URL
  * encoded key value pairs, ready for the query string in a GET request. (See
@@ -11,7 +13,7 @@ import java.util.Map;
  * 
  * @author brandon
  */
-public class RowQuery {
+public class RowQuery implements Parameters.Canonical {
 
   protected final Parameters queryParams = new Parameters();
 
@@ -54,4 +56,29 @@ public class RowQuery {
     return UrlUtil.toUrlQuery(toUrlParams());
   }
 
-}
\ No newline at end of file
+  /**
+   * @return the canonical form of this RowQuery; see
+   *         {@link Query#toCanonicalString()}.
+   */
+  public String toCanonicalString() {
+    return toUrlQuery();
+  }
+
+  /**
+   * @return a stable 128-bit fingerprint of this RowQuery's canonical form.
+   */
+  public HashCode fingerprint() {
+    return Parameters.fingerprint(getClass(), toCanonicalString());
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return Parameters.canonicalEquals(this, obj);
+  }
+
+  @Override
+  public int hashCode() {
+    return Parameters.canonicalHashCode(this);
+  }
+
+}
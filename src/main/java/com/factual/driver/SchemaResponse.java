@@ -1,11 +1,13 @@
 package com.factual.driver;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 
@@ -17,32 +19,46 @@ import com.google.common.collect.Maps;
  */
 public class SchemaResponse extends Response implements Tabular {
   private final Map<String, ColumnSchema> columnSchemas;
-  private final String title;
-  private final boolean searchEnabled;
-  private final boolean geoEnabled;
-  private final String description;
-  private final List<Map<String, Object>> data;
+  private String title;
+  private boolean searchEnabled;
+  private boolean geoEnabled;
+  private String description;
+  private final List<Map<String, Object>> data = Lists.newArrayList();
   private InternalResponse resp = null;
 
   /**
-   * Constructor, parses from a JSON response String.
+   * Constructor, parses the JSON response in a single streaming pass.
    */
   public SchemaResponse(InternalResponse resp) {
     this.resp = resp;
-    try{
-      JSONObject rootJsonObj = new JSONObject(resp.getContent());
-      Response.withMeta(this, rootJsonObj);
-      JSONObject respObj = rootJsonObj.getJSONObject(Constants.RESPONSE);
-      JSONObject view = respObj.getJSONObject(Constants.SCHEMA_VIEW);
-      data = JsonUtil.data(view.getJSONArray(Constants.SCHEMA_FIELDS));
-      columnSchemas = makeColumnSchemas(data);
-      title = view.getString(Constants.SCHEMA_TITLE);
-      description = view.getString(Constants.SCHEMA_DESCRIPTION);
-      searchEnabled = view.getBoolean(Constants.SCHEMA_SEARCH_ENABLED);
-      geoEnabled = view.getBoolean(Constants.SCHEMA_GEO_ENABLED);
-    } catch (JSONException e) {
-      throw new RuntimeException(e);
-    }
+    ResponseParser.parse(this, resp, new ResponseParser.Handler() {
+      @Override
+      public boolean field(String name, JsonParser jp) throws IOException {
+        if (!Constants.SCHEMA_VIEW.equals(name) || jp.getCurrentToken() != JsonToken.START_OBJECT)
+          return false;
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+          String field = jp.getCurrentName();
+          JsonToken token = jp.nextToken();
+          if (Constants.SCHEMA_FIELDS.equals(field) && token == JsonToken.START_ARRAY) {
+            while (jp.nextToken() != JsonToken.END_ARRAY) {
+              data.add(ResponseParser.readRow(jp));
+            }
+          } else if (Constants.SCHEMA_TITLE.equals(field)) {
+            title = jp.getText();
+          } else if (Constants.SCHEMA_DESCRIPTION.equals(field)) {
+            description = jp.getText();
+          } else if (Constants.SCHEMA_SEARCH_ENABLED.equals(field)) {
+            searchEnabled = ResponseParser.readBoolean(jp);
+          } else if (Constants.SCHEMA_GEO_ENABLED.equals(field)) {
+            geoEnabled = ResponseParser.readBoolean(jp);
+          } else {
+            jp.skipChildren();
+          }
+        }
+        return true;
+      }
+    });
+    columnSchemas = makeColumnSchemas(data);
   }
 
   private Map<String, ColumnSchema> makeColumnSchemas(List<Map<String, Object>> data) {
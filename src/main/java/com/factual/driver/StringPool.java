@@ -0,0 +1,174 @@
+package com.factual.driver;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Interns the string values of chosen fields as responses are parsed, so rows
+ * held across many responses, e.g. in a cache, share one instance of each
+ * repeated value such as a country, region or category label instead of each
+ * holding its own copy.
+ * <p>
+ * Only fields registered with {@link #field(String, int)} are pooled; every
+ * string inside such a field is, including those nested in arrays such as
+ * <tt>category_labels</tt>. Each field keeps at most the given number of
+ * distinct values, evicting the least recently used. The pool is safe to
+ * share between threads and between Factual instances.
+ * <p>
+ * Example:
+ * <pre>
+ * factual.setStringPool(new StringPool()
+ *     .field("country", 300)
+ *     .field("region", 5000)
+ *     .field("category_labels", 2000));
+ * </pre>
+ */
+public class StringPool {
+  // String object plus char[] header, as a rough per-instance cost
+  private static final int STRING_OVERHEAD = 40;
+
+  private volatile ImmutableMap<String, FieldPool> fields = ImmutableMap.of();
+
+  /**
+   * Pools the string values of <tt>field</tt>.
+   *
+   * @param field
+   *          the name of the field, as it appears in rows.
+   * @param maxSize
+   *          the most distinct values kept for this field.
+   * @return this StringPool
+   */
+  public synchronized StringPool field(String field, int maxSize) {
+    if (maxSize <= 0)
+      throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+    Map<String, FieldPool> copy = Maps.newLinkedHashMap(fields);
+    copy.put(field, new FieldPool(maxSize));
+    fields = ImmutableMap.copyOf(copy);
+    return this;
+  }
+
+  /**
+   * @return the pooled fields.
+   */
+  public Set<String> getFields() {
+    return fields.keySet();
+  }
+
+  /**
+   * @return the values of <tt>field</tt> should be interned with, or null if
+   *         the field is not pooled.
+   */
+  FieldPool forField(String field) {
+    return fields.get(field);
+  }
+
+  /**
+   * @return the number of values replaced by an already pooled instance.
+   */
+  public long getHitCount() {
+    long hits = 0;
+    for (FieldPool pool : fields.values()) {
+      hits += pool.hits.get();
+    }
+    return hits;
+  }
+
+  /**
+   * @return the number of values that were new to the pool.
+   */
+  public long getMissCount() {
+    long misses = 0;
+    for (FieldPool pool : fields.values()) {
+      misses += pool.misses.get();
+    }
+    return misses;
+  }
+
+  /**
+   * @return the share of pooled values that were already in the pool, or 0
+   *         if none have been seen.
+   */
+  public double getHitRate() {
+    long hits = getHitCount();
+    long total = hits + getMissCount();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  /**
+   * @return the share of values of <tt>field</tt> that were already in the
+   *         pool, or 0 if the field is not pooled or none have been seen.
+   */
+  public double getHitRate(String field) {
+    FieldPool pool = fields.get(field);
+    if (pool == null)
+      return 0;
+    long hits = pool.hits.get();
+    long total = hits + pool.misses.get();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  /**
+   * @return an estimate of the bytes of heap not taken by duplicate strings,
+   *         for as long as the rows that got pooled values are held.
+   */
+  public long getBytesSaved() {
+    long saved = 0;
+    for (FieldPool pool : fields.values()) {
+      saved += pool.saved.get();
+    }
+    return saved;
+  }
+
+  /**
+   * @return the number of distinct values currently pooled.
+   */
+  public long size() {
+    long size = 0;
+    for (FieldPool pool : fields.values()) {
+      size += pool.values.size();
+    }
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("StringPool[fields=%s, size=%d, hitRate=%.3f, bytesSaved=%d]",
+        fields.keySet(), size(), getHitRate(), getBytesSaved());
+  }
+
+  /**
+   * The bounded pool of one field.
+   */
+  static final class FieldPool {
+    private final ConcurrentMap<String, String> values;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong saved = new AtomicLong();
+
+    private FieldPool(int maxSize) {
+      this.values = CacheBuilder.newBuilder().maximumSize(maxSize)
+          .<String, String>build().asMap();
+    }
+
+    /**
+     * @return the pooled instance equal to <tt>value</tt>.
+     */
+    String intern(String value) {
+      String pooled = values.putIfAbsent(value, value);
+      if (pooled == null) {
+        misses.incrementAndGet();
+        return value;
+      }
+      hits.incrementAndGet();
+      saved.addAndGet(STRING_OVERHEAD + ((2 * value.length() + 7) & ~7));
+      return pooled;
+    }
+  }
+
+}
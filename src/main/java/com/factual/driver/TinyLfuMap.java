@@ -0,0 +1,255 @@
+package com.factual.driver;
+
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded map evicting by W-TinyLFU, with each entry weighed, e.g. in
+ * bytes. New entries enter a small LRU window, 1% of the capacity; an entry
+ * leaving the window is admitted to the main space only if it has been asked
+ * for more often than the entry it would displace, as estimated by a
+ * count-min sketch of recent key frequencies. The main space is a segmented
+ * LRU: entries hit while on probation move to a protected segment of 80% of
+ * the main space.
+ * <p>
+ * Not thread safe; callers synchronize.
+ */
+final class TinyLfuMap<K, V> {
+
+  /**
+   * Told of entries evicted to make room.
+   */
+  interface EvictionListener<K, V> {
+    void onEviction(K key, V value);
+  }
+
+  private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+  private static final class Node<K, V> {
+    final K key;
+    V value;
+    long weight;
+    int segment;
+
+    Node(K key, V value, long weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  private final long maximumWeight;
+  private final long windowMaximum;
+  private final long protectedMaximum;
+  private final EvictionListener<K, V> listener;
+  private final FrequencySketch sketch;
+
+  // each segment is kept in LRU order: least recently used first
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private final LinkedHashMap<K, Node<K, V>>[] segments = new LinkedHashMap[] {
+      new LinkedHashMap<K, Node<K, V>>(), new LinkedHashMap<K, Node<K, V>>(),
+      new LinkedHashMap<K, Node<K, V>>() };
+  private final long[] weights = new long[3];
+  // the entry last moved from the window to probation, awaiting admission
+  private Node<K, V> candidate = null;
+
+  /**
+   * @param maximumWeight
+   *          the most total weight held.
+   * @param expectedEntries
+   *          about how many entries fit, to size the frequency sketch.
+   */
+  TinyLfuMap(long maximumWeight, int expectedEntries, EvictionListener<K, V> listener) {
+    this.maximumWeight = maximumWeight;
+    this.windowMaximum = Math.max(1, maximumWeight / 100);
+    this.protectedMaximum = (maximumWeight - windowMaximum) * 8 / 10;
+    this.listener = listener;
+    this.sketch = new FrequencySketch(expectedEntries);
+  }
+
+  /**
+   * @return the value for <tt>key</tt>, or null; counts as a use of the key.
+   */
+  V get(K key) {
+    sketch.increment(key.hashCode());
+    Node<K, V> node = node(key);
+    if (node == null)
+      return null;
+    touch(node);
+    return node.value;
+  }
+
+  /**
+   * Adds or replaces the value for <tt>key</tt>, evicting as needed. A value
+   * heavier than the whole map is not kept.
+   */
+  void put(K key, V value, long weight) {
+    Node<K, V> node = node(key);
+    if (node != null) {
+      weights[node.segment] += weight - node.weight;
+      node.value = value;
+      node.weight = weight;
+      touch(node);
+    } else if (weight <= maximumWeight) {
+      sketch.increment(key.hashCode());
+      node = new Node<K, V>(key, value, weight);
+      add(node, WINDOW);
+    }
+    evict();
+  }
+
+  V remove(K key) {
+    Node<K, V> node = node(key);
+    if (node == null)
+      return null;
+    unlink(node);
+    if (node == candidate)
+      candidate = null;
+    return node.value;
+  }
+
+  void clear() {
+    candidate = null;
+    for (int i = 0; i < segments.length; i++) {
+      segments[i].clear();
+      weights[i] = 0;
+    }
+  }
+
+  boolean containsKey(K key) {
+    return node(key) != null;
+  }
+
+  int size() {
+    return segments[WINDOW].size() + segments[PROBATION].size() + segments[PROTECTED].size();
+  }
+
+  long weight() {
+    return weights[WINDOW] + weights[PROBATION] + weights[PROTECTED];
+  }
+
+  private Node<K, V> node(K key) {
+    for (LinkedHashMap<K, Node<K, V>> segment : segments) {
+      Node<K, V> node = segment.get(key);
+      if (node != null)
+        return node;
+    }
+    return null;
+  }
+
+  /**
+   * Records a use of <tt>node</tt>: moves it to the most recently used end of
+   * its segment, promoting it from probation to protected.
+   */
+  private void touch(Node<K, V> node) {
+    unlink(node);
+    add(node, node.segment == WINDOW ? WINDOW : PROTECTED);
+    // demote the protected segment's least recent entries back to probation
+    while (weights[PROTECTED] > protectedMaximum && segments[PROTECTED].size() > 1) {
+      Node<K, V> demoted = first(PROTECTED);
+      unlink(demoted);
+      add(demoted, PROBATION);
+    }
+  }
+
+  private void evict() {
+    // entries leaving the window join probation as candidates for admission
+    while (weights[WINDOW] > windowMaximum && segments[WINDOW].size() > 1) {
+      candidate = first(WINDOW);
+      unlink(candidate);
+      add(candidate, PROBATION);
+    }
+    while (weight() > maximumWeight) {
+      Node<K, V> victim;
+      Node<K, V> lru = segments[PROBATION].isEmpty() ? null : first(PROBATION);
+      if (lru != null && candidate != null && candidate != lru && candidate.segment == PROBATION) {
+        // admit the candidate only if it is used more often than the victim
+        boolean admit = sketch.frequency(candidate.key.hashCode())
+            > sketch.frequency(lru.key.hashCode());
+        victim = admit ? lru : candidate;
+      } else if (!segments[PROBATION].isEmpty()) {
+        victim = first(PROBATION);
+      } else if (!segments[PROTECTED].isEmpty()) {
+        victim = first(PROTECTED);
+      } else {
+        victim = first(WINDOW);
+      }
+      unlink(victim);
+      if (victim == candidate)
+        candidate = null;
+      if (listener != null)
+        listener.onEviction(victim.key, victim.value);
+    }
+  }
+
+  private void add(Node<K, V> node, int segment) {
+    node.segment = segment;
+    segments[segment].put(node.key, node);
+    weights[segment] += node.weight;
+  }
+
+  private void unlink(Node<K, V> node) {
+    segments[node.segment].remove(node.key);
+    weights[node.segment] -= node.weight;
+  }
+
+  private Node<K, V> first(int segment) {
+    return segments[segment].values().iterator().next();
+  }
+
+  /**
+   * A count-min sketch of 4-bit counters estimating how often each key has
+   * been used lately. Every counter is halved once the number of uses
+   * recorded reaches ten times the width, so old popularity fades.
+   */
+  static final class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = { 0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F };
+
+    private final byte[] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    FrequencySketch(int expectedEntries) {
+      int width = Integer.highestOneBit(Math.max(64, Math.min(1 << 24, expectedEntries)) - 1) << 1;
+      this.counters = new byte[width * DEPTH];
+      this.mask = width - 1;
+      this.sampleSize = 10 * width;
+    }
+
+    void increment(int hash) {
+      boolean added = false;
+      for (int i = 0; i < DEPTH; i++) {
+        int index = index(hash, i);
+        if (counters[index] < 15) {
+          counters[index]++;
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize)
+        reset();
+    }
+
+    int frequency(int hash) {
+      int frequency = 15;
+      for (int i = 0; i < DEPTH; i++) {
+        frequency = Math.min(frequency, counters[index(hash, i)]);
+      }
+      return frequency;
+    }
+
+    private int index(int hash, int row) {
+      int h = (hash ^ (hash >>> 16)) * SEEDS[row];
+      h ^= h >>> 15;
+      return row * (mask + 1) + (h & mask);
+    }
+
+    private void reset() {
+      for (int i = 0; i < counters.length; i++) {
+        counters[i] >>= 1;
+      }
+      additions /= 2;
+    }
+  }
+
+}
@@ -0,0 +1,154 @@
+package com.factual.driver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that paces requests to a sustained rate while allowing short
+ * bursts. Tokens accrue at <tt>permitsPerSecond</tt> up to <tt>burst</tt>;
+ * each request takes one. When the bucket is empty callers are queued in
+ * arrival order, each waiting for the token reserved for it.
+ */
+public class TokenBucket {
+  private final double permitsPerNano;
+  private final int burst;
+  private double tokens;
+  private long lastRefill = System.nanoTime();
+
+  private final AtomicLong acquired = new AtomicLong();
+  private final AtomicLong delayed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong totalWaitNanos = new AtomicLong();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  /**
+   * Constructor. The bucket starts full.
+   *
+   * @param permitsPerSecond
+   *          the sustained rate at which permits are granted.
+   * @param burst
+   *          the number of permits that can be taken at once after a quiet
+   *          period.
+   */
+  public TokenBucket(double permitsPerSecond, int burst) {
+    if (permitsPerSecond <= 0)
+      throw new IllegalArgumentException("permitsPerSecond must be > 0");
+    if (burst < 1)
+      throw new IllegalArgumentException("burst must be >= 1");
+    this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.burst = burst;
+    this.tokens = burst;
+  }
+
+  /**
+   * Takes a permit, waiting as long as necessary.
+   *
+   * @throws InterruptedException
+   *           if interrupted while waiting.
+   */
+  public void acquire() throws InterruptedException {
+    tryAcquire(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Takes a permit if one is available right now, without waiting.
+   *
+   * @return true if a permit was taken.
+   */
+  public boolean tryAcquire() {
+    try {
+      return tryAcquire(0, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Takes a permit if one becomes available within <tt>timeout</tt>, waiting
+   * for it if necessary. Returns immediately if the wait would be longer.
+   *
+   * @return true if a permit was taken.
+   * @throws InterruptedException
+   *           if interrupted while waiting.
+   */
+  public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+    long wait = reserve(unit.toNanos(timeout));
+    if (wait < 0) {
+      rejected.incrementAndGet();
+      return false;
+    }
+    acquired.incrementAndGet();
+    if (wait > 0) {
+      delayed.incrementAndGet();
+      totalWaitNanos.addAndGet(wait);
+      long max;
+      while (wait > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, wait)) {
+        // retry until the maximum is recorded
+      }
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+    return true;
+  }
+
+  /**
+   * Reserves the next token.
+   *
+   * @return how long the caller must wait for its token, or -1 if that would
+   *         exceed <tt>maxWait</tt>, in which case nothing is reserved.
+   */
+  private synchronized long reserve(long maxWait) {
+    long now = System.nanoTime();
+    tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerNano);
+    lastRefill = now;
+    long wait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+    if (wait > maxWait)
+      return -1;
+    tokens -= 1;
+    return wait;
+  }
+
+  /**
+   * @return the number of permits granted.
+   */
+  public long getAcquiredCount() {
+    return acquired.get();
+  }
+
+  /**
+   * @return the number of permits that had to wait before being granted.
+   */
+  public long getDelayedCount() {
+    return delayed.get();
+  }
+
+  /**
+   * @return the number of requests refused because no permit was available
+   *         within the allowed wait.
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * @return the total time callers spent waiting for permits, in
+   *         milliseconds.
+   */
+  public long getTotalWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+  }
+
+  /**
+   * @return the longest single wait for a permit, in milliseconds.
+   */
+  public long getMaxWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+  }
+
+  @Override
+  public String toString() {
+    return "TokenBucket[acquired=" + acquired + ", delayed=" + delayed
+        + ", rejected=" + rejected + ", totalWaitMillis=" + getTotalWaitMillis()
+        + ", maxWaitMillis=" + getMaxWaitMillis() + "]";
+  }
+}
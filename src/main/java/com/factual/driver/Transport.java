@@ -0,0 +1,29 @@
+package com.factual.driver;
+
+import com.google.api.client.http.HttpTransport;
+
+/**
+ * The HTTP backend beneath {@link Factual}. Factual builds, signs and adds its
+ * driver headers to every request itself, then executes it on the
+ * google-http-client {@link HttpTransport} supplied here, so OAuth signing and
+ * the <tt>X-Factual-Lib</tt> and <tt>Host</tt> headers behave the same with
+ * every backend.
+ * <p>
+ * See {@link Transports} for the provided backends. Any other HTTP stack can be
+ * plugged in by implementing {@link HttpTransport} and wrapping it with
+ * {@link Transports#wrap(HttpTransport)}.
+ */
+public interface Transport {
+
+  /**
+   * @return the transport every request from a {@link Factual} instance is
+   *         executed on. Must be safe for concurrent use.
+   */
+  HttpTransport getHttpTransport();
+
+  /**
+   * Releases any connections or threads held by this transport.
+   */
+  void shutdown();
+
+}
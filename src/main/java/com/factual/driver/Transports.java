@@ -0,0 +1,63 @@
+package com.factual.driver;
+
+import java.io.IOException;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+
+/**
+ * Factory methods for the {@link Transport} backends supported by
+ * {@link Factual}.
+ */
+public class Transports {
+
+  private Transports() {
+  }
+
+  /**
+   * A pooled keep-alive backend with default limits. This is the backend used
+   * when none is given to {@link Factual}; create a {@link ConnectionPool}
+   * directly to configure it.
+   */
+  public static Transport pooled() {
+    return new ConnectionPool();
+  }
+
+  /**
+   * A backend built on <tt>java.net.HttpURLConnection</tt>. Connection reuse
+   * is left to the JVM's keep-alive cache (see the <tt>http.maxConnections</tt>
+   * system property). Note that <tt>HttpURLConnection</tt> does not allow the
+   * <tt>Host</tt> header to be overridden, so {@link Factual#setRequestHost}
+   * has no effect with this backend.
+   */
+  public static Transport netHttp() {
+    return wrap(new NetHttpTransport());
+  }
+
+  /**
+   * Adapts any google-http-client transport, such as one backed by a different
+   * HTTP client library, for use by {@link Factual}.
+   * 
+   * @param transport
+   *          the transport to execute requests on. Must be safe for
+   *          concurrent use.
+   */
+  public static Transport wrap(final HttpTransport transport) {
+    return new Transport() {
+      @Override
+      public HttpTransport getHttpTransport() {
+        return transport;
+      }
+
+      @Override
+      public void shutdown() {
+        try {
+          transport.shutdown();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.factual.driver;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Represents the response from running a fetch request against Factual, with
+ * each row decoded into an instance of <tt>T</tt> by a {@link RowCodec}.
+ *
+ * @param <T>
+ *          the row type.
+ */
+public class TypedReadResponse<T> extends Response {
+  protected InternalResponse resp = null;
+  private final List<T> rows = Lists.newArrayList();
+
+
+  /**
+   * Constructor, parses the JSON response in a single streaming pass.
+   */
+  public TypedReadResponse(InternalResponse resp, final RowCodec<T> codec) {
+    this.resp = resp;
+    ResponseParser.parse(this, resp, new ResponseParser.Handler() {
+      @Override
+      public boolean field(String name, JsonParser jp) throws IOException {
+        if (!Constants.QUERY_DATA.equals(name))
+          return false;
+        if (jp.getCurrentToken() == JsonToken.START_ARRAY) {
+          while (jp.nextToken() != JsonToken.END_ARRAY) {
+            rows.add(codec.decode(jp));
+          }
+          return true;
+        } else if (jp.getCurrentToken() == JsonToken.START_OBJECT) {
+          rows.add(codec.decode(jp));
+          return true;
+        }
+        return false;
+      }
+    });
+  }
+
+  /**
+   * @return The full JSON response from Factual, or null if raw JSON is not
+   *         kept (see {@link Factual#setKeepRawJson(boolean)}).
+   */
+  @Override
+  public String getJson() {
+    return resp.getContent();
+  }
+
+  /**
+   * @return the first row or null if no data was returned.
+   */
+  public T first() {
+    return rows.isEmpty() ? null : rows.get(0);
+  }
+
+  /**
+   * @return the rows returned by Factual, in order.
+   */
+  public List<T> getRows() {
+    return rows;
+  }
+
+  /**
+   * @return the size of the result set
+   */
+  public int size() {
+    return rows.size();
+  }
+
+}
@@ -0,0 +1,70 @@
+package com.factual.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.factual.driver.ConnectionPool;
+import com.factual.driver.ExecutionMode;
+import com.factual.driver.Factual;
+import com.factual.driver.FactualAsync;
+import com.factual.driver.Query;
+import com.factual.driver.ReadResponse;
+import com.factual.driver.StubServer;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares fan-out throughput of a fixed platform thread pool with
+ * {@link ExecutionMode#VIRTUAL_THREAD_PER_TASK}, against a local stub server
+ * that adds a fixed latency to every response.
+ * <p>
+ * Usage: <tt>ExecutionModeBenchmark [requests] [latencyMillis] [fixedPoolSize]</tt>
+ */
+public class ExecutionModeBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    long latency = args.length > 1 ? Long.parseLong(args[1]) : 20;
+    int poolSize = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+    StubServer server = new StubServer().delay(latency);
+    Factual factual = server.factual(new ConnectionPool()
+        .maxConnections(1000).maxConnectionsPerHost(1000));
+    System.out.println("Virtual threads supported: " + ExecutionMode.isVirtualThreadSupported());
+
+    ExecutorService fixed = Executors.newFixedThreadPool(poolSize);
+    ExecutorService virtual = ExecutionMode.VIRTUAL_THREAD_PER_TASK.newExecutor();
+    // warm up connections and JIT
+    run(factual, fixed, requests / 4);
+    run(factual, virtual, requests / 4);
+
+    report("fixed pool (" + poolSize + " threads)", requests, run(factual, fixed, requests));
+    report("virtual thread per task", requests, run(factual, virtual, requests));
+    System.out.println(factual.getConnectionPoolStats());
+
+    fixed.shutdown();
+    virtual.shutdown();
+    factual.shutdown();
+    server.stop();
+  }
+
+  private static long run(Factual factual, ExecutorService executor, int requests) throws Exception {
+    FactualAsync async = new FactualAsync(factual, executor);
+    List<Query> queries = Lists.newArrayList();
+    for (int i = 0; i < requests; i++) {
+      queries.add(new Query().offset(i));
+    }
+    long start = System.nanoTime();
+    List<ReadResponse> responses = async.fetchAll("places", queries).get();
+    long elapsed = System.nanoTime() - start;
+    if (responses.size() != requests)
+      throw new IllegalStateException("Missing responses");
+    return elapsed;
+  }
+
+  private static void report(String name, int requests, long elapsedNanos) {
+    double seconds = elapsedNanos / 1e9;
+    System.out.println(String.format("%-32s %6d requests in %7.3fs = %9.1f req/s",
+        name, requests, seconds, requests / seconds));
+  }
+}
@@ -0,0 +1,214 @@
+package com.factual.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import com.factual.driver.FactualField;
+import com.factual.driver.FactualRow;
+import com.factual.driver.InternalResponse;
+import com.factual.driver.JsonUtil;
+import com.factual.driver.ReadResponse;
+import com.factual.driver.RowCodec;
+import com.factual.driver.RowFormat;
+import com.factual.driver.StringPool;
+import com.factual.driver.TypedReadResponse;
+import com.google.common.base.Charsets;
+
+/**
+ * Compares parsing a read response the way the driver used to, reading the
+ * body line by line into a String and parsing it with org.json, with the
+ * streaming parser reading straight from the body's bytes, lazily and into
+ * typed rows. Reports rows per second and, where the JVM can measure it,
+ * bytes allocated per row.
+ * <p>
+ * Usage: <tt>ParsingBenchmark [rowsPerResponse] [responses]</tt>
+ */
+public class ParsingBenchmark {
+
+  @FactualRow
+  static class Place {
+    String factualId;
+    String name;
+    String address;
+    String locality;
+    String tel;
+    double latitude;
+    double longitude;
+    @FactualField("$distance")
+    double distance;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+    int responses = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+    byte[] body = payload(rows);
+    System.out.println("Payload: " + rows + " rows, " + body.length + " bytes");
+
+    for (int round = 0; round < 3; round++) {
+      orgJson(body, responses / 4);
+      streaming(body, responses / 4, true);
+      lazy(body, responses / 4);
+      typed(body, responses / 4);
+      compact(body, responses / 4);
+    }
+    measure("String + org.json", rows, responses, body, 0);
+    measure("streaming, raw JSON kept", rows, responses, body, 1);
+    measure("streaming, raw JSON dropped", rows, responses, body, 2);
+    measure("lazy rows, 2 fields of 2 rows", rows, responses, body, 3);
+    measure("typed rows, 8 fields", rows, responses, body, 4);
+    measure("compact rows", rows, responses, body, 5);
+    retained(body);
+  }
+
+  /**
+   * @param mode
+   *          0 for org.json, 1 for streaming keeping raw JSON, 2 for streaming
+   *          dropping it, 3 for lazy rows reading a few fields, 4 for typed
+   *          rows, 5 for compact rows.
+   */
+  private static void measure(String name, int rows, int responses, byte[] body, int mode)
+      throws Exception {
+    long allocBefore = allocatedBytes();
+    long start = System.nanoTime();
+    long sink = mode == 0 ? orgJson(body, responses)
+        : mode == 3 ? lazy(body, responses) : mode == 4 ? typed(body, responses)
+        : mode == 5 ? compact(body, responses) : streaming(body, responses, mode == 1);
+    long elapsed = System.nanoTime() - start;
+    long allocated = allocatedBytes() - allocBefore;
+    if (sink != (long) rows * responses)
+      throw new IllegalStateException("Missing rows");
+    double seconds = elapsed / 1e9;
+    System.out.println(String.format("%-30s %10.0f rows/s  %s", name, sink / seconds,
+        allocBefore < 0 ? "" : String.format("%8.0f bytes/row", (double) allocated / sink)));
+  }
+
+  private static long orgJson(byte[] body, int responses) throws Exception {
+    long rows = 0;
+    for (int i = 0; i < responses; i++) {
+      BufferedReader br = new BufferedReader(new InputStreamReader(
+          new ByteArrayInputStream(body), Charsets.UTF_8));
+      StringBuilder sb = new StringBuilder();
+      String line;
+      while ((line = br.readLine()) != null) {
+        sb.append(line);
+      }
+      JSONObject root = new JSONObject(sb.toString());
+      List<Map<String, Object>> data = JsonUtil.data(root.getJSONObject("response").getJSONArray("data"));
+      rows += data.size();
+    }
+    return rows;
+  }
+
+  private static long streaming(byte[] body, int responses, boolean keepRawJson) {
+    long rows = 0;
+    for (int i = 0; i < responses; i++) {
+      // copy as reading the body from the connection would
+      byte[] read = body.clone();
+      rows += new ReadResponse(new InternalResponse(read, keepRawJson)).size();
+    }
+    return rows;
+  }
+
+  private static long lazy(byte[] body, int responses) {
+    long rows = 0;
+    for (int i = 0; i < responses; i++) {
+      ReadResponse resp = new ReadResponse(new InternalResponse(body.clone(), true, true));
+      for (Map<String, Object> row : resp.getData().subList(0, Math.min(2, resp.size()))) {
+        if (row.get("name") == null || row.get("latitude") == null)
+          throw new IllegalStateException();
+      }
+      rows += resp.size();
+    }
+    return rows;
+  }
+
+  private static long typed(byte[] body, int responses) {
+    RowCodec<Place> codec = RowCodec.forClass(Place.class);
+    long rows = 0;
+    for (int i = 0; i < responses; i++) {
+      rows += new TypedReadResponse<Place>(new InternalResponse(body.clone(), false), codec).size();
+    }
+    return rows;
+  }
+
+  private static long compact(byte[] body, int responses) {
+    long rows = 0;
+    for (int i = 0; i < responses; i++) {
+      rows += new ReadResponse(new InternalResponse(body.clone(), false, RowFormat.COMPACT)).size();
+    }
+    return rows;
+  }
+
+  /**
+   * Reports the heap held per row by responses kept alive, as when results
+   * are cached, for HashMap and compact rows, and for compact rows with
+   * repeated fields interned.
+   */
+  private static void retained(byte[] body) {
+    StringPool pool = new StringPool().field("locality", 1000).field("region", 100)
+        .field("country", 100).field("postcode", 1000).field("category_labels", 1000);
+    retained("MAP", body, RowFormat.MAP, null);
+    retained("COMPACT", body, RowFormat.COMPACT, null);
+    retained("COMPACT + StringPool", body, RowFormat.COMPACT, pool);
+    System.out.println(pool);
+  }
+
+  private static void retained(String name, byte[] body, RowFormat format, StringPool pool) {
+    ReadResponse[] held = new ReadResponse[2000];
+    long before = usedHeap();
+    for (int i = 0; i < held.length; i++) {
+      InternalResponse resp = new InternalResponse(body.clone(), false, format);
+      resp.setStringPool(pool);
+      held[i] = new ReadResponse(resp);
+    }
+    long used = usedHeap() - before;
+    System.out.println(String.format("%-30s %10.0f bytes/row retained", name,
+        (double) used / (held.length * held[0].size())));
+  }
+
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    Runtime rt = Runtime.getRuntime();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  private static byte[] payload(int rows) {
+    StringBuilder sb = new StringBuilder("{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":[");
+    for (int i = 0; i < rows; i++) {
+      if (i > 0)
+        sb.append(',');
+      sb.append("{\"factual_id\":\"03c26917-5d66-4de9-96bc-b13066173c").append(String.format("%02d", i % 100))
+      .append("\",\"name\":\"Coffee Shop ").append(i)
+      .append("\",\"address\":\"").append(100 + i).append(" Main St\",\"locality\":\"Los Angeles\"")
+      .append(",\"region\":\"CA\",\"postcode\":\"90067\",\"country\":\"us\",\"tel\":\"(310) 555-0").append(100 + i)
+      .append("\",\"latitude\":34.0").append(i).append(",\"longitude\":-118.4").append(i)
+      .append(",\"category_ids\":[342],\"category_labels\":[[\"Social\",\"Food and Dining\",\"Cafes\"]]")
+      .append(",\"$distance\":").append(i * 10.5).append('}');
+    }
+    sb.append("],\"included_rows\":").append(rows).append("}}");
+    return sb.toString().getBytes(Charsets.UTF_8);
+  }
+
+  /**
+   * @return bytes allocated so far by this thread, or -1 if the JVM cannot
+   *         tell.
+   */
+  private static long allocatedBytes() {
+    Object bean = ManagementFactory.getThreadMXBean();
+    try {
+      return (Long) Class.forName("com.sun.management.ThreadMXBean")
+          .getMethod("getThreadAllocatedBytes", long.class)
+          .invoke(bean, Thread.currentThread().getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.factual.benchmark;
+
+import com.factual.driver.Query;
+import com.factual.driver.RequestSigner;
+import com.google.api.client.auth.oauth.OAuthHmacSigner;
+import com.google.api.client.auth.oauth.OAuthParameters;
+import com.google.api.client.http.GenericUrl;
+
+/**
+ * Compares the cost of signing one request the way the driver used to, by
+ * parsing a <tt>GenericUrl</tt> and signing through {@link OAuthParameters}
+ * twice (once explicitly, once in its execute interceptor), with a single pass
+ * through {@link RequestSigner}.
+ * <p>
+ * Usage: <tt>SigningBenchmark [iterations]</tt>
+ */
+public class SigningBenchmark {
+  private static final String KEY = "benchmark-key";
+  private static final String SECRET = "benchmark-secret";
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    String url = "http://api.v3.factual.com/t/places?"
+        + new Query().search("coffee").field("region").isEqual("CA").limit(20).toUrlQuery();
+
+    OAuthHmacSigner hmac = new OAuthHmacSigner();
+    hmac.clientSharedSecret = SECRET;
+    RequestSigner signer = new RequestSigner(KEY, SECRET);
+
+    // warm up the JIT for both paths
+    for (int round = 0; round < 3; round++) {
+      oauthParameters(hmac, url, iterations / 4);
+      requestSigner(signer, url, iterations / 4);
+    }
+    report("OAuthParameters (signed twice)", iterations, oauthParameters(hmac, url, iterations));
+    report("RequestSigner (single pass)", iterations, requestSigner(signer, url, iterations));
+  }
+
+  private static long oauthParameters(OAuthHmacSigner hmac, String url, int iterations)
+      throws Exception {
+    long sink = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      GenericUrl parsed = new GenericUrl(url);
+      OAuthParameters params = new OAuthParameters();
+      params.consumerKey = KEY;
+      params.computeNonce();
+      params.computeTimestamp();
+      params.signer = hmac;
+      params.computeSignature("GET", parsed);
+      params.computeSignature("GET", parsed);
+      sink += params.getAuthorizationHeader().length();
+    }
+    long elapsed = System.nanoTime() - start;
+    if (sink == 0)
+      throw new IllegalStateException();
+    return elapsed;
+  }
+
+  private static long requestSigner(RequestSigner signer, String url, int iterations) {
+    long sink = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      sink += signer.authorizationHeader("GET", url).length();
+    }
+    long elapsed = System.nanoTime() - start;
+    if (sink == 0)
+      throw new IllegalStateException();
+    return elapsed;
+  }
+
+  private static void report(String name, int iterations, long elapsedNanos) {
+    System.out.println(String.format("%-32s %8d signatures, %8.2f us/request",
+        name, iterations, elapsedNanos / 1e3 / iterations));
+  }
+}
@@ -0,0 +1,127 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests batching concurrent reads into multi calls, against a local stub
+ * server.
+ */
+public class BatchingTest {
+  private static final String ERROR_RESPONSE =
+      "{\"version\":3,\"status\":\"error\",\"error_type\":\"InvalidArgument\",\"message\":\"bad\"}";
+
+  private StubServer server;
+  private Factual factual;
+  private ExecutorService callers;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+    callers = Executors.newFixedThreadPool(3);
+  }
+
+  @After
+  public void tearDown() {
+    callers.shutdown();
+    factual.shutdown();
+    server.stop();
+  }
+
+  private List<Future<ReadResponse>> fetchConcurrently(int n) {
+    List<Future<ReadResponse>> results = Lists.newArrayList();
+    for (int i = 0; i < n; i++) {
+      final Query query = new Query().search("cafe " + i);
+      results.add(callers.submit(new Callable<ReadResponse>() {
+        @Override
+        public ReadResponse call() {
+          return factual.fetch("places", query);
+        }
+      }));
+    }
+    return results;
+  }
+
+  @Test
+  public void testConcurrentReadsShareOneCall() throws Exception {
+    server.respondWith(200, "{\"q0\":" + StubServer.READ_RESPONSE + ",\"q1\":"
+        + StubServer.READ_RESPONSE + ",\"q2\":" + StubServer.READ_RESPONSE + "}");
+    BatchPolicy policy = new BatchPolicy().window(5, TimeUnit.SECONDS).maxBatchSize(3);
+    factual.setBatchPolicy(policy);
+    for (Future<ReadResponse> result : fetchConcurrently(3)) {
+      assertEquals(2, result.get().getData().size());
+    }
+    assertEquals(1, server.getRequestCount());
+    assertEquals(3, policy.getRequestCount());
+    assertEquals(1, policy.getBatchCount());
+    assertEquals(3.0, policy.getMeanBatchSize(), 0);
+    // the batch was sent when full, long before the window ended
+    assertTrue(policy.getMaxAddedLatencyMillis() < 5000);
+  }
+
+  @Test
+  public void testLoneReadWaitsOutWindow() {
+    BatchPolicy policy = new BatchPolicy().window(50, TimeUnit.MILLISECONDS);
+    factual.setBatchPolicy(policy);
+    ReadResponse resp = factual.fetch("places", new Query().search("cafe"));
+    assertEquals(2, resp.getData().size());
+    assertEquals(1, server.getRequestCount());
+    assertEquals(1, policy.getBatchCount());
+    assertTrue(policy.getMaxAddedLatencyMillis() >= 40);
+    assertTrue(policy.getMeanAddedLatencyMillis() >= 40);
+
+    factual.setBatchPolicy(null);
+    factual.fetch("places", new Query().search("cafe"));
+    assertEquals(1, policy.getRequestCount());
+  }
+
+  @Test
+  public void testEachCallerGetsItsOwnError() throws Exception {
+    server.respondWith(200, "{\"q0\":" + StubServer.READ_RESPONSE + ",\"q1\":"
+        + ERROR_RESPONSE + ",\"q2\":" + StubServer.READ_RESPONSE + "}");
+    factual.setBatchPolicy(new BatchPolicy().window(5, TimeUnit.SECONDS).maxBatchSize(3));
+    int failed = 0;
+    for (Future<ReadResponse> result : fetchConcurrently(3)) {
+      try {
+        assertEquals(2, result.get().getData().size());
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof FactualApiException);
+        failed++;
+      }
+    }
+    assertEquals(1, failed);
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void testFailedCallFailsEveryCaller() throws Exception {
+    server.failNext(1, 500);
+    factual.setBatchPolicy(new BatchPolicy().window(5, TimeUnit.SECONDS).maxBatchSize(3));
+    for (Future<ReadResponse> result : fetchConcurrently(3)) {
+      try {
+        result.get();
+        fail("expected the call's error");
+      } catch (ExecutionException e) {
+        assertEquals(500, ((FactualApiException) e.getCause()).getStatusCode());
+      }
+    }
+    assertEquals(1, server.getRequestCount());
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for reading response bodies with {@link BodyReader}.
+ */
+public class BodyReaderTest {
+
+  /**
+   * Returns at most a few bytes per read, so lines and multi-byte characters
+   * are split across reads.
+   */
+  private static InputStream trickle(byte[] bytes) {
+    return new ByteArrayInputStream(bytes) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 3));
+      }
+    };
+  }
+
+  private static class Lines implements LineCallback {
+    final List<String> lines = Lists.newArrayList();
+
+    @Override
+    public void onLine(String line) {
+      lines.add(line);
+    }
+  }
+
+  @Test
+  public void testReadKeepsBodyAndSplitsLines() throws IOException {
+    String text = "{\"a\":\"Café\"}\r\n{\"b\":\"日本\"}\n\nlast";
+    byte[] bytes = text.getBytes(Charsets.UTF_8);
+    Lines cb = new Lines();
+    byte[] body = BodyReader.read(trickle(bytes), cb);
+    assertTrue(Arrays.equals(bytes, body));
+    assertEquals(Arrays.asList("{\"a\":\"Café\"}", "{\"b\":\"日本\"}", "", "last"), cb.lines);
+  }
+
+  @Test
+  public void testLargeBody() throws IOException {
+    byte[] bytes = new byte[3 * 1024 * 1024 + 17];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) ('a' + i % 26);
+    }
+    for (int round = 0; round < 2; round++) {
+      assertTrue(Arrays.equals(bytes, BodyReader.read(new ByteArrayInputStream(bytes), null)));
+    }
+    assertEquals(0, BodyReader.read(new ByteArrayInputStream(new byte[0]), null).length);
+  }
+
+  @Test
+  public void testForEachLine() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      sb.append("line ").append(i).append(" é\n");
+    }
+    Lines cb = new Lines();
+    BodyReader.forEachLine(trickle(sb.toString().getBytes(Charsets.UTF_8)), cb);
+    assertEquals(5000, cb.lines.size());
+    assertEquals("line 4999 é", cb.lines.get(4999));
+
+    // one line longer than the smallest buffer
+    char[] longLine = new char[40000];
+    Arrays.fill(longLine, 'x');
+    cb = new Lines();
+    BodyReader.forEachLine(new ByteArrayInputStream((new String(longLine) + "\nend")
+        .getBytes(Charsets.UTF_8)), cb);
+    assertEquals(Arrays.asList(new String(longLine), "end"), cb.lines);
+  }
+
+  @Test
+  public void testStream() {
+    Lines cb = new Lines();
+    FactualStream stream = new FactualStream(
+        trickle("one\ntwo\n".getBytes(Charsets.UTF_8)), cb);
+    stream.start();
+    stream.end();
+    assertEquals(Arrays.asList("one", "two"), cb.lines);
+  }
+
+  @Test
+  public void testBodyAccessors() {
+    byte[] bytes = "{\"version\":3}\n".getBytes(Charsets.UTF_8);
+    InternalResponse resp = new InternalResponse(bytes, true);
+    assertEquals("{\"version\":3}\n", resp.getContent());
+    assertTrue(Arrays.equals(bytes, resp.getBody()));
+    ByteBuffer buf = resp.getBodyBuffer();
+    assertTrue(buf.isReadOnly());
+    assertEquals(bytes.length, buf.remaining());
+    assertEquals('{', buf.get(0));
+  }
+
+}
@@ -0,0 +1,83 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the canonical forms and fingerprints of queries.
+ */
+public class CanonicalQueryTest {
+
+  private static Query query() {
+    return new Query().search("coffee").limit(20).includeRowCount()
+        .within(new Circle(34.06, -118.41, 500)).only("name", "tel");
+  }
+
+  @Test
+  public void testBuildOrderDoesNotMatter() {
+    Query a = query().field("region").isEqual("CA");
+    Query b = new Query().only("name", "tel").field("region").isEqual("CA")
+        .includeRowCount().within(new Circle(34.06, -118.41, 500)).limit(20).search("coffee");
+    assertEquals(a.toCanonicalString(), b.toCanonicalString());
+    assertEquals(a.toUrlQuery(), b.toUrlQuery());
+    assertEquals(a.fingerprint(), b.fingerprint());
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertTrue(a.toCanonicalString().startsWith("filters="));
+  }
+
+  @Test
+  public void testDifferentQueriesDiffer() {
+    assertFalse(query().equals(query().limit(21)));
+    assertFalse(query().fingerprint().equals(query().offset(1).fingerprint()));
+    // the order of sorts matters
+    assertFalse(new Query().sortAsc("name").sortDesc("rating").equals(
+        new Query().sortDesc("rating").sortAsc("name")));
+    assertEquals("sort=name:asc,rating:desc",
+        new Query().sortAsc("name").sortDesc("rating").toString());
+  }
+
+  @Test
+  public void testJsonValuesAreSorted() {
+    ResolveQuery a = new ResolveQuery().add("name", "Cafe").add("postcode", "90067")
+        .add("latitude", 34.06);
+    ResolveQuery b = new ResolveQuery().add("latitude", 34.06).add("postcode", "90067")
+        .add("name", "Cafe");
+    assertEquals(a.toCanonicalString(), b.toCanonicalString());
+    assertEquals(a, b);
+    assertEquals(new MatchQuery().add("a", 1).add("b", 2), new MatchQuery().add("b", 2).add("a", 1));
+    assertFalse(a.equals(b.allCandidates()));
+  }
+
+  @Test
+  public void testOtherQueryTypes() {
+    assertEquals(new FacetQuery("locality", "region").minCountPerFacetValue(2),
+        new FacetQuery("locality", "region").minCountPerFacetValue(2));
+    assertEquals(new Geopulse(new Point(34.06, -118.41)).only("income"),
+        new Geopulse(new Point(34.06, -118.41)).only("income"));
+    assertEquals(new Geocode(new Point(34.06, -118.41)), new Geocode(new Point(34.06, -118.41)));
+    assertFalse(new Geocode(new Point(34.06, -118.41)).equals(new Geocode(new Point(34.06, -118.42))));
+    assertEquals(new DiffsQuery(1354916463822L).before(1354916463823L),
+        new DiffsQuery().before(1354916463823L).after(1354916463822L));
+  }
+
+  @Test
+  public void testFingerprintIncludesType() {
+    Query query = new Query().only("name");
+    RowQuery row = new RowQuery().only("name");
+    assertEquals(query.toCanonicalString(), row.toCanonicalString());
+    assertFalse(query.fingerprint().equals(row.fingerprint()));
+    assertFalse(query.equals(row));
+  }
+
+  @Test
+  public void testFingerprintIsStable() {
+    assertEquals(128, query().fingerprint().bits());
+    assertEquals("731945909c92ada258db8f50af376353",
+        new Query().search("coffee").fingerprint().toString());
+  }
+
+}
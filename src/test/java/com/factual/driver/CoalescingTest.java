@@ -0,0 +1,129 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Tests coalescing identical concurrent reads, against a local stub server.
+ */
+public class CoalescingTest {
+  private StubServer server;
+  private Factual factual;
+  private RequestCoalescer coalescer;
+  private ExecutorService callers;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+    coalescer = new RequestCoalescer();
+    factual.setRequestCoalescer(coalescer);
+    callers = Executors.newFixedThreadPool(5);
+  }
+
+  @After
+  public void tearDown() {
+    callers.shutdown();
+    factual.shutdown();
+    server.stop();
+  }
+
+  private List<Future<ReadResponse>> fetchConcurrently(int n) throws InterruptedException {
+    List<Future<ReadResponse>> results = Lists.newArrayList();
+    for (int i = 0; i < n; i++) {
+      // equal queries, built differently
+      final Query query = i % 2 == 0 ? new Query().search("cafe").limit(2)
+          : new Query().limit(2).search("cafe");
+      results.add(callers.submit(new Callable<ReadResponse>() {
+        @Override
+        public ReadResponse call() {
+          return factual.fetch("places", query);
+        }
+      }));
+      // let the first caller's read get under way
+      if (i == 0)
+        Thread.sleep(50);
+    }
+    return results;
+  }
+
+  @Test
+  public void testIdenticalReadsShareOneCall() throws Exception {
+    server.delay(300);
+    List<Future<ReadResponse>> results = fetchConcurrently(5);
+    ReadResponse first = results.get(0).get();
+    for (Future<ReadResponse> result : results) {
+      assertSame(first, result.get());
+    }
+    assertEquals(2, first.getData().size());
+    assertEquals(1, server.getRequestCount());
+    assertEquals(5, coalescer.getRequestCount());
+    assertEquals(4, coalescer.getSavedCount());
+    assertEquals(0, coalescer.getInFlightCount());
+  }
+
+  @Test
+  public void testFailureIsShared() throws Exception {
+    server.delay(300).failNext(1, 400);
+    for (Future<ReadResponse> result : fetchConcurrently(3)) {
+      try {
+        result.get();
+        fail("Expected the shared failure");
+      } catch (ExecutionException e) {
+        assertEquals(400, ((FactualApiException) e.getCause()).getStatusCode());
+      }
+    }
+    assertEquals(1, server.getRequestCount());
+    assertEquals(2, coalescer.getSavedCount());
+
+    // the failure is not remembered
+    factual.fetch("places", new Query().search("cafe").limit(2));
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void testDifferentReadsAreNotCoalesced() {
+    factual.fetch("places", new Query().search("cafe"));
+    factual.fetch("places", new Query().search("bar"));
+    factual.fetchRow("places", "1");
+    assertEquals(3, server.getRequestCount());
+    assertEquals(0, coalescer.getSavedCount());
+  }
+
+  @Test
+  public void testCancelledLeaderDoesNotFailOthers() throws Exception {
+    server.delay(300);
+    FactualAsync async = new FactualAsync(factual);
+    try {
+      ListenableFuture<ReadResponse> leader = async.fetch("places", new Query().search("cafe"));
+      Thread.sleep(50);
+      ListenableFuture<ReadResponse> follower = async.fetch("places", new Query().search("cafe"));
+      Thread.sleep(50);
+      leader.cancel(true);
+      assertEquals(2, follower.get().getData().size());
+      assertTrue(leader.isCancelled());
+      // the follower sent the read again
+      assertEquals(2, server.getRequestCount());
+      assertEquals(0, coalescer.getSavedCount());
+    } finally {
+      async.shutdown();
+    }
+  }
+
+}
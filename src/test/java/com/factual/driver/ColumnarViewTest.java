@@ -0,0 +1,75 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for {@link ColumnarView}.
+ */
+public class ColumnarViewTest {
+  private static final String READ =
+      "{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":["
+      + "{\"name\":\"A\",\"latitude\":34.5,\"rank\":7,\"region\":\"CA\",\"tel\":null},"
+      + "{\"name\":\"B\",\"latitude\":\"-1.25\",\"rank\":12345678901,\"region\":\"NY\"},"
+      + "{\"name\":\"C\",\"latitude\":2,\"rank\":3,\"region\":\"CA\",\"tel\":\"555\"}"
+      + "],\"included_rows\":3}}";
+
+  private static ReadResponse read(boolean lazy) {
+    return new ReadResponse(new InternalResponse(READ.getBytes(Charsets.UTF_8), true, lazy));
+  }
+
+  @Test
+  public void testPrimitiveColumns() {
+    for (boolean lazy : new boolean[] { false, true }) {
+      ColumnarView view = read(lazy).columns();
+      assertEquals(3, view.size());
+
+      ColumnarView.DoubleColumn lat = view.doubles("latitude");
+      assertTrue(Arrays.equals(new double[] { 34.5, -1.25, 2 }, lat.toArray()));
+      assertEquals(0, lat.nullCount());
+
+      ColumnarView.LongColumn rank = view.longs("rank");
+      assertEquals(12345678901L, rank.get(1));
+      assertTrue(view.column("rank") instanceof ColumnarView.LongColumn);
+
+      ColumnarView.DoubleColumn missing = view.doubles("tel");
+      assertTrue(missing.isNull(0));
+      assertTrue(missing.isNull(1));
+      assertFalse(missing.isNull(2));
+      assertEquals(555, missing.get(2), 0);
+    }
+  }
+
+  @Test
+  public void testStringColumn() {
+    ReadResponse resp = read(false);
+    ColumnarView.StringColumn region = resp.columns().strings("region");
+    assertEquals(Arrays.asList("CA", "NY"), Arrays.asList(region.getDictionary()));
+    assertEquals(region.code(0), region.code(2));
+    assertEquals("NY", region.get(1));
+    assertSame(region, resp.columns().strings("region"));
+    assertTrue(resp.columns().column("latitude") instanceof ColumnarView.StringColumn);
+
+    assertEquals(Arrays.asList("A", "B", "C"), Lists.newArrayList(resp.mapStrings("name")));
+    assertEquals(Arrays.asList(null, null, "555"), Lists.newArrayList(resp.mapStrings("tel")));
+    assertEquals(2, resp.columns().strings("tel").nullCount());
+  }
+
+  @Test
+  public void testMapDoubles() {
+    double[] tel = read(true).mapDoubles("tel");
+    assertTrue(Double.isNaN(tel[0]));
+    assertTrue(Double.isNaN(tel[1]));
+    assertEquals(555, tel[2], 0);
+  }
+
+}
@@ -0,0 +1,80 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for compact, shared-key read rows.
+ */
+public class CompactRowsTest {
+  private static final String READ =
+      "{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":["
+      + "{\"factual_id\":\"a\",\"name\":\"One\",\"latitude\":34.5,\"tel\":null},"
+      + "{\"factual_id\":\"b\",\"name\":\"Two\",\"latitude\":1,\"tel\":\"555\"},"
+      + "{\"name\":\"Three\",\"factual_id\":\"c\",\"website\":\"http://x\"}"
+      + "],\"included_rows\":3}}";
+
+  private static ReadResponse read(RowFormat format) {
+    return new ReadResponse(new InternalResponse(READ.getBytes(Charsets.UTF_8), true, format));
+  }
+
+  @Test
+  public void testCompactMatchesMap() {
+    ReadResponse map = read(RowFormat.MAP);
+    ReadResponse compact = read(RowFormat.COMPACT);
+    assertEquals(3, compact.size());
+    for (int i = 0; i < map.size(); i++) {
+      assertEquals(map.getData().get(i), compact.getData().get(i));
+      assertEquals(compact.getData().get(i), map.getData().get(i));
+      assertEquals(map.getData().get(i).hashCode(), compact.getData().get(i).hashCode());
+    }
+  }
+
+  @Test
+  public void testDifferingKeys() {
+    ReadResponse compact = read(RowFormat.COMPACT);
+    Map<String, Object> first = compact.first();
+    assertEquals(4, first.size());
+    assertEquals(JSONObject.NULL, first.get("tel"));
+    assertTrue(first.containsKey("tel"));
+    assertFalse(first.containsKey("website"));
+    assertNull(first.get("website"));
+
+    Map<String, Object> third = compact.getData().get(2);
+    assertEquals(3, third.size());
+    assertEquals("c", third.get("factual_id"));
+    assertEquals("http://x", third.get("website"));
+    assertFalse(third.containsKey("tel"));
+    assertEquals(Lists.newArrayList("factual_id", "name", "website"),
+        Lists.newArrayList(third.keySet()));
+  }
+
+  @Test
+  public void testImmutable() {
+    Map<String, Object> row = read(RowFormat.COMPACT).first();
+    try {
+      row.put("name", "x");
+      fail("Compact rows are immutable");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      row.entrySet().iterator().remove();
+      fail("Compact rows are immutable");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,127 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for ConcurrencyLimiter.
+ */
+public class ConcurrencyLimiterTest {
+  private StubServer server;
+  private Factual factual;
+
+  @Before
+  public void setup() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+  }
+
+  @After
+  public void teardown() {
+    factual.shutdown();
+    server.stop();
+  }
+
+  @Test
+  public void testShedBeyondLimit() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter().limits(1, 1, 1)
+        .overflow(ConcurrencyLimiter.Overflow.SHED);
+    factual.setConcurrencyLimiter(limiter);
+    server.delay(300);
+
+    ExecutorService exec = Executors.newSingleThreadExecutor();
+    try {
+      Future<ReadResponse> first = exec.submit(new Callable<ReadResponse>() {
+        @Override
+        public ReadResponse call() {
+          return factual.fetch("places", new Query());
+        }
+      });
+      while (limiter.getInFlight() == 0) {
+        Thread.sleep(5);
+      }
+      try {
+        factual.fetch("places", new Query());
+        fail("Expected the second read to be shed");
+      } catch (FactualApiException e) {
+        assertEquals(1, limiter.getShedCount());
+      }
+      assertEquals(2, first.get().getData().size());
+    } finally {
+      exec.shutdown();
+    }
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(1, limiter.getCompletedCount());
+  }
+
+  @Test
+  public void testQueueWaitsForSlot() throws Exception {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter().limits(1, 1, 1)
+        .maxQueue(10, 5, TimeUnit.SECONDS);
+    factual.setConcurrencyLimiter(limiter);
+    server.delay(50);
+
+    ExecutorService exec = Executors.newFixedThreadPool(3);
+    try {
+      Callable<ReadResponse> read = new Callable<ReadResponse>() {
+        @Override
+        public ReadResponse call() {
+          return factual.fetch("places", new Query());
+        }
+      };
+      Future<ReadResponse> a = exec.submit(read);
+      Future<ReadResponse> b = exec.submit(read);
+      Future<ReadResponse> c = exec.submit(read);
+      a.get();
+      b.get();
+      c.get();
+    } catch (ExecutionException e) {
+      fail("Queued reads should not be shed: " + e.getCause());
+    } finally {
+      exec.shutdown();
+    }
+    assertEquals(3, limiter.getCompletedCount());
+    assertEquals(0, limiter.getShedCount());
+  }
+
+  @Test
+  public void testThrottlingDecreasesLimit() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter().limits(10, 1, 10);
+    factual.setConcurrencyLimiter(limiter);
+    server.respondWith(429, "{\"status\":\"error\"}");
+    try {
+      factual.fetch("places", new Query());
+      fail("Expected a 429");
+    } catch (FactualApiException e) {
+      assertEquals(429, e.getStatusCode());
+    }
+    assertEquals(9, limiter.getLimit());
+    assertEquals(1, limiter.getDroppedCount());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  public void testSuccessGrowsLimit() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter().limits(1, 1, 3)
+        .latencyTolerance(1000);
+    factual.setConcurrencyLimiter(limiter);
+    for (int i = 0; i < 10; i++) {
+      factual.fetch("places", new Query());
+    }
+    assertTrue(limiter.getLimit() > 1);
+    assertTrue(limiter.getLimit() <= 3);
+    assertTrue(limiter.getMinRttMillis() >= 0);
+  }
+}
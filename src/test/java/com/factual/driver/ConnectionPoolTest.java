@@ -0,0 +1,76 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for ConnectionPool, run against a local stub server.
+ */
+public class ConnectionPoolTest {
+  private StubServer server;
+
+  @Before
+  public void setup() throws Exception {
+    server = new StubServer();
+  }
+
+  @After
+  public void teardown() {
+    server.stop();
+  }
+
+  @Test
+  public void testConnectionsAreReused() {
+    ConnectionPool pool = new ConnectionPool().maxConnectionsPerHost(4);
+    Factual factual = server.factual(pool);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(2, factual.fetch("places", new Query()).size());
+    }
+
+    ConnectionPoolStats stats = factual.getConnectionPoolStats();
+    assertEquals(10, server.getRequestCount());
+    assertEquals(1, stats.getConnectionsOpened());
+    assertEquals(9, stats.getConnectionsReused());
+    assertEquals(0, stats.getLeasedConnections());
+    assertEquals(1, stats.getIdleConnections());
+    factual.shutdown();
+  }
+
+  @Test
+  public void testCannotReconfigureAfterFirstRequest() {
+    ConnectionPool pool = new ConnectionPool();
+    Factual factual = server.factual(pool);
+    factual.fetch("places", new Query());
+    try {
+      pool.maxConnections(10);
+      fail("Expected the started pool to reject configuration");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    factual.shutdown();
+  }
+
+  @Test
+  public void testIdleConnectionsAreEvicted() throws Exception {
+    ConnectionPool pool = new ConnectionPool()
+        .idleTimeout(10, TimeUnit.MILLISECONDS)
+        .evictionInterval(20, TimeUnit.MILLISECONDS);
+    Factual factual = server.factual(pool);
+    factual.fetch("places", new Query());
+    assertEquals(1, pool.getStats().getOpenConnections());
+
+    long deadline = System.currentTimeMillis() + 2000;
+    while (pool.getStats().getOpenConnections() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(pool.getStats().getOpenConnections() == 0);
+    factual.shutdown();
+  }
+}
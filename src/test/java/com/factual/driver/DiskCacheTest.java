@@ -0,0 +1,198 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Tests the persistent tier of the response cache.
+ */
+public class DiskCacheTest {
+  private static final long HOUR = 60 * 60 * 1000;
+
+  private File dir;
+  private DiskCache disk;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = Files.createTempDir();
+    disk = new DiskCache(dir);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    disk.close();
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void testPutAndGet() {
+    long now = System.currentTimeMillis();
+    disk.put(key("a"), bytes("alpha"), now + HOUR, now + 2 * HOUR);
+    DiskCache.Record record = disk.get(key("a"));
+    assertArrayEquals(bytes("alpha"), record.body);
+    assertEquals(now + HOUR, record.expiresAt);
+    assertEquals(now + 2 * HOUR, record.staleUntil);
+    assertNull(disk.get(key("b")));
+
+    disk.put(key("a"), bytes("alpha, again"), now + HOUR, now + HOUR);
+    assertArrayEquals(bytes("alpha, again"), disk.get(key("a")).body);
+    assertEquals(1, disk.size());
+  }
+
+  @Test
+  public void testSurvivesReopen() throws Exception {
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 100; i++) {
+      disk.put(key("k" + i), bytes("value " + i), now + HOUR, now + HOUR);
+    }
+    disk.close();
+    disk = new DiskCache(dir);
+    assertEquals(100, disk.size());
+    for (int i = 0; i < 100; i++) {
+      assertArrayEquals(bytes("value " + i), disk.get(key("k" + i)).body);
+    }
+  }
+
+  @Test
+  public void testCorruptRecordIsDropped() throws Exception {
+    long now = System.currentTimeMillis();
+    disk.put(key("a"), bytes("alpha"), now + HOUR, now + HOUR);
+    disk.put(key("b"), bytes("bravo"), now + HOUR, now + HOUR);
+    disk.close();
+
+    // flip the first byte of the first body
+    RandomAccessFile segment = new RandomAccessFile(new File(dir, "segment-0-1"), "rw");
+    try {
+      segment.seek(8 + 24);
+      segment.write('A');
+    } finally {
+      segment.close();
+    }
+
+    disk = new DiskCache(dir);
+    assertNull(disk.get(key("a")));
+    assertEquals(1, disk.getChecksumFailureCount());
+    assertEquals(1, disk.size());
+    assertArrayEquals(bytes("bravo"), disk.get(key("b")).body);
+  }
+
+  @Test
+  public void testCompactionReclaimsSpace() throws Exception {
+    long now = System.currentTimeMillis();
+    disk.put(key("a"), bytes("alpha"), now + HOUR, now + HOUR);
+    disk.put(key("a"), bytes("alpha, again"), now + HOUR, now + HOUR);
+    disk.put(key("old"), bytes("expired"), now - 2 * HOUR, now - HOUR);
+    long before = disk.getBytesUsed();
+    disk.compact();
+    assertTrue(disk.getBytesUsed() < before);
+    assertEquals(1, disk.size());
+    assertArrayEquals(bytes("alpha, again"), disk.get(key("a")).body);
+    assertNull(disk.get(key("old")));
+    assertTrue(new File(dir, "index-1").exists());
+    assertTrue(!new File(dir, "index-0").exists());
+
+    disk.close();
+    disk = new DiskCache(dir);
+    assertArrayEquals(bytes("alpha, again"), disk.get(key("a")).body);
+  }
+
+  @Test
+  public void testSizeBound() throws Exception {
+    disk.close();
+    disk = new DiskCache(dir, 64 * 1024);
+    long now = System.currentTimeMillis();
+    byte[] body = new byte[1000];
+    for (int i = 0; i < 500; i++) {
+      disk.put(key("k" + i), body, now + HOUR, now + HOUR);
+      assertTrue(disk.getBytesUsed() <= 64 * 1024);
+    }
+    // the latest record is always kept
+    assertArrayEquals(body, disk.get(key("k499")).body);
+    assertTrue(disk.size() < 64);
+  }
+
+  @Test
+  public void testDirectoryIsLocked() {
+    try {
+      new DiskCache(dir);
+      fail("Expected the directory to be in use");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("in use"));
+    }
+  }
+
+  @Test
+  public void testClosedCacheRefusesChanges() throws Exception {
+    disk.close();
+    try {
+      disk.compact();
+      fail("Expected compaction of a closed cache to fail");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      disk.clear();
+      fail("Expected clearing a closed cache to fail");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertTrue(!new File(dir, "index-1").exists());
+    disk = new DiskCache(dir);
+  }
+
+  @Test
+  public void testWarmRestart() throws Exception {
+    StubServer server = new StubServer();
+    try {
+      Factual factual = server.factual();
+      factual.setResponseCache(new ResponseCache().diskTier(disk));
+      ReadResponse first = factual.fetch("places", new Query().search("cafe"));
+      factual.shutdown();
+      assertEquals(1, server.getRequestCount());
+
+      // a new process: an empty cache in memory, the same directory on disk
+      disk.close();
+      disk = new DiskCache(dir);
+      ResponseCache cache = new ResponseCache().diskTier(disk);
+      factual = server.factual();
+      factual.setResponseCache(cache);
+      ReadResponse second = factual.fetch("places", new Query().search("cafe"));
+      factual.fetch("places", new Query().search("cafe"));
+      factual.shutdown();
+      assertEquals(1, server.getRequestCount());
+      assertEquals(first.getData(), second.getData());
+      assertEquals(1, cache.getDiskHitCount());
+      assertEquals(2, cache.getHitCount());
+    } finally {
+      server.stop();
+    }
+  }
+
+  private static HashCode key(String name) {
+    return Hashing.murmur3_128().hashString(name, Charsets.UTF_8);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(Charsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,95 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Unit tests for FactualAsync, run against a local stub server.
+ */
+public class FactualAsyncTest {
+  private StubServer server;
+  private Factual factual;
+
+  @Before
+  public void setup() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+  }
+
+  @After
+  public void teardown() {
+    factual.shutdown();
+    server.stop();
+  }
+
+  @Test
+  public void testFanOut() throws Exception {
+    FactualAsync async = new FactualAsync(factual);
+    List<ListenableFuture<ReadResponse>> futures = Lists.newArrayList();
+    for (int i = 0; i < 8; i++) {
+      futures.add(async.fetch("places", new Query().offset(i)));
+    }
+    futures.add(async.reverseGeocode(new Point(34.06, -118.41)));
+
+    for (ReadResponse resp : Futures.allAsList(futures).get()) {
+      assertEquals(2, resp.size());
+    }
+    assertEquals(9, server.getRequestCount());
+    async.shutdown();
+  }
+
+  @Test
+  public void testVirtualThreadMode() throws Exception {
+    FactualAsync async = new FactualAsync(factual, ExecutionMode.VIRTUAL_THREAD_PER_TASK);
+    List<Query> queries = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      queries.add(new Query().offset(i));
+    }
+    List<ReadResponse> responses = async.fetchAll("places", queries).get();
+    assertEquals(20, responses.size());
+    assertEquals(20, server.getRequestCount());
+    async.shutdown();
+  }
+
+  @Test
+  public void testFailureIsDeliveredThroughFuture() throws Exception {
+    server.respondWith(500, "{\"status\":\"error\"}");
+    FactualAsync async = new FactualAsync(factual);
+    try {
+      async.fetchRow("places", "1").get();
+      fail("Expected the call to fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof FactualApiException);
+      assertEquals(500, ((FactualApiException) e.getCause()).getStatusCode());
+    }
+    async.shutdown();
+  }
+
+  @Test
+  public void testCancelledCallIsNeverSent() throws Exception {
+    server.delay(200);
+    ExecutorService single = Executors.newSingleThreadExecutor();
+    FactualAsync async = new FactualAsync(factual, single);
+    ListenableFuture<ReadResponse> first = async.fetch("places", new Query());
+    ListenableFuture<ReadResponse> second = async.fetch("places", new Query());
+    assertTrue(second.cancel(false));
+
+    assertEquals(2, first.get().size());
+    single.shutdown();
+    assertEquals(1, server.getRequestCount());
+  }
+}
@@ -0,0 +1,85 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for HedgePolicy.
+ */
+public class HedgePolicyTest {
+  private StubServer server;
+  private Factual factual;
+
+  @Before
+  public void setup() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+  }
+
+  @After
+  public void teardown() {
+    factual.shutdown();
+    server.stop();
+  }
+
+  @Test
+  public void testHedgeAnswersSlowRead() {
+    HedgePolicy hedge = new HedgePolicy().delayBounds(20, 50, TimeUnit.MILLISECONDS)
+        .maxHedgeRatio(1);
+    factual.setHedgePolicy(hedge);
+    server.delayNext(1, 2000);
+
+    long start = System.currentTimeMillis();
+    ReadResponse resp = factual.fetch("places", new Query());
+    long elapsed = System.currentTimeMillis() - start;
+
+    assertEquals(2, resp.getData().size());
+    assertTrue("took " + elapsed + "ms", elapsed < 1500);
+    assertEquals(1, hedge.getHedgedCount());
+    assertEquals(1, hedge.getHedgeWinCount());
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void testFastReadsAreNotHedged() {
+    HedgePolicy hedge = new HedgePolicy().delayBounds(200, 500, TimeUnit.MILLISECONDS);
+    factual.setHedgePolicy(hedge);
+    for (int i = 0; i < 5; i++) {
+      factual.fetch("places", new Query());
+    }
+    assertEquals(5, hedge.getRequestCount());
+    assertEquals(0, hedge.getHedgedCount());
+    assertEquals(5, server.getRequestCount());
+  }
+
+  @Test
+  public void testBudgetCapsHedges() {
+    HedgePolicy hedge = new HedgePolicy().delayBounds(1, 1, TimeUnit.MILLISECONDS)
+        .maxHedgeRatio(0);
+    factual.setHedgePolicy(hedge);
+    server.delay(30);
+    for (int i = 0; i < 3; i++) {
+      factual.fetch("places", new Query());
+    }
+    // the initial credit allows a single hedge, and a zero ratio never refills it
+    assertEquals(1, hedge.getHedgedCount());
+    assertEquals(2, hedge.getSkippedCount());
+  }
+
+  @Test
+  public void testDelayTracksPercentile() {
+    HedgePolicy hedge = new HedgePolicy().percentile(50).delayBounds(0, 10, TimeUnit.SECONDS);
+    factual.setHedgePolicy(hedge);
+    assertEquals(10000, hedge.getDelayMillis());
+    for (int i = 0; i < 32; i++) {
+      factual.fetch("places", new Query());
+    }
+    assertTrue(hedge.getDelayMillis() < 1000);
+  }
+}
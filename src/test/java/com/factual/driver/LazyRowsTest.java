@@ -0,0 +1,87 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Unit tests for lazily built read response rows.
+ */
+public class LazyRowsTest {
+  private static final String READ =
+      "{ \"version\" : 3, \"status\" : \"ok\",\n \"response\" : { \"data\" : [\n"
+      + " {\"factual_id\":\"a\",\"name\":\"Caf\\u00e9 \\\"One\\\"\",\"latitude\":34.06,\"rank\":7,"
+      + "\"big\":12345678901,\"open\":true,\"tel\":null,\"esc\\\"key\":\"x\","
+      + "\"category_labels\":[[\"Food\",\"Cafe]\"]],\"hours\":{\"monday\":[[\"8:00\",\"17:00\"]]}},\n"
+      + " {\"factual_id\":\"b\",\"name\":\"Café Two\",\"latitude\":-1e2}\n"
+      + "], \"included_rows\" : 2, \"total_row_count\" : 42 } }";
+
+  private static ReadResponse read(String json, boolean lazy) {
+    return new ReadResponse(new InternalResponse(json.getBytes(Charsets.UTF_8), true, lazy));
+  }
+
+  @Test
+  public void testLazyMatchesEager() {
+    ReadResponse eager = read(READ, false);
+    ReadResponse lazy = read(READ, true);
+    assertEquals(eager.getVersion(), lazy.getVersion());
+    assertEquals(eager.getStatus(), lazy.getStatus());
+    assertEquals(42, lazy.getTotalRowCount());
+    assertEquals(2, lazy.getIncludedRowCount());
+    assertEquals(2, lazy.size());
+    for (int i = 0; i < eager.size(); i++) {
+      Map<String, Object> want = eager.getData().get(i);
+      Map<String, Object> got = lazy.getData().get(i);
+      assertEquals(want.size(), got.size());
+      for (String key : want.keySet()) {
+        Object w = want.get(key);
+        Object g = got.get(key);
+        assertEquals(key, w.getClass(), g.getClass());
+        if (w instanceof JSONObject || w instanceof JSONArray)
+          assertEquals(key, w.toString(), g.toString());
+        else
+          assertEquals(key, w, g);
+      }
+    }
+    assertEquals("Café \"One\"", lazy.first().get("name"));
+    assertEquals(-100.0, lazy.getData().get(1).get("latitude"));
+    assertTrue(lazy.first().containsKey("esc\"key"));
+  }
+
+  @Test
+  public void testRowsAreMaps() {
+    ReadResponse lazy = read(READ, true);
+    Map<String, Object> row = lazy.first();
+    assertFalse(row.containsKey("missing"));
+    assertEquals(JSONObject.NULL, row.get("tel"));
+    row.put("extra", 1);
+    assertEquals(1, row.get("extra"));
+    assertEquals("a", row.get("factual_id"));
+    assertEquals(11, row.entrySet().size());
+    try {
+      lazy.getData().add(row);
+      fail("Lazy rows are read-only");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSingleObjectAndEmptyData() {
+    ReadResponse single = read("{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":{\"locality\":\"LA\"}}}", true);
+    assertEquals(1, single.size());
+    assertEquals("LA", single.first().get("locality"));
+    ReadResponse empty = read("{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":[],\"included_rows\":0}}", true);
+    assertEquals(0, empty.size());
+    assertTrue(empty.isEmpty());
+  }
+}
@@ -0,0 +1,126 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+/**
+ * Tests splitting large MultiRequests into several calls, against a local stub
+ * server.
+ */
+public class MultiChunkingTest {
+  private StubServer server;
+  private Factual factual;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+  }
+
+  @After
+  public void tearDown() {
+    factual.shutdown();
+    server.stop();
+  }
+
+  /**
+   * A multi response holding a read response for each of q0 to q<tt>n-1</tt>;
+   * the stub answers every call with it, and each call keeps only its own
+   * queries.
+   */
+  private void respondToQueries(int n) {
+    StringBuilder body = new StringBuilder("{");
+    for (int i = 0; i < n; i++) {
+      body.append(i > 0 ? "," : "").append("\"q").append(i).append("\":")
+      .append(StubServer.READ_RESPONSE);
+    }
+    server.respondWith(200, body.append("}").toString());
+  }
+
+  private static MultiRequest queries(int n, String search) {
+    MultiRequest multi = new MultiRequest();
+    for (int i = 0; i < n; i++) {
+      multi.addQuery("q" + i, "places", new Query().search(search));
+    }
+    return multi;
+  }
+
+  @Test
+  public void testSplitsByQueryCount() {
+    respondToQueries(7);
+    MultiResponse resp = factual.sendRequests(queries(7, "cafe"));
+    assertEquals(3, server.getRequestCount());
+    assertEquals(7, resp.getData().size());
+    assertTrue(resp.getErrors().isEmpty());
+    for (Response part : resp.getData().values()) {
+      assertEquals(2, ((ReadResponse) part).getData().size());
+    }
+    assertTrue(resp.getJson().contains("\"q6\""));
+  }
+
+  @Test
+  public void testSplitsByUrlLength() {
+    respondToQueries(3);
+    factual.setMultiPolicy(new MultiPolicy().maxQueries(10).maxUrlLength(1000));
+    MultiResponse resp = factual.sendRequests(queries(3, Strings.repeat("x", 600)));
+    assertEquals(3, server.getRequestCount());
+    assertEquals(3, resp.getData().size());
+  }
+
+  @Test
+  public void testSmallRequestIsOneCall() {
+    respondToQueries(3);
+    MultiResponse resp = factual.sendRequests(queries(3, "cafe"));
+    assertEquals(1, server.getRequestCount());
+    assertEquals(3, resp.getData().size());
+
+    factual.setMultiPolicy(MultiPolicy.singleCall());
+    respondToQueries(9);
+    resp = factual.sendRequests(queries(9, "cafe"));
+    assertEquals(2, server.getRequestCount());
+    assertEquals(9, resp.getData().size());
+  }
+
+  @Test
+  public void testFailedChunkIsIsolated() {
+    respondToQueries(4);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      factual.setMultiPolicy(new MultiPolicy().maxQueries(2).executor(executor));
+      server.failNext(1, 400);
+      MultiResponse resp = factual.sendRequests(queries(4, "cafe"));
+      assertEquals(2, server.getRequestCount());
+      assertEquals(2, resp.getData().size());
+      assertEquals(2, resp.getErrors().size());
+      for (String key : resp.getErrors().keySet()) {
+        assertTrue(!resp.getData().containsKey(key));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testAllChunksFailing() {
+    respondToQueries(4);
+    factual.setMultiPolicy(new MultiPolicy().maxQueries(2));
+    server.failNext(2, 400);
+    try {
+      factual.sendRequests(queries(4, "cafe"));
+      fail("expected the error to be thrown");
+    } catch (FactualApiException e) {
+      assertEquals(400, e.getStatusCode());
+    }
+  }
+
+}
@@ -0,0 +1,144 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests walking query results page by page, against a local stub server.
+ */
+public class QueryIteratorTest {
+  private StubServer server;
+  private Factual factual;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+  }
+
+  @After
+  public void tearDown() {
+    factual.shutdown();
+    server.stop();
+  }
+
+  private static List<String> ids(QueryIterator rows) {
+    List<String> ids = Lists.newArrayList();
+    while (rows.hasNext()) {
+      Map<String, Object> row = rows.next();
+      ids.add((String) row.get("factual_id"));
+    }
+    return ids;
+  }
+
+  @Test
+  public void testStopsAtTotalRowCount() {
+    server.serveTable(23);
+    QueryIterator rows = factual.iterate("places", new Query().search("cafe")).pageSize(10)
+        .prefetch(2);
+    List<String> ids = ids(rows);
+    assertEquals(23, ids.size());
+    for (int i = 0; i < ids.size(); i++) {
+      assertEquals(String.valueOf(i), ids.get(i));
+    }
+    assertEquals(23, rows.getTotalRowCount());
+    // the last page asks only for the rows left; prefetched pages may
+    // arrive in any order
+    assertEquals(3, server.getRequestCount());
+    assertTrue(server.getRequestQueries().get(0).contains("include_count=true"));
+    int lastPages = 0;
+    for (String query : server.getRequestQueries()) {
+      if (query.contains("offset=20") && query.contains("limit=3"))
+        lastPages++;
+    }
+    assertEquals(1, lastPages);
+    try {
+      rows.next();
+      fail("Expected the rows to be used up");
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testStopsAtMaxOffset() {
+    server.serveTable(10000);
+    List<String> ids = ids(factual.iterate("places", new Query()).maxOffset(120));
+    assertEquals(120, ids.size());
+    assertEquals(3, server.getRequestCount());
+  }
+
+  @Test
+  public void testStopsAtShortPageWithoutCount() {
+    // a table reporting no total ends at its first short page
+    server.respondWith(200, StubServer.READ_RESPONSE);
+    QueryIterator rows = factual.iterate("places", new Query()).pageSize(5).prefetch(0);
+    assertEquals(2, ids(rows).size());
+    assertEquals(Response.UNDEFINED, rows.getTotalRowCount());
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void testQueryOffsetAndLimitBoundRows() {
+    server.serveTable(100);
+    List<String> ids = ids(factual.iterate("places", new Query().offset(15).limit(12)).pageSize(5));
+    assertEquals(12, ids.size());
+    assertEquals("15", ids.get(0));
+    assertEquals("26", ids.get(11));
+  }
+
+  @Test
+  public void testPagesArePrefetched() throws Exception {
+    server.serveTable(30);
+    QueryIterator rows = factual.iterate("places", new Query()).pageSize(10).prefetch(2);
+    assertTrue(rows.hasNext());
+    // while the first page is read, the other two are fetched
+    for (int i = 0; i < 50 && server.getRequestCount() < 3; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(3, server.getRequestCount());
+    assertEquals(30, ids(rows).size());
+    assertEquals(3, server.getRequestCount());
+  }
+
+  @Test
+  public void testFailedPageIsThrown() {
+    server.serveTable(30).failNext(1, 400);
+    QueryIterator rows = factual.iterate("places", new Query()).pageSize(10);
+    try {
+      rows.hasNext();
+      fail("Expected the failed page");
+    } catch (FactualApiException e) {
+      assertEquals(400, e.getStatusCode());
+    }
+    assertFalse(rows.hasNext());
+  }
+
+  @Test
+  public void testConfigurationAfterStartFails() {
+    server.serveTable(5);
+    QueryIterator rows = factual.iterate("places", new Query());
+    rows.hasNext();
+    try {
+      rows.pageSize(10);
+      fail("Expected configuration to be refused");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    rows.close();
+    assertFalse(rows.hasNext());
+  }
+
+}
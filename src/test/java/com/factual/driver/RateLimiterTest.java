@@ -0,0 +1,78 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for RateLimiter and TokenBucket.
+ */
+public class RateLimiterTest {
+  private StubServer server;
+  private Factual factual;
+
+  @Before
+  public void setup() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+  }
+
+  @After
+  public void teardown() {
+    factual.shutdown();
+    server.stop();
+  }
+
+  @Test
+  public void testBurstThenPaced() throws Exception {
+    TokenBucket bucket = new TokenBucket(100, 5);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(bucket.tryAcquire());
+    }
+    assertFalse(bucket.tryAcquire());
+    assertEquals(1, bucket.getRejectedCount());
+
+    long start = System.nanoTime();
+    bucket.acquire();
+    bucket.acquire();
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(15));
+    assertEquals(7, bucket.getAcquiredCount());
+    assertTrue(bucket.getDelayedCount() >= 1);
+  }
+
+  @Test
+  public void testNonBlockingLimiterFailsFast() {
+    RateLimiter limiter = new RateLimiter().reads(1, 2).maxWait(0, TimeUnit.MILLISECONDS);
+    factual.setRateLimiter(limiter);
+    factual.fetch("places", new Query());
+    factual.fetch("places", new Query());
+    try {
+      factual.fetch("places", new Query());
+      fail("Expected the third read to be rate limited");
+    } catch (FactualApiException e) {
+      assertEquals(2, server.getRequestCount());
+    }
+    assertEquals(2, limiter.getReads().getAcquiredCount());
+    assertEquals(1, limiter.getReads().getRejectedCount());
+  }
+
+  @Test
+  public void testSeparateBudgets() {
+    RateLimiter limiter = new RateLimiter().reads(1, 1).multi(1, 1).maxWait(0, TimeUnit.MILLISECONDS);
+    factual.setRateLimiter(limiter);
+    factual.fetch("places", new Query());
+    server.respondWith(200, "{\"version\":3,\"status\":\"ok\"}");
+    factual.sendRequests(new MultiRequest());
+    assertEquals(1, limiter.getReads().getAcquiredCount());
+    assertEquals(1, limiter.getMulti().getAcquiredCount());
+    assertNull(limiter.getWrites());
+  }
+}
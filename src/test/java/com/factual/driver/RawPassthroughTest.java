@@ -0,0 +1,85 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests streaming raw responses to a caller's stream, against a local stub
+ * server.
+ */
+public class RawPassthroughTest {
+  private StubServer server;
+  private Factual factual;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+  }
+
+  @After
+  public void tearDown() {
+    factual.shutdown();
+    server.stop();
+  }
+
+  @Test
+  public void testFetchRawToStream() throws Exception {
+    server.responseHeader("X-Factual-Throttle-Allocation", "{\"daily\":\"12.5%\"}");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RawResponse raw = factual.fetchRaw("places", new Query().search("cafe"), out);
+    assertEquals(StubServer.READ_RESPONSE, out.toString("UTF-8"));
+    assertEquals(200, raw.getStatusCode());
+    assertEquals(out.size(), raw.getBytesWritten());
+    assertEquals("{\"daily\":\"12.5%\"}", raw.getThrottleAllocation());
+    assertEquals("application/json; charset=utf-8", raw.getContentType());
+    assertEquals(raw.getThrottleAllocation(), raw.getHeader("x-factual-throttle-allocation").get(0));
+  }
+
+  @Test
+  public void testGetRawToChannel() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    RawResponse raw = factual.getRaw("t/places", new Query().toUrlParams(), Channels.newChannel(out));
+    assertEquals(StubServer.READ_RESPONSE, out.toString("UTF-8"));
+    assertEquals(out.size(), raw.getBytesWritten());
+  }
+
+  @Test
+  public void testErrorsAreRetriedButWriteFailuresAreNot() {
+    server.respondWith(503, "{\"status\":\"error\"}");
+    factual.setRetryPolicy(new RetryPolicy().maxAttempts(3).backoff(1, 5, TimeUnit.MILLISECONDS));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      factual.fetchRaw("places", new Query(), out);
+      fail("Expected FactualApiException");
+    } catch (FactualApiException e) {
+      assertEquals(503, e.getStatusCode());
+    }
+    assertEquals(3, server.getRequestCount());
+    assertEquals(0, out.size());
+
+    server.respondWith(200, StubServer.READ_RESPONSE);
+    try {
+      factual.fetchRaw("places", new Query(), new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          throw new IOException("client went away");
+        }
+      });
+      fail("Expected FactualApiException");
+    } catch (FactualApiException e) {
+      assertEquals(4, server.getRequestCount());
+    }
+  }
+
+}
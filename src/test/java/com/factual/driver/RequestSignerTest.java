@@ -0,0 +1,73 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.api.client.auth.oauth.OAuthHmacSigner;
+import com.google.api.client.auth.oauth.OAuthParameters;
+import com.google.api.client.http.GenericUrl;
+
+/**
+ * Unit tests for RequestSigner, checked against google-oauth-client's
+ * OAuthParameters.
+ */
+public class RequestSignerTest {
+  private static final String KEY = "my key";
+  private static final String SECRET = "s3cr&t/+";
+
+  @Test
+  public void testMatchesOAuthParameters() throws Exception {
+    String[] urls = {
+        "http://api.v3.factual.com/t/places",
+        "http://api.v3.factual.com/t/places?limit=20&offset=0",
+        "http://api.v3.factual.com/t/places?q=coffee+shop&filters=%7B%22region%22%3A%22CA%22%7D",
+        "http://api.v3.factual.com:80/t/places/read?include_count=true&geo=%7B%22%24circle%22%3A%7B%7D%7D",
+        "https://api.v3.factual.com:443/places/geocode?geo=%7B%22%24point%22%3A%5B34.06%2C-118.42%5D%7D",
+        "http://localhost:8080/t/places?select=name,tel&KEY=caf%C3%A9&empty=&flag",
+    };
+    RequestSigner signer = new RequestSigner(KEY, SECRET);
+    for (String method : new String[] { "GET", "POST" }) {
+      for (String url : urls) {
+        assertEquals(url, reference(method, url), signer.authorizationHeader(method, url, "1a2b3c", "1370000000"));
+      }
+    }
+  }
+
+  @Test
+  public void testFreshNonce() {
+    RequestSigner signer = new RequestSigner(KEY, SECRET);
+    String a = signer.authorizationHeader("GET", "http://api.v3.factual.com/t/places");
+    String b = signer.authorizationHeader("GET", "http://api.v3.factual.com/t/places");
+    assertTrue(a.startsWith("OAuth oauth_consumer_key=\"my%20key\""));
+    assertTrue(!a.equals(b));
+  }
+
+  @Test
+  public void testRequestsCarrySignature() throws Exception {
+    StubServer server = new StubServer();
+    Factual factual = server.factual();
+    try {
+      factual.fetch("places", new Query().limit(1));
+      String auth = server.getLastRequestHeaders().getFirst("Authorization");
+      assertTrue(auth, auth.startsWith("OAuth oauth_consumer_key=\"key\""));
+      assertTrue(auth, auth.contains("oauth_signature=\""));
+    } finally {
+      factual.shutdown();
+      server.stop();
+    }
+  }
+
+  private static String reference(String method, String url) throws Exception {
+    OAuthHmacSigner hmac = new OAuthHmacSigner();
+    hmac.clientSharedSecret = SECRET;
+    OAuthParameters params = new OAuthParameters();
+    params.consumerKey = KEY;
+    params.nonce = "1a2b3c";
+    params.timestamp = "1370000000";
+    params.signer = hmac;
+    params.computeSignature(method, new GenericUrl(url));
+    return params.getAuthorizationHeader();
+  }
+}
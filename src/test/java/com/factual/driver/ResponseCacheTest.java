@@ -0,0 +1,145 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests caching read responses, against a local stub server.
+ */
+public class ResponseCacheTest {
+  private StubServer server;
+  private Factual factual;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+  }
+
+  @After
+  public void tearDown() {
+    factual.shutdown();
+    server.stop();
+  }
+
+  @Test
+  public void testRepeatedReadIsCached() {
+    ResponseCache cache = new ResponseCache();
+    factual.setResponseCache(cache);
+    ReadResponse first = factual.fetch("places", new Query().search("cafe").limit(2));
+    ReadResponse second = factual.fetch("places", new Query().limit(2).search("cafe"));
+    assertEquals(1, server.getRequestCount());
+    assertEquals(first.getData(), second.getData());
+    assertNotSame(first.getData(), second.getData());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(0.5, cache.getHitRate(), 0);
+    assertEquals(1, cache.size());
+    assertTrue(cache.getWeightedSize() > StubServer.READ_RESPONSE.length());
+
+    // other queries and endpoints have their own entries
+    factual.fetch("places", new Query().search("bar"));
+    factual.fetchRow("places", "1");
+    factual.fetchRow("places", "1");
+    assertEquals(3, server.getRequestCount());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    ResponseCache cache = new ResponseCache().ttl(ResponseCache.Endpoint.FETCH, 50,
+        TimeUnit.MILLISECONDS);
+    factual.setResponseCache(cache);
+    factual.fetch("places", new Query().search("cafe"));
+    Thread.sleep(80);
+    factual.fetch("places", new Query().search("cafe"));
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, cache.getExpirationCount());
+    assertEquals(0, cache.getHitCount());
+
+    cache.ttl(ResponseCache.Endpoint.FETCH, 0, TimeUnit.SECONDS);
+    factual.fetch("places", new Query().search("cafe"));
+    assertEquals(3, server.getRequestCount());
+  }
+
+  @Test
+  public void testStaleWhileRevalidate() throws Exception {
+    ResponseCache cache = new ResponseCache()
+    .ttl(ResponseCache.Endpoint.FETCH, 50, TimeUnit.MILLISECONDS)
+    .staleWhileRevalidate(1, TimeUnit.MINUTES)
+    .executor(MoreExecutors.sameThreadExecutor());
+    factual.setResponseCache(cache);
+    factual.fetch("places", new Query().search("cafe"));
+    Thread.sleep(80);
+    ReadResponse stale = factual.fetch("places", new Query().search("cafe"));
+    assertEquals(2, stale.getData().size());
+    assertEquals(1, cache.getStaleHitCount());
+    assertEquals(1, cache.getRefreshCount());
+    // the refresh has replaced the entry with a fresh one
+    assertEquals(2, server.getRequestCount());
+    factual.fetch("places", new Query().search("cafe"));
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void testErrorsAreNotCached() {
+    ResponseCache cache = new ResponseCache();
+    factual.setResponseCache(cache);
+    server.failNext(1, 400);
+    try {
+      factual.fetch("places", new Query().search("cafe"));
+      fail("expected the error");
+    } catch (FactualApiException e) {
+      assertEquals(400, e.getStatusCode());
+    }
+    assertEquals(0, cache.size());
+    factual.fetch("places", new Query().search("cafe"));
+    factual.fetch("places", new Query().search("cafe"));
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void testBoundedByWeight() {
+    TinyLfuMap<Integer, String> map = new TinyLfuMap<Integer, String>(1000, 100, null);
+    for (int i = 0; i < 500; i++) {
+      map.put(i, "v" + i, 10 + i % 7);
+      assertTrue(map.weight() <= 1000);
+    }
+    assertTrue(map.size() < 100);
+    map.put(-1, "too heavy", 1001);
+    assertTrue(!map.containsKey(-1));
+  }
+
+  @Test
+  public void testFrequentEntriesSurviveScan() {
+    TinyLfuMap<Integer, String> map = new TinyLfuMap<Integer, String>(1000, 100, null);
+    for (int round = 0; round < 5; round++) {
+      for (int hot = 0; hot < 50; hot++) {
+        if (map.get(hot) == null)
+          map.put(hot, "hot", 10);
+      }
+    }
+    // a scan of one-off keys, ten times the capacity
+    for (int cold = 1000; cold < 2000; cold++) {
+      if (map.get(cold) == null)
+        map.put(cold, "cold", 10);
+    }
+    int survivors = 0;
+    for (int hot = 0; hot < 50; hot++) {
+      if (map.containsKey(hot))
+        survivors++;
+    }
+    assertTrue("hot entries kept: " + survivors, survivors >= 45);
+  }
+
+}
@@ -0,0 +1,142 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import com.factual.driver.Factual.RequestImpl;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+/**
+ * Unit tests for the streaming response parsers.
+ */
+public class ResponseParserTest {
+  private static final String READ =
+      "{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":["
+      + "{\"factual_id\":\"a\",\"name\":\"Caf\\u00e9\",\"latitude\":34.06,\"rank\":7,"
+      + "\"big\":12345678901,\"huge\":123456789012345678901234,\"open\":true,\"tel\":null,"
+      + "\"category_labels\":[[\"Food\",\"Cafe\"]],\"hours\":{\"monday\":[[\"8:00\",\"17:00\"]]}}"
+      + "],\"included_rows\":1,\"total_row_count\":42}}";
+
+  @Test
+  public void testReadMatchesOrgJson() throws Exception {
+    ReadResponse resp = new ReadResponse(new InternalResponse(READ.getBytes(Charsets.UTF_8), true));
+    assertEquals("3", resp.getVersion());
+    assertEquals("ok", resp.getStatus());
+    assertEquals(42, resp.getTotalRowCount());
+    assertEquals(1, resp.getIncludedRowCount());
+
+    Map<String, Object> expected = JsonUtil.data(new JSONObject(READ).getJSONObject("response")
+        .getJSONArray("data")).get(0);
+    Map<String, Object> row = resp.first();
+    assertEquals(expected.keySet(), row.keySet());
+    for (String key : expected.keySet()) {
+      Object want = expected.get(key);
+      Object got = row.get(key);
+      assertEquals(key, want.getClass(), got.getClass());
+      if (want instanceof JSONObject || want instanceof JSONArray)
+        assertEquals(key, want.toString(), got.toString());
+      else
+        assertEquals(key, want, got);
+    }
+    assertEquals(READ, resp.getJson());
+  }
+
+  @Test
+  public void testSingleObjectData() {
+    ReadResponse resp = new ReadResponse(new InternalResponse(
+        "{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":{\"locality\":\"Los Angeles\"}}}"));
+    assertEquals(1, resp.size());
+    assertEquals("Los Angeles", resp.first().get("locality"));
+    assertEquals(Response.UNDEFINED, resp.getTotalRowCount());
+  }
+
+  @Test
+  public void testRawJsonCanBeDropped() {
+    InternalResponse internal = new InternalResponse(READ.getBytes(Charsets.UTF_8), false);
+    ReadResponse resp = new ReadResponse(internal);
+    assertEquals(1, resp.size());
+    assertNull(resp.getJson());
+    assertNull(internal.getContent());
+  }
+
+  @Test
+  public void testFacets() {
+    FacetResponse resp = new FacetResponse(new InternalResponse(
+        "{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":{\"region\":{\"ca\":12,\"ny\":3}},"
+        + "\"included_rows\":1}}"));
+    assertEquals(12, resp.getData().get("region").get("ca"));
+    assertEquals(3, resp.getData().get("region").get("ny"));
+  }
+
+  @Test
+  public void testSchema() {
+    SchemaResponse resp = new SchemaResponse(new InternalResponse(
+        "{\"version\":3,\"status\":\"ok\",\"response\":{\"view\":{\"title\":\"Places\","
+        + "\"description\":\"All places\",\"search_enabled\":true,\"geo_enabled\":\"true\","
+        + "\"fields\":[{\"name\":\"name\",\"datatype\":\"String\",\"faceted\":false,\"searchable\":true},"
+        + "{\"name\":\"latitude\",\"datatype\":\"Decimal\",\"sortable\":true}]}}}"));
+    assertEquals("Places", resp.getTitle());
+    assertEquals("All places", resp.getDescription());
+    assertTrue(resp.isSearchEnabled());
+    assertTrue(resp.isGeoEnabled());
+    assertEquals(2, resp.size());
+    assertEquals("Decimal", resp.getColumnSchema("latitude").datatype);
+    assertTrue(resp.getColumnSchema("name").searchable);
+    assertFalse(resp.getColumnSchema("name").sortable);
+  }
+
+  @Test
+  public void testMulti() {
+    Map<String, RequestImpl> queries = Maps.newHashMap();
+    queries.put("q1", new Factual.ReadRequest("t/places", Maps.<String, Object>newHashMap()));
+    queries.put("q2", new Factual.ReadRequest("t/places", Maps.<String, Object>newHashMap()));
+    MultiResponse resp = new MultiResponse(queries);
+    String json = "{\"q1\":" + READ + ",\"q2\":{\"version\":3,\"status\":\"ok\","
+        + "\"response\":{\"data\":[],\"included_rows\":0}},\"other\":{}}";
+    resp.setJson(json);
+    assertEquals(2, resp.getData().size());
+    ReadResponse q1 = (ReadResponse) resp.getData().get("q1");
+    assertEquals("Café", q1.first().get("name"));
+    assertTrue(resp.getData().get("q2").isEmpty());
+    assertEquals(json, resp.getJson());
+    List<Map<String, Object>> data = q1.getData();
+    assertEquals(1, data.size());
+  }
+
+  @Test
+  public void testMultiConcurrent() {
+    Map<String, RequestImpl> queries = Maps.newHashMap();
+    StringBuilder json = new StringBuilder("{");
+    for (int i = 0; i < 20; i++) {
+      queries.put("q" + i, new Factual.ReadRequest("t/places", Maps.<String, Object>newHashMap()));
+      json.append(i == 0 ? "" : ",\n").append("\"q").append(i).append("\" : ").append(READ);
+    }
+    json.append("}");
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      MultiResponse resp = new MultiResponse(queries);
+      resp.parse(new InternalResponse(json.toString().getBytes(Charsets.UTF_8), true, RowFormat.MAP),
+          executor);
+      assertEquals(20, resp.getData().size());
+      for (int i = 0; i < 20; i++) {
+        ReadResponse sub = (ReadResponse) resp.getData().get("q" + i);
+        assertEquals("Café", sub.first().get("name"));
+        assertEquals(READ, sub.getJson());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for RetryPolicy, run against a local stub server.
+ */
+public class RetryPolicyTest {
+  private StubServer server;
+  private Factual factual;
+
+  @Before
+  public void setup() throws Exception {
+    server = new StubServer();
+    factual = server.factual();
+  }
+
+  @After
+  public void teardown() {
+    factual.shutdown();
+    server.stop();
+  }
+
+  @Test
+  public void testNoRetriesByDefault() {
+    server.respondWith(503, "{\"status\":\"error\"}");
+    try {
+      factual.fetch("places", new Query());
+      fail("Expected the call to fail");
+    } catch (FactualApiException e) {
+      assertEquals(503, e.getStatusCode());
+    }
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void testReadsRetryUpToMaxAttempts() {
+    server.respondWith(503, "{\"status\":\"error\"}");
+    factual.setRetryPolicy(new RetryPolicy().maxAttempts(3).backoff(1, 5, TimeUnit.MILLISECONDS));
+    try {
+      factual.fetch("places", new Query());
+      fail("Expected the call to fail");
+    } catch (FactualApiException e) {
+      assertEquals(503, e.getStatusCode());
+    }
+    assertEquals(3, server.getRequestCount());
+  }
+
+  @Test
+  public void testNonRetryableStatusFailsImmediately() {
+    server.respondWith(400, "{\"status\":\"error\"}");
+    factual.setRetryPolicy(new RetryPolicy().maxAttempts(3).backoff(1, 5, TimeUnit.MILLISECONDS));
+    try {
+      factual.fetch("places", new Query());
+      fail("Expected the call to fail");
+    } catch (FactualApiException e) {
+      assertEquals(400, e.getStatusCode());
+    }
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void testWritesAreNotRetriedUnlessAsked() {
+    server.respondWith(503, "{\"status\":\"error\"}");
+    factual.setRetryPolicy(new RetryPolicy().maxAttempts(3).backoff(1, 5, TimeUnit.MILLISECONDS));
+    try {
+      factual.flagSpam("places", "1", new Metadata().user("test"));
+      fail("Expected the call to fail");
+    } catch (FactualApiException e) {
+      assertEquals(1, server.getRequestCount());
+    }
+
+    factual.setRetryPolicy(new RetryPolicy().maxAttempts(3).backoff(1, 5, TimeUnit.MILLISECONDS)
+        .retryWrites(true));
+    try {
+      factual.flagSpam("places", "1", new Metadata().user("test"));
+      fail("Expected the call to fail");
+    } catch (FactualApiException e) {
+      assertEquals(4, server.getRequestCount());
+    }
+  }
+
+  @Test
+  public void testRetriesStopAtDeadline() {
+    server.respondWith(503, "{\"status\":\"error\"}");
+    factual.setRetryPolicy(new RetryPolicy().maxAttempts(100).jitter(0)
+        .backoff(40, 40, TimeUnit.MILLISECONDS).deadline(100, TimeUnit.MILLISECONDS));
+    long start = System.currentTimeMillis();
+    try {
+      factual.fetch("places", new Query());
+      fail("Expected the call to fail");
+    } catch (FactualApiException e) {
+      assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+    assertTrue(server.getRequestCount() <= 3);
+  }
+
+  @Test
+  public void testParseRetryAfter() {
+    assertEquals(2000, RetryPolicy.parseRetryAfter("2", 0));
+    assertEquals(-1, RetryPolicy.parseRetryAfter(null, 0));
+    assertEquals(-1, RetryPolicy.parseRetryAfter("soon", 0));
+    assertEquals(1000, RetryPolicy.parseRetryAfter("Thu, 01 Jan 1970 00:00:01 GMT", 0));
+  }
+
+  @Test
+  public void testThrottleDelay() {
+    assertEquals(-1, RetryPolicy.throttleDelayMillis("{\"daily\":\"5.0%\",\"minute\":\"99.0%\"}", 0));
+    assertEquals(0, RetryPolicy.throttleDelayMillis("{\"daily\":\"100.0%\",\"minute\":\"1.0%\"}", 0));
+    assertEquals(45000, RetryPolicy.throttleDelayMillis("{\"daily\":\"5.0%\",\"minute\":\"100.0%\"}", 15000));
+  }
+
+  @Test
+  public void testNoneCannotBeChanged() {
+    try {
+      RetryPolicy.NONE.maxAttempts(5);
+      fail("Expected the shared policy to refuse changes");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    assertTrue(!RetryPolicy.NONE.limitsReadTimeout());
+    assertTrue(!new RetryPolicy().maxAttempts(1).limitsReadTimeout());
+    assertTrue(new RetryPolicy().maxAttempts(1).deadline(1, TimeUnit.SECONDS).limitsReadTimeout());
+  }
+
+  @Test
+  public void testNegativeDeadlineIsRejected() {
+    try {
+      new RetryPolicy().deadline(-1, TimeUnit.SECONDS);
+      fail("Expected a negative deadline to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Unit tests for {@link StringPool}.
+ */
+public class StringPoolTest {
+  private static final String READ =
+      "{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":["
+      + "{\"name\":\"One\",\"country\":\"us\",\"category_labels\":[[\"Food\",\"Cafes\"]]},"
+      + "{\"name\":\"One\",\"country\":\"us\",\"category_labels\":[[\"Food\",\"Bars\"]]}"
+      + "],\"included_rows\":2}}";
+
+  private static ReadResponse read(StringPool pool, RowFormat format) {
+    InternalResponse resp = new InternalResponse(READ.getBytes(Charsets.UTF_8), true, format);
+    resp.setStringPool(pool);
+    return new ReadResponse(resp);
+  }
+
+  @Test
+  public void testInternsPooledFields() throws Exception {
+    for (RowFormat format : RowFormat.values()) {
+      StringPool pool = new StringPool().field("country", 10).field("category_labels", 10);
+      ReadResponse resp = read(pool, format);
+      Map<String, Object> a = resp.getData().get(0);
+      Map<String, Object> b = resp.getData().get(1);
+      assertSame(format.toString(), a.get("country"), b.get("country"));
+      assertNotSame(format.toString(), a.get("name"), b.get("name"));
+      JSONArray labelsA = ((JSONArray) a.get("category_labels")).getJSONArray(0);
+      JSONArray labelsB = ((JSONArray) b.get("category_labels")).getJSONArray(0);
+      assertSame(labelsA.get(0), labelsB.get(0));
+      assertEquals("Bars", labelsB.get(1));
+
+      // country: us, us; labels: Food, Cafes, Food, Bars
+      assertEquals(2, pool.getHitCount());
+      assertEquals(4, pool.getMissCount());
+      assertEquals(0.5, pool.getHitRate("country"), 0);
+      assertEquals(4, pool.size());
+      assertTrue(pool.getBytesSaved() > 0);
+    }
+  }
+
+  @Test
+  public void testBounded() {
+    StringPool pool = new StringPool().field("n", 5);
+    StringPool.FieldPool field = pool.forField("n");
+    for (int i = 0; i < 100; i++) {
+      field.intern(String.valueOf(i));
+    }
+    assertTrue(pool.size() <= 5);
+    assertEquals(0, pool.getHitCount());
+    String kept = field.intern(new String("99"));
+    assertEquals("99", kept);
+    assertEquals(1, pool.getHitCount());
+  }
+
+}
@@ -0,0 +1,179 @@
+package com.factual.driver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server that answers every request with a canned Factual
+ * response, so the driver's transport can be exercised without talking to
+ * Factual.
+ */
+public class StubServer {
+  public static final String READ_RESPONSE =
+      "{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":["
+      + "{\"factual_id\":\"1\",\"name\":\"Cafe One\",\"latitude\":34.06,\"longitude\":-118.41,\"country\":\"us\"},"
+      + "{\"factual_id\":\"2\",\"name\":\"Cafe Two\",\"latitude\":34.07,\"longitude\":-118.42,\"country\":\"us\"}"
+      + "],\"included_rows\":2}}";
+
+  private final HttpServer server;
+  private final AtomicInteger requests = new AtomicInteger();
+  private volatile String body = READ_RESPONSE;
+  private volatile int status = 200;
+  private volatile long delayMillis = 0;
+  private final AtomicInteger slowRemaining = new AtomicInteger();
+  private volatile long slowDelayMillis = 0;
+  private volatile Headers lastRequestHeaders = null;
+  private final AtomicInteger failRemaining = new AtomicInteger();
+  private volatile int failStatus = 500;
+  private final Map<String, String> responseHeaders = new ConcurrentHashMap<String, String>();
+  private volatile int tableRows = -1;
+  private final List<String> requestQueries = new CopyOnWriteArrayList<String>();
+
+  public StubServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        lastRequestHeaders = exchange.getRequestHeaders();
+        String query = exchange.getRequestURI().getQuery();
+        requestQueries.add(query == null ? "" : query);
+        long delay = slowRemaining.getAndDecrement() > 0 ? slowDelayMillis : delayMillis;
+        if (delay > 0) {
+          try {
+            Thread.sleep(delay);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        boolean fail = failRemaining.getAndDecrement() > 0;
+        byte[] bytes = (fail ? "{\"status\":\"error\"}" : tableRows >= 0 ? page(query) : body).getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        for (Map.Entry<String, String> header : responseHeaders.entrySet()) {
+          exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+        }
+        exchange.sendResponseHeaders(fail ? failStatus : status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+  }
+
+  /**
+   * @return a Factual instance pointed at this server.
+   */
+  public Factual factual() {
+    return factual(new ConnectionPool());
+  }
+
+  /**
+   * @return a Factual instance pointed at this server, using <tt>transport</tt>.
+   */
+  public Factual factual(Transport transport) {
+    Factual factual = new Factual("key", "secret", transport);
+    factual.setFactHome(getUrl());
+    return factual;
+  }
+
+  public String getUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  public StubServer respondWith(int status, String body) {
+    this.status = status;
+    this.body = body;
+    return this;
+  }
+
+  public StubServer responseHeader(String name, String value) {
+    responseHeaders.put(name, value);
+    return this;
+  }
+
+  public StubServer delay(long delayMillis) {
+    this.delayMillis = delayMillis;
+    return this;
+  }
+
+  /**
+   * Delays only the next <tt>count</tt> requests, by <tt>delayMillis</tt>.
+   */
+  public StubServer delayNext(int count, long delayMillis) {
+    this.slowDelayMillis = delayMillis;
+    this.slowRemaining.set(count);
+    return this;
+  }
+
+  /**
+   * Fails only the next <tt>count</tt> requests, with <tt>status</tt>.
+   */
+  public StubServer failNext(int count, int status) {
+    this.failStatus = status;
+    this.failRemaining.set(count);
+    return this;
+  }
+
+  /**
+   * Answers reads from a table of <tt>rows</tt> rows, honouring their limit,
+   * offset and include_count.
+   */
+  public StubServer serveTable(int rows) {
+    this.tableRows = rows;
+    return this;
+  }
+
+  /**
+   * @return the decoded query string of every request received, in order.
+   */
+  public List<String> getRequestQueries() {
+    return requestQueries;
+  }
+
+  private String page(String query) {
+    int limit = 20, offset = 0;
+    boolean includeCount = false;
+    for (String param : (query == null ? "" : query).split("&")) {
+      if (param.startsWith("limit="))
+        limit = Integer.parseInt(param.substring(6));
+      else if (param.startsWith("offset="))
+        offset = Integer.parseInt(param.substring(7));
+      else if (param.equals("include_count=true"))
+        includeCount = true;
+    }
+    StringBuilder data = new StringBuilder();
+    for (int i = offset; i < Math.min(tableRows, offset + limit); i++) {
+      data.append(data.length() == 0 ? "" : ",").append("{\"factual_id\":\"" + i + "\"}");
+    }
+    int included = Math.max(0, Math.min(tableRows, offset + limit) - offset);
+    return "{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":[" + data
+        + "],\"included_rows\":" + included
+        + (includeCount ? ",\"total_row_count\":" + tableRows : "") + "}}";
+  }
+
+  public Headers getLastRequestHeaders() {
+    return lastRequestHeaders;
+  }
+
+  public int getRequestCount() {
+    return requests.get();
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+}
@@ -0,0 +1,82 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.sun.net.httpserver.Headers;
+
+/**
+ * Checks that requests are signed and decorated the same way whichever
+ * Transport backend is used.
+ */
+public class TransportTest {
+  private StubServer server;
+
+  @Before
+  public void setup() throws Exception {
+    server = new StubServer();
+  }
+
+  @After
+  public void teardown() {
+    server.stop();
+  }
+
+  @Test
+  public void testPooledBackend() {
+    Factual factual = server.factual(Transports.pooled());
+    assertEquals(2, factual.fetch("places", new Query().limit(2)).size());
+    assertSigned(server.getLastRequestHeaders());
+    factual.shutdown();
+  }
+
+  @Test
+  public void testNetHttpBackend() {
+    Factual factual = server.factual(Transports.netHttp());
+    assertEquals(2, factual.fetch("places", new Query().limit(2)).size());
+    assertSigned(server.getLastRequestHeaders());
+    assertNull(factual.getConnectionPoolStats());
+  }
+
+  @Test
+  public void testCustomBackend() {
+    final MockLowLevelHttpRequest[] captured = new MockLowLevelHttpRequest[1];
+    MockHttpTransport mock = new MockHttpTransport() {
+      @Override
+      public LowLevelHttpRequest buildRequest(String method, String url) throws IOException {
+        captured[0] = new MockLowLevelHttpRequest(url) {
+          @Override
+          public LowLevelHttpResponse execute() throws IOException {
+            return new MockLowLevelHttpResponse().setContent(StubServer.READ_RESPONSE);
+          }
+        };
+        return captured[0];
+      }
+    };
+    Factual factual = new Factual("key", "secret", Transports.wrap(mock));
+    assertEquals(2, factual.fetch("places", new Query().limit(2)).size());
+
+    assertTrue(captured[0].getUrl().startsWith("http://api.v3.factual.com/t/places?"));
+    assertTrue(captured[0].getFirstHeaderValue("Authorization").contains("oauth_signature="));
+    assertTrue(captured[0].getFirstHeaderValue("Authorization").contains("oauth_consumer_key=\"key\""));
+    assertTrue(captured[0].getFirstHeaderValue("X-Factual-Lib").startsWith("factual-java-driver"));
+    assertEquals("api.v3.factual.com", captured[0].getFirstHeaderValue("Host"));
+  }
+
+  private void assertSigned(Headers headers) {
+    assertTrue(headers.getFirst("Authorization").contains("oauth_signature="));
+    assertTrue(headers.getFirst("X-Factual-Lib").startsWith("factual-java-driver"));
+  }
+}
@@ -0,0 +1,122 @@
+package com.factual.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Unit tests for decoding rows into {@link FactualRow} classes.
+ */
+public class TypedRowsTest {
+  private static final String READ =
+      "{ \"version\" : 3, \"status\" : \"ok\",\n \"response\" : { \"data\" : [\n"
+      + " {\"factual_id\":\"a\",\"name\":\"Caf\\u00e9\",\"latitude\":34.06,\"longitude\":-118,"
+      + "\"rank\":7,\"$distance\":12.5,\"open\":true,\"tel\":null,\"unknown\":{\"x\":[1,2]},"
+      + "\"category_labels\":[[\"Food\",\"Cafe\"]]},\n"
+      + " {\"factual_id\":\"b\",\"latitude\":\"1.5\",\"rank\":null,\"tel\":\"555\"}\n"
+      + "], \"included_rows\" : 2, \"total_row_count\" : 42 } }";
+
+  @FactualRow
+  static class Place {
+    String factualId;
+    String name;
+    double latitude;
+    double longitude;
+    Integer rank;
+    @FactualField("$distance")
+    float distance;
+    boolean open;
+    private String tel;
+    JSONArray categoryLabels;
+    transient String ignored;
+
+    void setTel(String tel) {
+      this.tel = "tel:" + tel;
+    }
+  }
+
+  static class Unannotated {
+  }
+
+  private static TypedReadResponse<Place> read(String json) {
+    return new TypedReadResponse<Place>(new InternalResponse(json.getBytes(Charsets.UTF_8), true),
+        RowCodec.forClass(Place.class));
+  }
+
+  @Test
+  public void testDecode() throws Exception {
+    TypedReadResponse<Place> resp = read(READ);
+    assertEquals("3", resp.getVersion());
+    assertEquals("ok", resp.getStatus());
+    assertEquals(42, resp.getTotalRowCount());
+    assertEquals(2, resp.size());
+
+    Place a = resp.first();
+    assertEquals("a", a.factualId);
+    assertEquals("Café", a.name);
+    assertEquals(34.06, a.latitude, 0);
+    assertEquals(-118, a.longitude, 0);
+    assertEquals(Integer.valueOf(7), a.rank);
+    assertEquals(12.5f, a.distance, 0);
+    assertTrue(a.open);
+    assertEquals("tel:null", a.tel);
+    assertEquals("Cafe", a.categoryLabels.getJSONArray(0).getString(1));
+
+    Place b = resp.getRows().get(1);
+    assertEquals("b", b.factualId);
+    assertNull(b.name);
+    assertEquals(1.5, b.latitude, 0);
+    assertNull(b.rank);
+    assertEquals("tel:555", b.tel);
+    assertNull(b.ignored);
+  }
+
+  @Test
+  public void testSingleObject() {
+    TypedReadResponse<Place> resp = read(
+        "{\"version\":3,\"status\":\"ok\",\"response\":{\"data\":{\"factual_id\":\"c\"}}}");
+    assertEquals(1, resp.size());
+    assertEquals("c", resp.first().factualId);
+  }
+
+  @Test
+  public void testColumns() {
+    List<String> columns = Arrays.asList(RowCodec.forClass(Place.class).getColumns());
+    assertEquals(Arrays.asList("factual_id", "name", "latitude", "longitude", "rank", "$distance",
+        "open", "tel", "category_labels"), columns);
+    assertEquals("category_labels", RowCodecProcessor.snakeCase("categoryLabels"));
+  }
+
+  @Test
+  public void testMissingCodec() {
+    try {
+      RowCodec.forClass(Unannotated.class);
+      fail("Expected no codec");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("@FactualRow"));
+    }
+  }
+
+  @Test
+  public void testValidate() {
+    SchemaResponse schema = new SchemaResponse(new InternalResponse(
+        "{\"version\":3,\"status\":\"ok\",\"response\":{\"view\":{\"fields\":["
+        + "{\"name\":\"latitude\",\"datatype\":\"Decimal\"},"
+        + "{\"name\":\"rank\",\"datatype\":\"Decimal\"},"
+        + "{\"name\":\"open\",\"datatype\":\"Boolean\"},"
+        + "{\"name\":\"name\",\"datatype\":\"String\"}]}}}"));
+    List<String> problems = RowCodec.forClass(Place.class).validate(schema);
+    assertEquals(1, problems.size());
+    assertTrue(problems.get(0).startsWith("rank:"));
+  }
+
+}